@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr.benchmarks;
+
+import ch.unifr.BoundsIndex;
+import ch.unifr.PolygonMask;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CandidatePairsBenchmark class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Candidate pair generation: nested loop vs BoundsIndex
+ * Simulates a noisy segmenter emitting many small fragments over a 6000x9000 page of 60 lines,
+ * and counts the GT x prediction pairs whose bounding boxes overlap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CandidatePairsBenchmark {
+
+    @Param({"1000", "10000", "20000"})
+    public int predictions;
+
+    private List<PolygonMask> groundTruth;
+    private List<PolygonMask> prediction;
+
+    @Setup
+    public void setup() {
+        Logger.getRootLogger().setLevel(Level.WARN);
+
+        Random random = new Random(42);
+        groundTruth = new ArrayList<>();
+        for (int l = 0; l < 60; l++) {
+            int y = 100 + l * 145;
+            groundTruth.add(new PolygonMask(rectangle(200, y, 5600, 140)));
+        }
+        prediction = new ArrayList<>();
+        for (int i = 0; i < predictions; i++) {
+            int x = random.nextInt(5800);
+            int y = random.nextInt(8900);
+            prediction.add(new PolygonMask(rectangle(x, y, 5 + random.nextInt(150), 5 + random.nextInt(60))));
+        }
+    }
+
+    @Benchmark
+    public int nestedLoop() {
+        int candidates = 0;
+        for (PolygonMask pgt : groundTruth) {
+            Rectangle rgt = pgt.getBounds();
+            for (PolygonMask pp : prediction) {
+                if (rgt.intersects(pp.getBounds())) {
+                    candidates++;
+                }
+            }
+        }
+        return candidates;
+    }
+
+    @Benchmark
+    public int boundsIndex() {
+        int candidates = 0;
+        BoundsIndex index = new BoundsIndex(prediction);
+        for (PolygonMask pgt : groundTruth) {
+            candidates += index.query(pgt.getBounds()).length;
+        }
+        return candidates;
+    }
+
+    private static Polygon rectangle(int x, int y, int w, int h) {
+        return new Polygon(new int[]{x, x + w, x + w, x}, new int[]{y, y, y + h, y + h}, 4);
+    }
+}
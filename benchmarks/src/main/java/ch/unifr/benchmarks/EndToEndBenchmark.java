@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr.benchmarks;
+
+import ch.unifr.BatchEvaluator;
+import ch.unifr.LineSegmentationEvaluator;
+import ch.unifr.Page;
+import ch.unifr.Results;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EndToEndBenchmark class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Evaluation of a synthetic page from its files, as done by the tool for each page
+ * PNG decoding of the GT image, parsing of the GT and prediction XML, evaluation, and (with visualize)
+ * rendering and PNG encoding of the visualization.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+
+    @Param({"1200x1800", "4800x7200"})
+    public String size;
+
+    @Param({"30", "120"})
+    public int lines;
+
+    @Param({"16"})
+    public int vertices;
+
+    @Param({"0.1", "0.5"})
+    public double overlap;
+
+    @Param({"true", "false"})
+    public boolean visualize;
+
+    private File directory;
+    private Page page;
+    private BatchEvaluator evaluator;
+
+    @Setup
+    public void setup() throws IOException {
+        Logger.getRootLogger().setLevel(Level.WARN);
+
+        int[] dimension = SyntheticPage.parseSize(size);
+        directory = Files.createTempDirectory("benchmark").toFile();
+        page = SyntheticPage.generate(42, dimension[0], dimension[1], lines, vertices, overlap).write(directory, "page");
+        evaluator = BatchEvaluator.builder(new LineSegmentationEvaluator()).visualize(visualize).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public Results evaluatePage() throws IOException {
+        return evaluator.evaluatePage(page, directory.getPath() + File.separator + "page");
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr.benchmarks;
+
+import ch.unifr.ForegroundMask;
+import ch.unifr.LineSegmentationEvaluator;
+import ch.unifr.PolygonMask;
+import ch.unifr.Results;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EvaluatorBenchmark class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief In-memory evaluation of a synthetic page
+ * - evaluate: the whole evaluation of decoded inputs (foreground, rasterization, pair scoring, matching, counting)
+ * - matching: pair scoring, matching and counting only, on a decoded foreground and rasterized polygons
+ * - visualization: matching followed by the rendering of the visualization
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EvaluatorBenchmark {
+
+    @Param({"1200x1800", "4800x7200"})
+    public String size;
+
+    @Param({"30", "120"})
+    public int lines;
+
+    @Param({"8", "64"})
+    public int vertices;
+
+    @Param({"0.1", "0.5"})
+    public double overlap;
+
+    @Param({"PAIRWISE", "COOCCURRENCE", "SPANS"})
+    public LineSegmentationEvaluator.Engine engine;
+
+    private LineSegmentationEvaluator evaluator;
+    private BufferedImage image;
+    private SyntheticPage page;
+    private ForegroundMask foreground;
+    private List<PolygonMask> groundTruth;
+    private List<PolygonMask> prediction;
+
+    @Setup
+    public void setup() {
+        Logger.getRootLogger().setLevel(Level.WARN);
+
+        int[] dimension = SyntheticPage.parseSize(size);
+        page = SyntheticPage.generate(42, dimension[0], dimension[1], lines, vertices, overlap);
+        image = page.getGroundTruthImage();
+        foreground = new ForegroundMask(image);
+        groundTruth = PolygonMask.rasterize(page.getGroundTruth());
+        prediction = PolygonMask.rasterize(page.getPrediction());
+        evaluator = new LineSegmentationEvaluator(engine);
+    }
+
+    @Benchmark
+    public Results evaluate() {
+        return evaluator.evaluate(image, page.getGroundTruth(), page.getPrediction(), 0.75);
+    }
+
+    @Benchmark
+    public Results matching() {
+        return evaluator.evaluateMasks(foreground, groundTruth, prediction, 0.75);
+    }
+
+    @Benchmark
+    public BufferedImage visualization() {
+        return evaluator.evaluateMasks(foreground, groundTruth, prediction, 0.75).getVisualization();
+    }
+}
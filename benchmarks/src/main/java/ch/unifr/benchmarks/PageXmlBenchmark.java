@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr.benchmarks;
+
+import ch.unifr.ImageLinePageDataset;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PageXmlBenchmark class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Reading the polygons of a PAGE XML file with ImageLinePageDataset.readDataFromFile
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PageXmlBenchmark {
+
+    @Param({"30", "120", "1000"})
+    public int lines;
+
+    @Param({"8", "64", "512"})
+    public int vertices;
+
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        Logger.getRootLogger().setLevel(Level.WARN);
+
+        SyntheticPage page = SyntheticPage.generate(42, 4800, 7200, lines, vertices, 0.1);
+        file = File.createTempFile("page", ".xml");
+        SyntheticPage.writeXml(file, page.getGroundTruth(), 4800, 7200);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public List<Polygon> readDataFromFile() {
+        return ImageLinePageDataset.readDataFromFile(file.getPath());
+    }
+}
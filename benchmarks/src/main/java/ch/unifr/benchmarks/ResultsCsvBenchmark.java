@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr.benchmarks;
+
+import ch.unifr.Metrics;
+import ch.unifr.Results;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ResultsCsvBenchmark class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Writing the results of many pages in a CSV file, in one call or one call per page
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultsCsvBenchmark {
+
+    @Param({"100", "10000"})
+    public int pages;
+
+    private List<Results> results;
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        Logger.getRootLogger().setLevel(Level.WARN);
+
+        Random random = new Random(42);
+        results = new ArrayList<>(pages);
+        for (int i = 0; i < pages; i++) {
+            long truth = 10 + random.nextInt(100);
+            long proposed = 10 + random.nextInt(100);
+            long correct = random.nextInt((int) Math.min(truth, proposed) + 1);
+            long tp = random.nextInt(1000000);
+            long fp = random.nextInt(100000);
+            long fn = random.nextInt(100000);
+            Results r = new Results(new Metrics(0.75, truth, proposed, correct, truth - correct, proposed - correct,
+                    tp / 2, fp / 2, fn / 2, tp, fp, fn, tp + fp, tp + fn));
+            r.put(Results.FILENAME, "page" + i);
+            results.add(r);
+        }
+        file = File.createTempFile("results", ".csv");
+    }
+
+    @Setup(org.openjdk.jmh.annotations.Level.Invocation)
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public File writeToCSV() {
+        Results.writeToCSV(file.getPath(), results);
+        return file;
+    }
+
+    @Benchmark
+    public File writeToCSVPerPage() {
+        for (Results r : results) {
+            r.writeToCSV(file.getPath());
+        }
+        return file;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr.benchmarks;
+
+import ch.unifr.Page;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * SyntheticPage class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Deterministic generator of pages for the benchmarks
+ * A page is made of a GT image with lines of random ink, the GT polygons of these lines, and the
+ * polygons of a simulated segmentation method. The same parameters and seed always give the same page.
+ * - vertices: number of vertices of each polygon (upper and lower outline of the line)
+ * - overlap: vertical shift of the predicted lines, as a fraction of the line pitch. With 0 every
+ * prediction covers its GT line, with 0.5 every prediction straddles two GT lines; the predictions are
+ * also split in more fragments, which increases the number of candidate pairs.
+ */
+public final class SyntheticPage {
+
+    /**
+     * Pixels of the GT image: background, and ink (countable foreground)
+     */
+    private static final int BACKGROUND = 0x000001;
+    private static final int INK = 0x000008;
+
+    private final int width;
+    private final int height;
+    private final BufferedImage groundTruthImage;
+    private final List<Polygon> groundTruth = new ArrayList<>();
+    private final List<Polygon> prediction = new ArrayList<>();
+
+    private SyntheticPage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.groundTruthImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Generate a page
+     *
+     * @param seed     the seed of the generator
+     * @param width    the width of the page
+     * @param height   the height of the page
+     * @param lines    the number of text lines
+     * @param vertices the number of vertices of each polygon (at least 4)
+     * @param overlap  the vertical shift of the predicted lines, as a fraction of the line pitch
+     * @return the page
+     */
+    public static SyntheticPage generate(long seed, int width, int height, int lines, int vertices, double overlap) {
+        Random random = new Random(seed);
+        SyntheticPage page = new SyntheticPage(width, height);
+        int[] pixels = ((DataBufferInt) page.groundTruthImage.getRaster().getDataBuffer()).getData();
+        Arrays.fill(pixels, BACKGROUND);
+
+        int margin = width / 20;
+        int pitch = Math.max(4, (height - 2 * margin) / lines);
+        int points = Math.max(2, vertices / 2);
+        for (int l = 0; l < lines; l++) {
+            int top = margin + l * pitch;
+            int bottom = Math.min(height - 1, top + pitch - 2);
+            int left = margin + random.nextInt(margin + 1);
+            int right = width - margin - random.nextInt(margin + 1);
+
+            // Ink: vertical strokes of random height around the middle of the line
+            for (int x = left; x < right; x++) {
+                if (random.nextInt(10) < 4) {
+                    continue;
+                }
+                int from = top + 1 + random.nextInt(Math.max(1, pitch / 4));
+                int to = bottom - 1 - random.nextInt(Math.max(1, pitch / 4));
+                for (int y = from; y < to; y++) {
+                    pixels[y * width + x] = INK;
+                }
+            }
+
+            page.groundTruth.add(outline(random, left, right, top, bottom, points, 0));
+
+            // Prediction: the same outline shifted and jittered, split in fragments when overlapping
+            int shift = (int) Math.round(overlap * pitch);
+            int fragments = 1 + (int) Math.round(overlap * 4 * random.nextDouble());
+            int fragmentWidth = (right - left) / fragments;
+            for (int f = 0; f < fragments; f++) {
+                int fromX = left + f * fragmentWidth;
+                int toX = (f == fragments - 1) ? right : fromX + fragmentWidth;
+                page.prediction.add(outline(random, fromX, toX,
+                        Math.min(height - 1, top + shift), Math.min(height - 1, bottom + shift), points, 2));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Write the PAGE XML of polygons
+     *
+     * @param file     the XML file
+     * @param polygons the polygons of the text lines
+     * @param width    the width of the page
+     * @param height   the height of the page
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeXml(File file, List<Polygon> polygons, int width, int height) throws IOException {
+        StringBuilder s = new StringBuilder();
+        s.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        s.append("<PcGts xmlns=\"http://schema.primaresearch.org/PAGE/gts/pagecontent/2017-07-15\">\n");
+        s.append("  <Metadata><Creator>SyntheticPage</Creator></Metadata>\n");
+        s.append("  <Page imageFilename=\"page.png\" imageWidth=\"").append(width).append("\" imageHeight=\"").append(height).append("\">\n");
+        s.append("    <TextRegion id=\"r0\"><Coords points=\"0,0 ").append(width).append(",0 ").append(width).append(",").append(height)
+                .append(" 0,").append(height).append("\"/>\n");
+        for (int i = 0; i < polygons.size(); i++) {
+            Polygon polygon = polygons.get(i);
+            s.append("      <TextLine id=\"l").append(i).append("\"><Coords points=\"");
+            for (int p = 0; p < polygon.npoints; p++) {
+                s.append((p > 0) ? " " : "").append(polygon.xpoints[p]).append(",").append(polygon.ypoints[p]);
+            }
+            s.append("\"/><TextEquiv><Unicode/></TextEquiv></TextLine>\n");
+        }
+        s.append("    </TextRegion>\n  </Page>\n</PcGts>\n");
+        Files.write(file.toPath(), s.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write the GT image, GT XML and prediction XML of the page in a directory
+     *
+     * @param directory the directory
+     * @param name      the name of the page
+     * @return the page, ready to be evaluated
+     * @throws IOException if the files cannot be written
+     */
+    public Page write(File directory, String name) throws IOException {
+        File image = new File(directory, name + "_gt.png");
+        File xmlGroundTruth = new File(directory, name + "_gt.xml");
+        File xmlPrediction = new File(directory, name + ".xml");
+        ImageIO.write(groundTruthImage, "png", image);
+        writeXml(xmlGroundTruth, groundTruth, width, height);
+        writeXml(xmlPrediction, prediction, width, height);
+        return new Page(image.getPath(), xmlGroundTruth.getPath(), xmlPrediction.getPath(), null);
+    }
+
+    public BufferedImage getGroundTruthImage() {
+        return groundTruthImage;
+    }
+
+    public List<Polygon> getGroundTruth() {
+        return groundTruth;
+    }
+
+    public List<Polygon> getPrediction() {
+        return prediction;
+    }
+
+    /**
+     * Parse a page size WIDTHxHEIGHT
+     *
+     * @return {width, height}
+     */
+    public static int[] parseSize(String size) {
+        String[] fields = size.split("x");
+        return new int[]{Integer.parseInt(fields[0]), Integer.parseInt(fields[1])};
+    }
+
+    /**
+     * Outline of a line: points along the top from left to right, then along the bottom back
+     */
+    private static Polygon outline(Random random, int left, int right, int top, int bottom, int points, int jitter) {
+        Polygon polygon = new Polygon();
+        for (int i = 0; i < points; i++) {
+            polygon.addPoint(left + (right - left) * i / (points - 1) + jitter(random, jitter), Math.max(0, top + jitter(random, jitter + 1)));
+        }
+        for (int i = points - 1; i >= 0; i--) {
+            polygon.addPoint(left + (right - left) * i / (points - 1) + jitter(random, jitter), Math.max(0, bottom + jitter(random, jitter + 1)));
+        }
+        return polygon;
+    }
+
+    private static int jitter(Random random, int amplitude) {
+        return (amplitude > 0) ? random.nextInt(2 * amplitude + 1) - amplitude : 0;
+    }
+}
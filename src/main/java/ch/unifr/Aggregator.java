@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aggregator class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Dataset-level aggregation of the results of the pages, for one matching threshold
+ * The pages are added one by one as they are evaluated. The aggregator keeps the sums of their raw
+ * line and pixel counts in long counters, from which the micro measures of the dataset are derived,
+ * and the exact (BigDecimal) sums of their measures, from which the macro measures (the average of
+ * the measures of the pages) are derived. A measure which is not finite for a page (e.g. the precision
+ * of a page without any predicted line) is left out of its sum and of its number of pages: the macro
+ * measure is the average over the pages where it is defined. Neither depends on the order of the pages,
+ * such that the aggregators of several shards of a dataset can be written in partial files and merged exactly.
+ *
+ * Partial file format (text, one block per threshold):
+ * threshold=0.75
+ * pages=12
+ * failed=0
+ * nbLinesTruth=...        (one line per count of Metrics)
+ * macro.LinesIU=...       (two lines per measure of Results.MEASURES: the exact sum over the pages where
+ * macro.LinesIU.pages=...  it is finite, and their number)
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class Aggregator {
+
+    /**
+     * Log4j logger
+     */
+    private static final Logger logger = Logger.getLogger(Aggregator.class);
+    /**
+     * Header of the partial files
+     */
+    private static final String HEADER = "# LineSegmentation partial results, version 1";
+    /**
+     * Names of the counts, in the order of the counts array
+     */
+    private static final String[] COUNTS = {
+            "nbLinesTruth", "nbLinesProposed", "nbLinesCorrect", "nbLinesMissed", "nbLinesExtra",
+            "matchedTP", "matchedFP", "matchedFN",
+            "TP", "FP", "FN", "nbPixelsPrediction", "nbPixelsGt"};
+    /**
+     * The IU threshold for line matching of the aggregated results
+     */
+    private final double threshold;
+    /**
+     * Number of pages aggregated, and of pages which failed
+     */
+    private long nbPages = 0;
+    private long nbFailed = 0;
+    /**
+     * Sums of the counts of the pages (see COUNTS)
+     */
+    private final long[] counts = new long[COUNTS.length];
+    /**
+     * Exact sums of the finite measures of the pages (see Results.MEASURES), and the number of pages summed
+     */
+    private final BigDecimal[] sums = new BigDecimal[Results.MEASURES.length];
+    private final long[] defined = new long[Results.MEASURES.length];
+
+    /**
+     * Build an empty aggregator
+     *
+     * @param threshold the IU threshold for line matching of the aggregated results
+     */
+    public Aggregator(double threshold) {
+        this.threshold = threshold;
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] = BigDecimal.ZERO;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Write aggregators in a partial file. The file is written under a temporary name then renamed,
+     * such that the readers never see a partial file.
+     *
+     * @param fName       the partial file
+     * @param aggregators the aggregators, one per threshold
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(String fName, List<Aggregator> aggregators) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        StringBuilder s = new StringBuilder(HEADER).append("\n");
+        for (Aggregator a : aggregators) {
+            s.append("threshold=").append(a.threshold).append("\n");
+            s.append("pages=").append(a.nbPages).append("\n");
+            s.append("failed=").append(a.nbFailed).append("\n");
+            for (int i = 0; i < COUNTS.length; i++) {
+                s.append(COUNTS[i]).append("=").append(a.counts[i]).append("\n");
+            }
+            for (int i = 0; i < Results.MEASURES.length; i++) {
+                String measure = Results.MEASURES[i].split("\\.")[1];
+                s.append("macro.").append(measure).append("=").append(a.sums[i].toString()).append("\n");
+                s.append("macro.").append(measure).append(".pages=").append(a.defined[i]).append("\n");
+            }
+        }
+
+        Path file = Paths.get(fName).toAbsolutePath();
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, s.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        logger.debug("Created " + fName);
+    }
+
+    /**
+     * Read the aggregators of a partial file
+     *
+     * @param fName the partial file
+     * @return the aggregators, one per threshold, in the order of the file
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static List<Aggregator> read(String fName) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        List<String> lines = Files.readAllLines(Paths.get(fName), StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(HEADER)) {
+            throw new IOException(fName + ": not a partial results file");
+        }
+
+        List<Aggregator> aggregators = new ArrayList<>();
+        int blockSize = 3 + COUNTS.length + 2 * Results.MEASURES.length;
+        int n = 1;
+        try {
+            while (n < lines.size() && !lines.get(n).trim().isEmpty()) {
+                if (n + blockSize > lines.size()) {
+                    throw new IOException(fName + ": truncated file");
+                }
+                Aggregator a = new Aggregator(Double.parseDouble(value(fName, lines.get(n++), "threshold")));
+                a.nbPages = Long.parseLong(value(fName, lines.get(n++), "pages"));
+                a.nbFailed = Long.parseLong(value(fName, lines.get(n++), "failed"));
+                for (int i = 0; i < COUNTS.length; i++) {
+                    a.counts[i] = Long.parseLong(value(fName, lines.get(n++), COUNTS[i]));
+                }
+                for (int i = 0; i < Results.MEASURES.length; i++) {
+                    String measure = "macro." + Results.MEASURES[i].split("\\.")[1];
+                    a.sums[i] = new BigDecimal(value(fName, lines.get(n++), measure));
+                    a.defined[i] = Long.parseLong(value(fName, lines.get(n++), measure + ".pages"));
+                }
+                aggregators.add(a);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException(fName + ":" + n + ": invalid number (" + e.getMessage() + ")");
+        }
+        if (aggregators.isEmpty()) {
+            throw new IOException(fName + ": no results");
+        }
+        return aggregators;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Add the results of a page
+     *
+     * @param results the results of the page, as computed by the evaluator
+     * @throws IllegalArgumentException if the results are not backed by metrics, or are computed for another threshold
+     */
+    public void add(Results results) {
+        Metrics m = results.getMetrics();
+        if (m == null) {
+            throw new IllegalArgumentException("the results of " + results.get(Results.FILENAME) + " have no metrics");
+        }
+        if (Double.compare(m.threshold, threshold) != 0) {
+            throw new IllegalArgumentException("cannot aggregate results of threshold " + m.threshold + " with threshold " + threshold);
+        }
+
+        long[] page = {
+                m.nbLinesTruth, m.nbLinesProposed, m.nbLinesCorrect, m.nbLinesMissed, m.nbLinesExtra,
+                m.matchedTP, m.matchedFP, m.matchedFN,
+                m.TP, m.FP, m.FN, m.nbPixelsPrediction, m.nbPixelsGt};
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += page[i];
+        }
+        for (int i = 0; i < sums.length; i++) {
+            double value = m.get(Results.MEASURES[i]);
+            if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+                sums[i] = sums[i].add(new BigDecimal(value));
+                defined[i]++;
+            }
+        }
+        nbPages++;
+    }
+
+    /**
+     * Count a page which could not be evaluated
+     */
+    public void addFailure() {
+        nbFailed++;
+    }
+
+    /**
+     * Merge the results aggregated by another aggregator (e.g. of another shard) in this one
+     *
+     * @param other the other aggregator
+     * @return this aggregator
+     * @throws IllegalArgumentException if the other aggregator has another threshold
+     */
+    public Aggregator merge(Aggregator other) {
+        if (Double.compare(other.threshold, threshold) != 0) {
+            throw new IllegalArgumentException("cannot merge results of threshold " + other.threshold + " with threshold " + threshold);
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] = sums[i].add(other.sums[i]);
+            defined[i] += other.defined[i];
+        }
+        nbPages += other.nbPages;
+        nbFailed += other.nbFailed;
+        return this;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public long getNbPages() {
+        return nbPages;
+    }
+
+    public long getNbFailed() {
+        return nbFailed;
+    }
+
+    /**
+     * @return the micro metrics of the dataset, i.e. the measures computed on the sums of the counts of the pages
+     */
+    public Metrics getMicro() {
+        return new Metrics(threshold, counts[0], counts[1], counts[2], counts[3], counts[4],
+                counts[5], counts[6], counts[7], counts[8], counts[9], counts[10], counts[11], counts[12]);
+    }
+
+    /**
+     * @return the micro results of the dataset, with "micro-average" as filename
+     */
+    public Results getMicroResults() {
+        Results micro = new Results(getMicro());
+        micro.put(Results.FILENAME, "micro-average");
+        return micro;
+    }
+
+    /**
+     * @return the macro results of the dataset, i.e. the average of every measure over the pages where it is
+     * finite (NaN if none), with "average" as filename
+     */
+    public Results getMacroResults() {
+        Results macro = new Results();
+        macro.put(Results.FILENAME, "average");
+        macro.put(Results.MATCHING_THRESHOLD, threshold);
+        for (int i = 0; i < sums.length; i++) {
+            macro.put(Results.MEASURES[i], (defined[i] > 0) ? sums[i].doubleValue() / defined[i] : Double.NaN);
+        }
+        return macro;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return the value of a key=value line
+     * @throws IOException if the line is not about the expected key
+     */
+    private static String value(String fName, String line, String key) throws IOException {
+        if (!line.startsWith(key + "=")) {
+            throw new IOException(fName + ": expected " + key + " but found '" + line + "'");
+        }
+        return line.substring(key.length() + 1).trim();
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.apache.log4j.Logger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * BandReader class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Reads an image in horizontal bands, never holding more than one band in memory
+ * Bands are read with the source regions of an ImageReader. Most readers decode the image from its
+ * start for each region, which is quadratic in the number of bands: non-interlaced 8 bits gray, RGB and
+ * RGBA PNG files (the usual GT images) are therefore decoded sequentially instead, one row after the
+ * other, into the same image types as ImageIO.read(). Bands are expected in increasing order.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class BandReader implements Closeable {
+
+    /**
+     * Log4j logger
+     */
+    private static final Logger logger = Logger.getLogger(BandReader.class);
+    /**
+     * Signature of the PNG files
+     */
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    /**
+     * PNG color types decoded sequentially
+     */
+    private static final int PNG_GRAY = 0;
+    private static final int PNG_RGB = 2;
+    private static final int PNG_RGBA = 6;
+    /**
+     * The image file
+     */
+    private final File file;
+    /**
+     * Size of the image
+     */
+    private int width;
+    private int height;
+
+    /**
+     * Sequential PNG decoding: the color type, the bytes per pixel, the inflated rows (with their filter
+     * byte) and the next row to decode. The stream is null if the image is read with an ImageReader.
+     */
+    private DataInputStream png = null;
+    private Inflater inflater = null;
+    private int colorType;
+    private int bytesPerPixel;
+    private byte[] previousRow;
+    private byte[] currentRow;
+    private int nextRow;
+
+    /**
+     * Region reading with an ImageReader (null if the image is decoded sequentially)
+     */
+    private ImageInputStream stream = null;
+    private ImageReader reader = null;
+
+    /**
+     * Open an image
+     *
+     * @param path the path of the image
+     * @throws IOException if the image cannot be read
+     */
+    public BandReader(String path) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        this.file = new File(path);
+        if (!file.canRead()) {
+            throw new IOException("cannot read image: " + path);
+        }
+        if (!openPng()) {
+            openReader();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Read a band of the image
+     *
+     * @param fromY first row of the band (inclusive)
+     * @param toY   last row of the band (exclusive)
+     * @return the rows [fromY, toY) of the image, with the same type as ImageIO.read() would return
+     * @throws IOException if the image cannot be decoded
+     */
+    public BufferedImage read(int fromY, int toY) throws IOException {
+        if (fromY < 0 || toY > height || fromY >= toY) {
+            throw new IllegalArgumentException("invalid band [" + fromY + ", " + toY + ") of an image of height " + height);
+        }
+        if (reader != null) {
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(0, fromY, width, toY - fromY));
+            return reader.read(0, param);
+        }
+
+        // Decoding is sequential: start over for a band above the last one
+        if (fromY < nextRow) {
+            closePng();
+            if (!openPng()) {
+                throw new IOException("cannot decode image: " + file);
+            }
+        }
+        while (nextRow < fromY) {
+            decodeRow();
+        }
+
+        BufferedImage band;
+        switch (colorType) {
+            case PNG_GRAY:
+                band = new BufferedImage(width, toY - fromY, BufferedImage.TYPE_BYTE_GRAY);
+                break;
+            case PNG_RGB:
+                band = new BufferedImage(width, toY - fromY, BufferedImage.TYPE_3BYTE_BGR);
+                break;
+            default:
+                band = new BufferedImage(width, toY - fromY, BufferedImage.TYPE_4BYTE_ABGR);
+        }
+        byte[] data = ((DataBufferByte) band.getRaster().getDataBuffer()).getData();
+        int rowLength = width * bytesPerPixel;
+        for (int y = 0; y < toY - fromY; y++) {
+            decodeRow();
+            int offset = y * rowLength;
+            switch (colorType) {
+                case PNG_GRAY:
+                    System.arraycopy(currentRow, 1, data, offset, rowLength);
+                    break;
+                case PNG_RGB:
+                    // RGB -> BGR
+                    for (int i = 1; i <= rowLength; i += 3, offset += 3) {
+                        data[offset] = currentRow[i + 2];
+                        data[offset + 1] = currentRow[i + 1];
+                        data[offset + 2] = currentRow[i];
+                    }
+                    break;
+                default:
+                    // RGBA -> ABGR
+                    for (int i = 1; i <= rowLength; i += 4, offset += 4) {
+                        data[offset] = currentRow[i + 3];
+                        data[offset + 1] = currentRow[i + 2];
+                        data[offset + 2] = currentRow[i + 1];
+                        data[offset + 3] = currentRow[i];
+                    }
+            }
+        }
+        return band;
+    }
+
+    /**
+     * @return the width of the image
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the image
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closePng();
+        if (reader != null) {
+            reader.dispose();
+            reader = null;
+        }
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Open the image for sequential decoding, if it is a PNG file which can be decoded sequentially
+     *
+     * @return false if the image has to be read with an ImageReader
+     * @throws IOException if the file cannot be read
+     */
+    private boolean openPng() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        boolean opened = false;
+        try {
+            byte[] signature = new byte[PNG_SIGNATURE.length];
+            try {
+                in.readFully(signature);
+            } catch (EOFException e) {
+                return false;
+            }
+            if (!Arrays.equals(signature, PNG_SIGNATURE)) {
+                return false;
+            }
+
+            // IHDR
+            if (in.readInt() != 13 || !readChunkType(in).equals("IHDR")) {
+                return false;
+            }
+            width = in.readInt();
+            height = in.readInt();
+            int bitDepth = in.readUnsignedByte();
+            colorType = in.readUnsignedByte();
+            int compression = in.readUnsignedByte();
+            int filter = in.readUnsignedByte();
+            int interlace = in.readUnsignedByte();
+            in.readInt();
+            if (bitDepth != 8 || compression != 0 || filter != 0 || interlace != 0
+                    || (colorType != PNG_GRAY && colorType != PNG_RGB && colorType != PNG_RGBA)) {
+                return false;
+            }
+
+            // Skip the chunks up to the first IDAT. Transparency and color profiles change the type of the
+            // image decoded by ImageIO, such images are left to the ImageReader.
+            int length = in.readInt();
+            String type = readChunkType(in);
+            while (!type.equals("IDAT")) {
+                if (type.equals("tRNS") || type.equals("iCCP") || type.equals("IEND")) {
+                    return false;
+                }
+                skipFully(in, length + 4L);
+                length = in.readInt();
+                type = readChunkType(in);
+            }
+
+            bytesPerPixel = (colorType == PNG_GRAY) ? 1 : (colorType == PNG_RGB) ? 3 : 4;
+            previousRow = new byte[1 + width * bytesPerPixel];
+            currentRow = new byte[previousRow.length];
+            nextRow = 0;
+            inflater = new Inflater();
+            png = new DataInputStream(new InflaterInputStream(new IdatStream(in, length), inflater, 65536));
+            opened = true;
+            logger.debug("decoding " + file + " sequentially");
+            return true;
+        } finally {
+            if (!opened) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Open the image with an ImageReader
+     *
+     * @throws IOException if no reader can decode the image
+     */
+    private void openReader() throws IOException {
+        stream = ImageIO.createImageInputStream(file);
+        Iterator<ImageReader> readers = (stream != null) ? ImageIO.getImageReaders(stream) : null;
+        if (readers == null || !readers.hasNext()) {
+            close();
+            throw new IOException("cannot decode image: " + file);
+        }
+        reader = readers.next();
+        reader.setInput(stream, true, true);
+        width = reader.getWidth(0);
+        height = reader.getHeight(0);
+        logger.debug("reading " + file + " with " + reader.getClass().getSimpleName());
+    }
+
+    /**
+     * Close the sequential decoding
+     */
+    private void closePng() throws IOException {
+        if (png != null) {
+            png.close();
+            png = null;
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    /**
+     * Inflate and unfilter the next row in currentRow (the previous one being in previousRow)
+     */
+    private void decodeRow() throws IOException {
+        byte[] row = previousRow;
+        previousRow = currentRow;
+        currentRow = row;
+        png.readFully(row);
+
+        int bpp = bytesPerPixel;
+        byte[] prior = previousRow;
+        switch (row[0]) {
+            case 0:
+                break;
+            case 1: // Sub
+                for (int i = 1 + bpp; i < row.length; i++) {
+                    row[i] += row[i - bpp];
+                }
+                break;
+            case 2: // Up
+                for (int i = 1; i < row.length; i++) {
+                    row[i] += prior[i];
+                }
+                break;
+            case 3: // Average
+                for (int i = 1; i < row.length; i++) {
+                    int left = (i > bpp) ? row[i - bpp] & 0xFF : 0;
+                    row[i] += (left + (prior[i] & 0xFF)) >> 1;
+                }
+                break;
+            case 4: // Paeth
+                for (int i = 1; i < row.length; i++) {
+                    int a = (i > bpp) ? row[i - bpp] & 0xFF : 0;
+                    int b = prior[i] & 0xFF;
+                    int c = (i > bpp) ? prior[i - bpp] & 0xFF : 0;
+                    int pa = Math.abs(b - c);
+                    int pb = Math.abs(a - c);
+                    int pc = Math.abs(a + b - 2 * c);
+                    row[i] += (pa <= pb && pa <= pc) ? a : (pb <= pc) ? b : c;
+                }
+                break;
+            default:
+                throw new IOException("invalid PNG filter " + row[0] + " in row " + nextRow + " of " + file);
+        }
+        nextRow++;
+    }
+
+    /**
+     * @return the type of a PNG chunk
+     */
+    private static String readChunkType(DataInputStream in) throws IOException {
+        byte[] type = new byte[4];
+        in.readFully(type);
+        return new String(type, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Skip exactly n bytes of a stream
+     */
+    private static void skipFully(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    /**
+     * The concatenated data of the consecutive IDAT chunks of a PNG file
+     */
+    private static final class IdatStream extends InputStream {
+        private final DataInputStream in;
+        private int remaining;
+        private boolean done = false;
+
+        IdatStream(DataInputStream in, int length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) < 0) ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            // Go to the next IDAT chunk (skipping the CRC of the current one)
+            while (remaining == 0 && !done) {
+                in.readInt();
+                remaining = in.readInt();
+                if (!readChunkType(in).equals("IDAT")) {
+                    remaining = 0;
+                    done = true;
+                }
+            }
+            if (done) {
+                return -1;
+            }
+            int n = in.read(b, off, Math.min(len, remaining));
+            if (n < 0) {
+                throw new EOFException("truncated PNG data");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,719 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.apache.log4j.Logger;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * BatchEvaluator class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Evaluate many pages in one JVM
+ * Each page is loaded, evaluated and its visualization written by a worker of a fixed size
+ * thread pool. All the workers share the same (stateless) LineSegmentationEvaluator.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class BatchEvaluator {
+
+    /**
+     * Log4j logger
+     */
+    private static final Logger logger = Logger.getLogger(BatchEvaluator.class);
+    /**
+     * The evaluator shared by all the workers
+     */
+    private final LineSegmentationEvaluator evaluator;
+    /**
+     * The IU thresholds for line matching (one results per threshold and page)
+     */
+    private final double[] thresholds;
+    /**
+     * Number of pages evaluated concurrently
+     */
+    private final int threads;
+    /**
+     * Whether the visualization (and overlap) of the pages are written
+     */
+    private final boolean visualize;
+    /**
+     * Cache of the decoded ground truth (null if none)
+     */
+    private final GroundTruthCache cache;
+    /**
+     * Whether the wall time of the phases and the counters of each page are recorded (see Results.getStats())
+     */
+    private final boolean instrumented;
+    /**
+     * Number of rows of the bands in which the GT images are read, 0 to read them whole
+     * (see LineSegmentationEvaluator.evaluateBanded())
+     */
+    private final int bandHeight;
+    /**
+     * Stages of the pipeline evaluating the pages, null to evaluate each page in a single task
+     */
+    private final Pipeline pipeline;
+    /**
+     * Budget of the memory of the pages evaluated concurrently (null if none)
+     */
+    private final MemoryBudget budget;
+    /**
+     * Settings of the PNG encoder writing the visualization and the overlap
+     */
+    private final PngFormat png;
+
+    /**
+     * Build a batch evaluator from its settings (see builder())
+     */
+    private BatchEvaluator(Builder builder) {
+        this.evaluator = builder.evaluator;
+        this.thresholds = builder.thresholds.clone();
+        this.threads = builder.threads;
+        this.visualize = builder.visualize;
+        this.cache = builder.cache;
+        this.instrumented = builder.instrumented;
+        this.bandHeight = builder.bandHeight;
+        this.pipeline = builder.pipeline;
+        this.budget = builder.budget;
+        this.png = builder.png;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Start building a batch evaluator. By default it matches the lines at the threshold 0.75, evaluates
+     * one page at a time and writes the visualization of the pages, without cache, stats, bands, pipeline
+     * or memory budget, with the default settings of the PNG encoder.
+     *
+     * @param evaluator the evaluator shared by all the workers
+     * @return the builder of the batch evaluator
+     */
+    public static Builder builder(LineSegmentationEvaluator evaluator) {
+        return new Builder(evaluator);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Evaluate a list of pages concurrently. The outputs of each page are written in the output
+     * directory, prefixed with the name of the page.
+     *
+     * @param pages     the pages to evaluate
+     * @param outputDir the output directory
+     * @return the results of each page in the order of the list (null for the pages which failed)
+     */
+    public List<Results> evaluate(List<Page> pages, String outputDir) {
+        List<Results> results = new ArrayList<>(pages.size());
+        for (List<Results> sweep : evaluateSweep(pages, outputDir)) {
+            results.add((sweep != null) ? sweep.get(0) : null);
+        }
+        return results;
+    }
+
+    /**
+     * Evaluate a list of pages concurrently for every threshold. The outputs of each page are
+     * written in the output directory, prefixed with the name of the page.
+     *
+     * @param pages     the pages to evaluate
+     * @param outputDir the output directory
+     * @return the results of each page (one per threshold) in the order of the list (null for the pages which failed)
+     */
+    public List<List<Results>> evaluateSweep(List<Page> pages, String outputDir) {
+        return evaluateSweep(pages, outputDir, null);
+    }
+
+    /**
+     * Evaluate a list of pages concurrently for every threshold, and add the results of each page to
+     * the aggregator of its threshold as soon as the page is done (in the order of the list).
+     *
+     * @param pages       the pages to evaluate
+     * @param outputDir   the output directory
+     * @param aggregators the aggregators, one per threshold (null if none)
+     * @return the results of each page (one per threshold) in the order of the list (null for the pages which failed)
+     */
+    public List<List<Results>> evaluateSweep(List<Page> pages, String outputDir, List<Aggregator> aggregators) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        if (!new File(outputDir).isDirectory() && !new File(outputDir).mkdirs()) {
+            logger.error("cannot create output directory " + outputDir);
+        }
+
+        List<ExecutorService> pools = new ArrayList<>();
+        List<List<Results>> results = new ArrayList<>(pages.size());
+        try {
+            List<Future<List<Results>>> futures = (pipeline != null)
+                    ? submitPipelined(pages, outputDir, pools)
+                    : submit(pages, outputDir, pools);
+            for (int i = 0; i < pages.size(); i++) {
+                try {
+                    List<Results> sweep = futures.get(i).get();
+                    if (aggregators != null) {
+                        for (int t = 0; t < aggregators.size(); t++) {
+                            aggregators.get(t).add(sweep.get(t));
+                        }
+                    }
+                    results.add(sweep);
+                } catch (ExecutionException e) {
+                    logger.error("evaluation of page " + pages.get(i) + " failed: " + e.getCause());
+                    logger.debug("evaluation of page " + pages.get(i) + " failed", e.getCause());
+                    if (aggregators != null) {
+                        for (Aggregator aggregator : aggregators) {
+                            aggregator.addFailure();
+                        }
+                    }
+                    results.add(null);
+                }
+            }
+        } catch (InterruptedException | RejectedExecutionException e) {
+            logger.error("batch evaluation interrupted");
+            Thread.currentThread().interrupt();
+        } finally {
+            for (ExecutorService pool : pools) {
+                pool.shutdownNow();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Evaluate a single page and write its visualization (and overlap, if the original image is known)
+     * unless the batch evaluator computes the measures only. The visualization is released from the
+     * results once written.
+     *
+     * @param page       the page to evaluate
+     * @param outputPath the prefix of the output files
+     * @return the results of the page
+     * @throws IOException if the inputs of the page cannot be read
+     */
+    public Results evaluatePage(Page page, String outputPath) throws IOException {
+        return evaluatePageSweep(page, outputPath).get(0);
+    }
+
+    /**
+     * Evaluate a single page for every threshold and write the visualization of the first one
+     * (see evaluatePage())
+     *
+     * @param page       the page to evaluate
+     * @param outputPath the prefix of the output files
+     * @return the results of the page, one per threshold
+     * @throws IOException if the inputs of the page cannot be read
+     */
+    public List<Results> evaluatePageSweep(Page page, String outputPath) throws IOException {
+        PageInput input = new PageInput(page, instrumented ? new Stats() : null);
+        try {
+            load(input, true);
+            return write(evaluate(input), page, outputPath);
+        } finally {
+            release(input);
+        }
+    }
+
+    /**
+     * Load the inputs of a page and evaluate it
+     *
+     * @param page the page to evaluate
+     * @return the results of the page, including the (lazily rendered) visualization
+     * @throws IOException if the inputs of the page cannot be read
+     */
+    public Results evaluate(Page page) throws IOException {
+        return evaluateSweep(page).get(0);
+    }
+
+    /**
+     * Load the inputs of a page and evaluate it for every threshold
+     *
+     * @param page the page to evaluate
+     * @return the results of the page for each threshold, including the (lazily rendered) visualizations
+     * @throws IOException if the inputs of the page cannot be read
+     */
+    public List<Results> evaluateSweep(Page page) throws IOException {
+        PageInput input = new PageInput(page, instrumented ? new Stats() : null);
+        load(input, false);
+        return evaluate(input);
+    }
+
+    /**
+     * Estimate the peak memory footprint of a page from the size of its GT image (read from the header
+     * only) and its polygons: the decoded GT image, the visualization and, with an original image, the
+     * decoded original (4 bytes per pixel each, one band of them when reading the GT in bands; the overlap
+     * is streamed, a few rows at a time), the foreground (1 bit per pixel) and the masks of the polygons (1 bit per pixel of their
+     * bounding boxes). With the cache, the GT polygons are not parsed: their masks are assumed as large as the
+     * predicted ones. The GT image is then not decoded if the cache holds the page, else the cache decodes it
+     * from the GT files read in memory, and also serializes the foreground and the masks to write them.
+     *
+     * @param page       the page
+     * @param truth      the GT polygons, null if not parsed
+     * @param prediction the predicted polygons
+     * @return the estimated footprint, in bytes
+     * @throws IOException if the size of the GT image cannot be read
+     */
+    public long estimateFootprint(Page page, List<Polygon> truth, List<Polygon> prediction) throws IOException {
+        Dimension size = Page.readImageSize(page.getImageGroundTruth());
+        int rows = (bandHeight > 0) ? Math.min(bandHeight, size.height) : size.height;
+
+        boolean cached = bandHeight == 0 && cache != null;
+        boolean decoded = !cached || !cache.contains(page.getImageGroundTruth(), page.getXmlGroundTruth());
+        int images = decoded ? 1 : 0;
+        if (visualize) {
+            images += (page.getOriginal() != null) ? 2 : 1;
+        }
+        long foreground = (((size.width + 63) >> 6) << 3) * (long) rows;
+        long predictionMasks = getMasksFootprint(prediction);
+        long truthMasks = (truth != null) ? getMasksFootprint(truth) : predictionMasks;
+
+        long footprint = 4L * images * size.width * rows + foreground + truthMasks + predictionMasks;
+        if (cached && decoded) {
+            // The contents of the GT files, and the entry serialized in the cache file
+            footprint += new File(page.getImageGroundTruth()).length() + new File(page.getXmlGroundTruth()).length()
+                    + foreground + truthMasks;
+        }
+        return footprint;
+    }
+
+    /**
+     * Write the visualization of the results and, if the original image is known, the overlap
+     *
+     * @param results    the results of the page
+     * @param page       the page
+     * @param outputPath the prefix of the output files
+     */
+    public void writeImages(Results results, Page page, String outputPath) {
+        Stats stats = results.getStats();
+
+        // Results evaluated by bands write their images band by band
+        if (results.getVisualizationWriter() != null) {
+            try {
+                results.getVisualizationWriter().write(new File(outputPath + "-visualization.png"), page.getOriginal(), new File(outputPath + "-overlap.png"), png);
+                logger.info("Writing visualization image in " + outputPath);
+            } catch (IOException e) {
+                logger.error(e);
+            }
+            return;
+        }
+
+        // Write evaluation image
+        BufferedImage visualization = results.getVisualization();
+        try {
+            writePNG(visualization, new File(outputPath + "-visualization.png"), stats);
+            logger.info("Writing visualization image in " + outputPath);
+        } catch (IOException e) {
+            logger.error(e);
+        }
+
+        // If desired, overlap the original image with the visualized result
+        if (page.getOriginal() != null) {
+            try {
+                long start = Stats.start(stats);
+                BufferedImage original = ImageIO.read(new File(page.getOriginal()));
+                Stats.stop(stats, Stats.Phase.PNG_DECODE, start);
+
+                // The overlap is blended and encoded a few rows at a time, in true color
+                File overlap = new File(outputPath + "-overlap.png");
+                boolean alpha = original.getTransparency() != Transparency.OPAQUE
+                        || original.getWidth() < visualization.getWidth() || original.getHeight() < visualization.getHeight();
+                try (PngWriter writer = new PngWriter(overlap, visualization.getWidth(), visualization.getHeight(), alpha, png, null)) {
+                    OverlapCompositor.write(visualization, original, writer, stats);
+                }
+                Stats.add(stats, Stats.Counter.BYTES_WRITTEN, (stats != null) ? overlap.length() : 0);
+                logger.info("Writing overlap image in " + outputPath);
+            } catch (IOException e) {
+                logger.error(e);
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Evaluate each page in a single task on a pool of threads
+     *
+     * @param pages     the pages to evaluate
+     * @param outputDir the output directory
+     * @param pools     the list where the pool is added, to be shut down by the caller
+     * @return the future results of each page, in the order of the list
+     */
+    private List<Future<List<Results>>> submit(List<Page> pages, String outputDir, List<ExecutorService> pools) {
+        logger.info("Evaluating " + pages.size() + " pages on " + threads + " threads");
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        pools.add(pool);
+
+        List<Future<List<Results>>> futures = new ArrayList<>(pages.size());
+        for (Page page : pages) {
+            futures.add(pool.submit(() -> evaluatePageSweep(page, outputDir + File.separator + page.getName())));
+        }
+        return futures;
+    }
+
+    /**
+     * Run the pages through the stages of the pipeline. Submitting waits while the loading stage is full.
+     *
+     * @param pages     the pages to evaluate
+     * @param outputDir the output directory
+     * @param pools     the list where the stages are added, to be shut down by the caller
+     * @return the future results of each page, in the order of the list
+     */
+    private List<Future<List<Results>>> submitPipelined(List<Page> pages, String outputDir, List<ExecutorService> pools) {
+        logger.info("Evaluating " + pages.size() + " pages in a pipeline of " + pipeline.getLoaders() + " loading, "
+                + pipeline.getEvaluators() + " evaluating and " + pipeline.getWriters() + " writing threads");
+        ExecutorService loaders = pipeline.newLoadingStage();
+        pools.add(loaders);
+        ExecutorService evaluators = pipeline.newEvaluatingStage();
+        pools.add(evaluators);
+        ExecutorService writers = pipeline.newWritingStage();
+        pools.add(writers);
+
+        List<Future<List<Results>>> futures = new ArrayList<>(pages.size());
+        for (Page page : pages) {
+            String outputPath = outputDir + File.separator + page.getName();
+            PageInput pageInput = new PageInput(page, instrumented ? new Stats() : null);
+            futures.add(CompletableFuture
+                    .supplyAsync(() -> {
+                        try {
+                            load(pageInput, true);
+                            return pageInput;
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, loaders)
+                    .thenApplyAsync(input -> {
+                        try {
+                            return evaluate(input);
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, evaluators)
+                    .thenApplyAsync(results -> write(results, page, outputPath), writers)
+                    .whenComplete((results, e) -> release(pageInput)));
+        }
+        return futures;
+    }
+
+    /**
+     * Load the inputs of a page: the polygons, and the GT image or its decoded form from the cache.
+     * With a memory budget, the page is admitted once the polygons are parsed and before anything
+     * large is loaded; its reservation must then be released (see release()).
+     *
+     * @param input the inputs of the page, filled in
+     * @param admit whether the page must be admitted within the memory budget (if any)
+     * @throws IOException if the inputs of the page cannot be read
+     */
+    private void load(PageInput input, boolean admit) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        Page page = input.page;
+        Stats stats = input.stats;
+        Stats.add(stats, Stats.Counter.PAGES, 1);
+
+        // Loading prediction XML
+        logger.info("Loading method output from " + page.getXmlPrediction());
+        long start = Stats.start(stats);
+        input.prediction = ImageLinePageDataset.readDataFromFile(page.getXmlPrediction());
+        Stats.stop(stats, Stats.Phase.XML_PARSE, start);
+        if (input.prediction == null) {
+            throw new IOException("cannot read the polygons of page " + page);
+        }
+
+        boolean cached = bandHeight == 0 && cache != null;
+        if (!cached) {
+            // Loading GT XML
+            logger.info("Loading page ground truth from " + page.getXmlGroundTruth());
+            start = Stats.start(stats);
+            input.truth = ImageLinePageDataset.readDataFromFile(page.getXmlGroundTruth());
+            Stats.stop(stats, Stats.Phase.XML_PARSE, start);
+            if (input.truth == null) {
+                throw new IOException("cannot read the polygons of page " + page);
+            }
+        }
+
+        // Wait until the page fits in the memory budget
+        if (admit && budget != null) {
+            long footprint = estimateFootprint(page, input.truth, input.prediction);
+            start = Stats.start(stats);
+            try {
+                input.reservation = budget.acquire(page.getName(), footprint);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for memory for page " + page);
+            }
+            Stats.stop(stats, Stats.Phase.ADMISSION, start);
+            logger.debug("page " + page + " admitted with an estimated footprint of " + (footprint >> 20) + " MB");
+        }
+
+        if (cached) {
+            // Loading the decoded GT from the cache
+            logger.info("Loading ground truth from cache for " + page.getImageGroundTruth());
+            start = Stats.start(stats);
+            input.cached = cache.load(page.getImageGroundTruth(), page.getXmlGroundTruth());
+            Stats.stop(stats, Stats.Phase.CACHE_LOAD, start);
+        } else if (bandHeight == 0) {
+            // Loading the image GT (read band by band when evaluating otherwise)
+            logger.info("Loading image ground truth from " + page.getImageGroundTruth());
+            start = Stats.start(stats);
+            input.image = ImageIO.read(new File(page.getImageGroundTruth()));
+            Stats.stop(stats, Stats.Phase.PNG_DECODE, start);
+            if (input.image == null) {
+                throw new IOException("cannot decode image: " + page.getImageGroundTruth());
+            }
+        }
+    }
+
+    /**
+     * Give back the memory reserved by a page, if any
+     *
+     * @param input the inputs of the page
+     */
+    private void release(PageInput input) {
+        if (input.reservation > 0) {
+            budget.release(input.reservation);
+            input.reservation = 0;
+        }
+        // The inputs are not needed anymore, even if the future of the page holds them
+        input.image = null;
+        input.cached = null;
+    }
+
+    /**
+     * @return the memory footprint of the masks of polygons, 1 bit per pixel of their bounding boxes (or
+     * of the bands of them)
+     */
+    private long getMasksFootprint(List<Polygon> polygons) {
+        long bytes = 0;
+        for (Polygon polygon : polygons) {
+            Rectangle bounds = polygon.getBounds();
+            int rows = (bandHeight > 0) ? Math.min(bandHeight, bounds.height) : bounds.height;
+            bytes += (long) (((Math.max(bounds.width, 0) + 127) >> 6) << 3) * Math.max(rows, 0);
+        }
+        return bytes;
+    }
+
+    /**
+     * Evaluate the loaded inputs of a page for every threshold
+     *
+     * @param input the inputs of the page
+     * @return the results of the page for each threshold, including the (lazily rendered) visualizations
+     * @throws IOException if the GT image cannot be read (evaluation by bands only)
+     */
+    private List<Results> evaluate(PageInput input) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        Page page = input.page;
+        Stats stats = input.stats;
+        List<Results> results;
+        if (input.cached != null) {
+            long start = Stats.start(stats);
+            List<PolygonMask> outputMasks = PolygonMask.rasterize(input.prediction);
+            Stats.stop(stats, Stats.Phase.RASTERIZE, start);
+
+            // Evaluating the prediction provided
+            logger.info("Evaluating " + page + "...");
+            results = evaluator.evaluateMasks(input.cached.getForeground(), input.cached.getMasks(), outputMasks, thresholds, stats);
+        } else if (input.image == null) {
+            logger.info("Evaluating " + page + " in bands of " + bandHeight + " rows...");
+            results = evaluator.evaluateBanded(page.getImageGroundTruth(), input.truth, input.prediction, thresholds, bandHeight, stats);
+        } else {
+            // Evaluating the prediction provided
+            logger.info("Evaluating " + page + "...");
+            results = evaluator.evaluate(input.image, input.truth, input.prediction, thresholds, stats);
+        }
+
+        // Add the prediction filename (and the stats) to the results
+        for (Results r : results) {
+            r.put(Results.FILENAME, page.getName());
+            r.setStats(stats);
+        }
+        return results;
+    }
+
+    /**
+     * Write the visualization of the first threshold of a page, unless the batch evaluator computes the
+     * measures only, then release the visualizations
+     *
+     * @param results    the results of the page, one per threshold
+     * @param page       the page
+     * @param outputPath the prefix of the output files
+     * @return the results
+     */
+    private List<Results> write(List<Results> results, Page page, String outputPath) {
+        if (visualize) {
+            writeImages(results.get(0), page, outputPath);
+        }
+        for (Results r : results) {
+            r.setVisualization(null);
+        }
+        return results;
+    }
+
+    /**
+     * Write an image as PNG file
+     *
+     * @param image the image
+     * @param file  the PNG file
+     * @param stats the stats of the page, null if disabled
+     * @throws IOException if the file cannot be written
+     */
+    private void writePNG(BufferedImage image, File file, Stats stats) throws IOException {
+        long start = Stats.start(stats);
+        PngWriter.write(image, file, png);
+        Stats.stop(stats, Stats.Phase.PNG_ENCODE, start);
+        Stats.add(stats, Stats.Counter.BYTES_WRITTEN, (stats != null) ? file.length() : 0);
+    }
+
+    /**
+     * The loaded inputs of a page: the polygons, and either the GT decoded from the cache, or the GT
+     * image (null when it is read band by band)
+     */
+    private static final class PageInput {
+        private final Page page;
+        private final Stats stats;
+        private List<Polygon> prediction;
+        private List<Polygon> truth;
+        private BufferedImage image;
+        private GroundTruthCache.Entry cached;
+        private int reservation;
+
+        private PageInput(Page page, Stats stats) {
+            this.page = page;
+            this.stats = stats;
+        }
+    }
+
+    /**
+     * Settings of a batch evaluator, each with its default value
+     */
+    public static final class Builder {
+        private final LineSegmentationEvaluator evaluator;
+        private double[] thresholds = {0.75};
+        private int threads = 1;
+        private boolean visualize = true;
+        private GroundTruthCache cache = null;
+        private boolean instrumented = false;
+        private int bandHeight = 0;
+        private Pipeline pipeline = null;
+        private MemoryBudget budget = null;
+        private PngFormat png = PngFormat.DEFAULT;
+
+        private Builder(LineSegmentationEvaluator evaluator) {
+            this.evaluator = evaluator;
+        }
+
+        /**
+         * @param thresholds the IU thresholds for line matching: each page is matched and counted once, then
+         *                   scored for every threshold. The visualization shows the first threshold.
+         */
+        public Builder thresholds(double... thresholds) {
+            this.thresholds = thresholds.clone();
+            return this;
+        }
+
+        /**
+         * @param threads the number of pages evaluated concurrently, without pipeline
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param visualize false to compute the measures only, without rendering any image
+         */
+        public Builder visualize(boolean visualize) {
+            this.visualize = visualize;
+            return this;
+        }
+
+        /**
+         * @param cache the cache of the decoded ground truth, null if none
+         */
+        public Builder cache(GroundTruthCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * @param instrumented whether the wall time of the phases and the counters of each page are recorded.
+         *                     The stats of a page are shared by its results (see Results.getStats()).
+         */
+        public Builder instrumented(boolean instrumented) {
+            this.instrumented = instrumented;
+            return this;
+        }
+
+        /**
+         * @param bandHeight the number of rows of the bands in which the GT images are read, such that the
+         *                   memory needed by a page does not depend on its height (the cache is then not
+         *                   used), 0 to read them whole
+         */
+        public Builder bandHeight(int bandHeight) {
+            this.bandHeight = bandHeight;
+            return this;
+        }
+
+        /**
+         * @param pipeline the stages loading, evaluating and writing the pages, with their own threads and
+         *                 bounded queues (the number of threads is then ignored), null to evaluate each page
+         *                 in a single task
+         */
+        public Builder pipeline(Pipeline pipeline) {
+            this.pipeline = pipeline;
+            return this;
+        }
+
+        /**
+         * @param budget the memory budget of the pages evaluated concurrently: each page waits until its
+         *               estimated footprint fits in it (see estimateFootprint()), null for none
+         */
+        public Builder budget(MemoryBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        /**
+         * @param png the settings of the PNG encoder writing the visualization and the overlap
+         */
+        public Builder png(PngFormat png) {
+            this.png = png;
+            return this;
+        }
+
+        /**
+         * @return the batch evaluator
+         * @throws IllegalArgumentException if a setting is invalid
+         */
+        public BatchEvaluator build() {
+            if (thresholds.length == 0) {
+                throw new IllegalArgumentException("at least one matching threshold is needed");
+            }
+            if (threads < 1) {
+                throw new IllegalArgumentException("at least one thread is needed, got " + threads);
+            }
+            if (bandHeight < 0) {
+                throw new IllegalArgumentException("the height of the bands cannot be negative, got " + bandHeight);
+            }
+            return new BatchEvaluator(this);
+        }
+    }
+}
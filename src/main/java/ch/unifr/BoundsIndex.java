@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.apache.log4j.Logger;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * BoundsIndex class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Spatial index over the bounding boxes of a set of polygons
+ * The bounding boxes are registered in every cell of a uniform grid they overlap. A query visits
+ * only the cells overlapped by the query rectangle and reports each bounding box once, from the
+ * cell containing the top-left corner of its intersection with the query rectangle. This replaces
+ * the |GT| x |P| nested loop on Rectangle.intersects() when generating the candidate pairs.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class BoundsIndex {
+
+    /**
+     * Log4j logger
+     */
+    private static final Logger logger = Logger.getLogger(BoundsIndex.class);
+    /**
+     * Maximal number of cells along each axis of the grid
+     */
+    private static final int MAX_CELLS = 256;
+    /**
+     * Bounding boxes of the indexed polygons
+     */
+    private final Rectangle[] bounds;
+    /**
+     * Geometry of the grid
+     */
+    private final int originX;
+    private final int originY;
+    private final long cellWidth;
+    private final long cellHeight;
+    private final int columns;
+    private final int rows;
+    /**
+     * Compressed cells: the indexes registered in cell c are entries[cellStart[c] .. cellStart[c+1])
+     */
+    private final int[] cellStart;
+    private final int[] entries;
+
+    /**
+     * Build the index
+     *
+     * @param masks the rasterized polygons to index
+     */
+    public BoundsIndex(List<PolygonMask> masks) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        bounds = new Rectangle[masks.size()];
+        long minX = Long.MAX_VALUE;
+        long minY = Long.MAX_VALUE;
+        long maxX = Long.MIN_VALUE;
+        long maxY = Long.MIN_VALUE;
+        int nbIndexed = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = masks.get(i).getBounds();
+            if (!isEmpty(bounds[i])) {
+                minX = Math.min(minX, bounds[i].x);
+                minY = Math.min(minY, bounds[i].y);
+                maxX = Math.max(maxX, (long) bounds[i].x + bounds[i].width);
+                maxY = Math.max(maxY, (long) bounds[i].y + bounds[i].height);
+                nbIndexed++;
+            }
+        }
+
+        if (nbIndexed == 0) {
+            originX = originY = 0;
+            cellWidth = cellHeight = 1;
+            columns = rows = 1;
+            cellStart = new int[2];
+            entries = new int[0];
+            return;
+        }
+
+        // Aim at about one polygon per cell
+        int cells = (int) Math.min(MAX_CELLS, Math.max(1, Math.ceil(Math.sqrt(nbIndexed))));
+        originX = (int) minX;
+        originY = (int) minY;
+        cellWidth = Math.max(1, (maxX - minX + cells - 1) / cells);
+        cellHeight = Math.max(1, (maxY - minY + cells - 1) / cells);
+        columns = (int) ((maxX - minX + cellWidth - 1) / cellWidth);
+        rows = (int) ((maxY - minY + cellHeight - 1) / cellHeight);
+
+        // Count the entries of each cell, then fill them (in ascending polygon index)
+        cellStart = new int[columns * rows + 1];
+        for (Rectangle r : bounds) {
+            if (!isEmpty(r)) {
+                for (int cy = row(r.y); cy <= row((long) r.y + r.height - 1); cy++) {
+                    for (int cx = column(r.x); cx <= column((long) r.x + r.width - 1); cx++) {
+                        cellStart[cy * columns + cx + 1]++;
+                    }
+                }
+            }
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        entries = new int[cellStart[columns * rows]];
+        int[] fill = Arrays.copyOf(cellStart, columns * rows);
+        for (int i = 0; i < bounds.length; i++) {
+            Rectangle r = bounds[i];
+            if (!isEmpty(r)) {
+                for (int cy = row(r.y); cy <= row((long) r.y + r.height - 1); cy++) {
+                    for (int cx = column(r.x); cx <= column((long) r.x + r.width - 1); cx++) {
+                        entries[fill[cy * columns + cx]++] = i;
+                    }
+                }
+            }
+        }
+        logger.debug("indexed " + nbIndexed + " bounding boxes in a " + columns + "x" + rows + " grid");
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Find all the indexed bounding boxes intersecting a rectangle (as in Rectangle.intersects())
+     *
+     * @param query the rectangle
+     * @return the indexes of the intersecting polygons, in ascending order
+     */
+    public int[] query(Rectangle query) {
+        if (isEmpty(query) || entries.length == 0) {
+            return new int[0];
+        }
+
+        int[] result = new int[16];
+        int size = 0;
+        int minColumn = column(query.x);
+        int maxColumn = column((long) query.x + query.width - 1);
+        int minRow = row(query.y);
+        int maxRow = row((long) query.y + query.height - 1);
+        for (int cy = minRow; cy <= maxRow; cy++) {
+            for (int cx = minColumn; cx <= maxColumn; cx++) {
+                int cell = cy * columns + cx;
+                for (int e = cellStart[cell]; e < cellStart[cell + 1]; e++) {
+                    Rectangle r = bounds[entries[e]];
+                    if (!query.intersects(r)) {
+                        continue;
+                    }
+                    // Report the pair only once, from the cell holding the top-left corner of the intersection
+                    if (column(Math.max(query.x, r.x)) != cx || row(Math.max(query.y, r.y)) != cy) {
+                        continue;
+                    }
+                    if (size == result.length) {
+                        result = Arrays.copyOf(result, size * 2);
+                    }
+                    result[size++] = entries[e];
+                }
+            }
+        }
+
+        result = Arrays.copyOf(result, size);
+        Arrays.sort(result);
+        return result;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return true if the rectangle cannot intersect anything (see Rectangle.intersects())
+     */
+    private static boolean isEmpty(Rectangle r) {
+        return r.width <= 0 || r.height <= 0;
+    }
+
+    /**
+     * @param x an x coordinate
+     * @return the column of the grid containing x, clamped to the grid
+     */
+    private int column(long x) {
+        return (int) Math.max(0, Math.min(columns - 1, Math.floorDiv(x - originX, cellWidth)));
+    }
+
+    /**
+     * @param y a y coordinate
+     * @return the row of the grid containing y, clamped to the grid
+     */
+    private int row(long y) {
+        return (int) Math.max(0, Math.min(rows - 1, Math.floorDiv(y - originY, cellHeight)));
+    }
+}
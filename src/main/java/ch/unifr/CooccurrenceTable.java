@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.apache.log4j.Logger;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * CooccurrenceTable class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Sparse GT-line x prediction-line co-occurrence table
+ * The foreground of the GT image is walked only once, a row at a time. On each row, the foreground area
+ * of every line active on the row, and the intersection (in foreground pixels) of every pair of active GT
+ * and prediction lines overlapping horizontally, are counted 64 pixels at a time, with AND and
+ * Long.bitCount() on the words of their masks and of the foreground, and only on the words their bounding
+ * boxes cover. The IU of any pair is then derived from the table without visiting the pixels again:
+ * union = area(GT) + area(prediction) - intersection.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class CooccurrenceTable {
+
+    /**
+     * Log4j logger
+     */
+    private static final Logger logger = Logger.getLogger(CooccurrenceTable.class);
+    /**
+     * Marker for the empty slots of the hash table
+     */
+    private static final long EMPTY = -1L;
+    /**
+     * Foreground area (in pixels) of each GT line
+     */
+    private final int[] groundTruthAreas;
+    /**
+     * Foreground area (in pixels) of each prediction line
+     */
+    private final int[] predictionAreas;
+    /**
+     * Open addressing hash table of the intersections: key = (gt << 32 | prediction), value = count
+     */
+    private long[] keys;
+    private int[] counts;
+    private int size = 0;
+
+    /**
+     * Build the co-occurrence table
+     *
+     * @param foreground  the countable foreground of the ground truth image
+     * @param groundTruth the rasterized GT polygons
+     * @param prediction  the rasterized prediction polygons
+     */
+    public CooccurrenceTable(ForegroundMask foreground, List<PolygonMask> groundTruth, List<PolygonMask> prediction) {
+        this(foreground, groundTruth, prediction, 0, foreground.getHeight());
+    }
+
+    /**
+     * Build the co-occurrence table of a horizontal band of the image. The tables of disjoint
+     * bands can be summed up with merge().
+     *
+     * @param foreground  the countable foreground of the ground truth image
+     * @param groundTruth the rasterized GT polygons
+     * @param prediction  the rasterized prediction polygons
+     * @param fromY       first row of the band (inclusive)
+     * @param toY         last row of the band (exclusive)
+     */
+    public CooccurrenceTable(ForegroundMask foreground, List<PolygonMask> groundTruth, List<PolygonMask> prediction, int fromY, int toY) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        groundTruthAreas = new int[groundTruth.size()];
+        predictionAreas = new int[prediction.size()];
+        keys = new long[1024];
+        counts = new int[keys.length];
+        Arrays.fill(keys, EMPTY);
+
+        // Lines sorted by their first row, to maintain the list of lines active on each row
+        Integer[] gtOrder = sortByMinY(groundTruth);
+        Integer[] pOrder = sortByMinY(prediction);
+        int[] gtActive = new int[groundTruth.size()];
+        int[] pActive = new int[prediction.size()];
+        int nbGtActive = 0;
+        int nbPActive = 0;
+        int gtNext = 0;
+        int pNext = 0;
+
+        // Words of the rows covered by each line (clipped to the image)
+        long[] fg = foreground.getBits();
+        int fgWordsPerRow = (foreground.getWidth() + 63) >> 6;
+        int[] gtFromWord = new int[groundTruth.size()];
+        int[] gtToWord = new int[groundTruth.size()];
+        getWords(groundTruth, fgWordsPerRow, gtFromWord, gtToWord);
+        int[] pFromWord = new int[prediction.size()];
+        int[] pToWord = new int[prediction.size()];
+        getWords(prediction, fgWordsPerRow, pFromWord, pToWord);
+
+        int y0 = Math.max(fromY, foreground.getFromY());
+        int y1 = Math.min(toY, foreground.getFromY() + foreground.getRows());
+        for (int y = y0; y < y1; y++) {
+
+            // Update the active lines of this row
+            while (gtNext < gtOrder.length && groundTruth.get(gtOrder[gtNext]).getBounds().y <= y) {
+                gtActive[nbGtActive++] = gtOrder[gtNext++];
+            }
+            while (pNext < pOrder.length && prediction.get(pOrder[pNext]).getBounds().y <= y) {
+                pActive[nbPActive++] = pOrder[pNext++];
+            }
+            nbGtActive = retainActive(groundTruth, gtActive, nbGtActive, y);
+            nbPActive = retainActive(prediction, pActive, nbPActive, y);
+            if (nbGtActive == 0 && nbPActive == 0) {
+                continue;
+            }
+            int fi = (y - foreground.getFromY()) * fgWordsPerRow;
+
+            // Foreground area of the lines (boundary and background pixels are not in the foreground)
+            for (int a = 0; a < nbGtActive; a++) {
+                int g = gtActive[a];
+                groundTruthAreas[g] += countRow(groundTruth.get(g), y, fg, fi, gtFromWord[g], gtToWord[g]);
+            }
+            for (int a = 0; a < nbPActive; a++) {
+                int p = pActive[a];
+                predictionAreas[p] += countRow(prediction.get(p), y, fg, fi, pFromWord[p], pToWord[p]);
+            }
+
+            // Intersection of the pairs of lines covering common words
+            for (int a = 0; a < nbGtActive; a++) {
+                int g = gtActive[a];
+                PolygonMask pgt = groundTruth.get(g);
+                for (int b = 0; b < nbPActive; b++) {
+                    int p = pActive[b];
+                    int w0 = Math.max(gtFromWord[g], pFromWord[p]);
+                    int w1 = Math.min(gtToWord[g], pToWord[p]);
+                    int count = 0;
+                    for (int w = w0; w < w1; w++) {
+                        count += Long.bitCount(pgt.getWord(y, w) & prediction.get(p).getWord(y, w) & fg[fi + w]);
+                    }
+                    if (count > 0) {
+                        add(((long) g << 32) | p, count);
+                    }
+                }
+            }
+        }
+        logger.debug(size + " co-occurring pairs");
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Add the counts of another table (built on the same lines, on a disjoint band) to this table
+     *
+     * @param other the other table
+     * @return this table
+     */
+    public CooccurrenceTable merge(CooccurrenceTable other) {
+        for (int i = 0; i < groundTruthAreas.length; i++) {
+            groundTruthAreas[i] += other.groundTruthAreas[i];
+        }
+        for (int i = 0; i < predictionAreas.length; i++) {
+            predictionAreas[i] += other.predictionAreas[i];
+        }
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Get all the co-occurring pairs, sorted by GT index first and prediction index second
+     *
+     * @return the pairs encoded as (gt << 32 | prediction)
+     */
+    public long[] getPairs() {
+        long[] pairs = new long[size];
+        int k = 0;
+        for (long key : keys) {
+            if (key != EMPTY) {
+                pairs[k++] = key;
+            }
+        }
+        Arrays.sort(pairs);
+        return pairs;
+    }
+
+    /**
+     * @param pair a pair encoded as (gt << 32 | prediction)
+     * @return the index of the GT line of the pair
+     */
+    public static int groundTruthOf(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    /**
+     * @param pair a pair encoded as (gt << 32 | prediction)
+     * @return the index of the prediction line of the pair
+     */
+    public static int predictionOf(long pair) {
+        return (int) pair;
+    }
+
+    /**
+     * @param gt         index of the GT line
+     * @param prediction index of the prediction line
+     * @return the number of foreground pixels belonging to both lines
+     */
+    public int getIntersection(int gt, int prediction) {
+        int slot = find(((long) gt << 32) | prediction);
+        return (keys[slot] == EMPTY) ? 0 : counts[slot];
+    }
+
+    /**
+     * @param gt         index of the GT line
+     * @param prediction index of the prediction line
+     * @return the number of foreground pixels belonging to any of the two lines
+     */
+    public int getUnion(int gt, int prediction) {
+        return groundTruthAreas[gt] + predictionAreas[prediction] - getIntersection(gt, prediction);
+    }
+
+    /**
+     * @param gt index of the GT line
+     * @return the number of foreground pixels of the GT line
+     */
+    public int getGroundTruthArea(int gt) {
+        return groundTruthAreas[gt];
+    }
+
+    /**
+     * @param prediction index of the prediction line
+     * @return the number of foreground pixels of the prediction line
+     */
+    public int getPredictionArea(int prediction) {
+        return predictionAreas[prediction];
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param masks the masks to sort
+     * @return the indexes of the masks sorted by the top of their bounding box
+     */
+    private static Integer[] sortByMinY(List<PolygonMask> masks) {
+        Integer[] order = new Integer[masks.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> masks.get(i).getBounds().y));
+        return order;
+    }
+
+    /**
+     * Find the words of the rows of the image covered by the bounding box of each line
+     *
+     * @param masks    the lines
+     * @param maxWord  the number of words of a row of the image
+     * @param fromWord the first word of each line, filled in
+     * @param toWord   the word after the last one of each line, filled in
+     */
+    private static void getWords(List<PolygonMask> masks, int maxWord, int[] fromWord, int[] toWord) {
+        for (int i = 0; i < masks.size(); i++) {
+            Rectangle r = masks.get(i).getBounds();
+            fromWord[i] = Math.max(r.x >> 6, 0);
+            toWord[i] = Math.min((r.x + r.width + 63) >> 6, maxWord);
+        }
+    }
+
+    /**
+     * Count the foreground pixels of a row of a line
+     *
+     * @return the number of foreground pixels of the row y of the line, in the words [fromWord, toWord)
+     */
+    private static int countRow(PolygonMask mask, int y, long[] fg, int fi, int fromWord, int toWord) {
+        int count = 0;
+        for (int w = fromWord; w < toWord; w++) {
+            count += Long.bitCount(mask.getWord(y, w) & fg[fi + w]);
+        }
+        return count;
+    }
+
+    /**
+     * Remove from the active list the lines which ended before the given row
+     *
+     * @return the new number of active lines
+     */
+    private static int retainActive(List<PolygonMask> masks, int[] active, int nbActive, int y) {
+        int k = 0;
+        for (int a = 0; a < nbActive; a++) {
+            Rectangle r = masks.get(active[a]).getBounds();
+            if (r.y + r.height > y) {
+                active[k++] = active[a];
+            }
+        }
+        return k;
+    }
+
+    /**
+     * Add to the count associated with a key, inserting it if needed
+     *
+     * @param key   the pair encoded as (gt << 32 | prediction)
+     * @param count the count to add
+     */
+    private void add(long key, int count) {
+        int slot = find(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                counts[slot] = count;
+                rehash();
+                return;
+            }
+        }
+        counts[slot] += count;
+    }
+
+    /**
+     * Linear probing
+     *
+     * @param key the pair encoded as (gt << 32 | prediction)
+     * @return the slot of the key, or the empty slot where it should be inserted
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Double the capacity of the hash table
+     */
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[keys.length];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.log4j.Logger;
+
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * EvaluationServer class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief HTTP server evaluating predictions against ground truth kept decoded in memory
+ * Avoids paying the JVM startup, the JIT warm-up and the decoding of the GT for every page when the
+ * same GT is evaluated again and again (e.g. the validation pages of a training loop).
+ *
+ * GET or POST /evaluate?igt=GT_IMAGE&xgt=GT_XML&xp=PREDICTION_XML[&mt=THRESHOLDS]
+ * POST /evaluate?igt=GT_IMAGE&xgt=GT_XML[&name=NAME][&mt=THRESHOLDS] with the prediction XML as body
+ * evaluates a page and answers its measures and counts for each threshold as JSON.
+ * The paths are relative to the working directory of the server, or to its root directory if it has one:
+ * the files outside of the root are then refused. The body of a request is limited to MAX_BODY_SIZE bytes.
+ * The server has no authentication: it listens to the loopback address unless told otherwise.
+ *
+ * GET /status answers the number of requests and the hit rate of the GT cache as JSON.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class EvaluationServer {
+
+    /**
+     * Log4j logger
+     */
+    private static final Logger logger = Logger.getLogger(EvaluationServer.class);
+    /**
+     * Maximal size of the body of a request (a prediction XML), in bytes
+     */
+    public static final int MAX_BODY_SIZE = 16 << 20;
+    /**
+     * The evaluator, shared by all the requests
+     */
+    private final LineSegmentationEvaluator evaluator;
+    /**
+     * The thresholds used when a request does not specify any
+     */
+    private final double[] thresholds;
+    /**
+     * The decoded GT of the recently evaluated pages
+     */
+    private final GroundTruthLruCache cache;
+    /**
+     * The directory under which the requested files must lie (real path), null if any file may be read
+     */
+    private final Path root;
+    /**
+     * The HTTP server and the threads handling the requests
+     */
+    private final HttpServer server;
+    private final ExecutorService executor;
+    /**
+     * Number of evaluation requests, of failed ones, and the wall time spent on them (in ns)
+     */
+    private final AtomicLong nbRequests = new AtomicLong();
+    private final AtomicLong nbFailed = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+
+    /**
+     * Build a server, not started yet
+     *
+     * @param host       the address to listen to, e.g. InetAddress.getLoopbackAddress()
+     * @param port       the port to listen to (0 for any free port)
+     * @param evaluator  the evaluator, closed when the server is stopped
+     * @param thresholds the default IU thresholds for line matching
+     * @param cache      the cache of the decoded GT
+     * @param threads    the number of requests handled concurrently
+     * @param root       the directory under which the requested files must lie, null to allow any file
+     * @throws IOException if the port cannot be bound or the root directory does not exist
+     */
+    public EvaluationServer(InetAddress host, int port, LineSegmentationEvaluator evaluator, double[] thresholds,
+                            GroundTruthLruCache cache, int threads, Path root) throws IOException {
+        this.evaluator = evaluator;
+        this.thresholds = thresholds.clone();
+        this.cache = cache;
+        this.root = (root != null) ? root.toRealPath() : null;
+        if (this.root != null && !Files.isDirectory(this.root)) {
+            throw new IOException("not a directory: " + root);
+        }
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.createContext("/evaluate", this::handleEvaluate);
+        server.createContext("/status", this::handleStatus);
+        server.setExecutor(executor);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Start handling the requests, in the background
+     */
+    public void start() {
+        server.start();
+        logger.info("Listening on " + server.getAddress().getAddress().getHostAddress() + " port " + getPort()
+                + ((root != null) ? ", serving the files under " + root : ""));
+    }
+
+    /**
+     * Stop the server and close the evaluator
+     *
+     * @param delay the maximal time to wait for the requests being handled, in seconds
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        executor.shutdown();
+        evaluator.close();
+        logger.info("Stopped after " + nbRequests.get() + " requests");
+    }
+
+    /**
+     * @return the port the server listens to
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Evaluate a prediction against the (cached) ground truth of a page
+     *
+     * @param imageGroundTruth path of the GT image
+     * @param xmlGroundTruth   path of the GT XML
+     * @param prediction       the predicted polygons
+     * @param thresholds       the IU thresholds for line matching
+     * @return the results for each threshold (the visualization is not rendered)
+     * @throws IOException if the GT files cannot be read
+     */
+    public List<Results> evaluate(String imageGroundTruth, String xmlGroundTruth, List<Polygon> prediction, double[] thresholds) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        GroundTruthCache.Entry truth = cache.load(imageGroundTruth, xmlGroundTruth);
+        return evaluator.evaluateMasks(truth.getForeground(), truth.getMasks(), PolygonMask.rasterize(prediction), thresholds);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Handle /evaluate
+     */
+    private void handleEvaluate(HttpExchange exchange) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        long start = System.nanoTime();
+        nbRequests.incrementAndGet();
+        String method = exchange.getRequestMethod();
+        if (!method.equals("GET") && !method.equals("POST")) {
+            nbFailed.incrementAndGet();
+            send(exchange, 405, error("method not allowed: " + method));
+            return;
+        }
+
+        int status;
+        String body;
+        try {
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            String imageGroundTruth = checkFile(required(params, "igt"));
+            String xmlGroundTruth = checkFile(required(params, "xgt"));
+            double[] t = params.containsKey("mt") ? parseThresholds(params.get("mt")) : thresholds;
+
+            // Read the prediction from its path, or from the body of the request
+            String name;
+            List<Polygon> prediction;
+            if (params.containsKey("xp")) {
+                String xmlPrediction = checkFile(params.get("xp"));
+                name = new Page(imageGroundTruth, xmlGroundTruth, xmlPrediction, null).getName();
+                prediction = ImageLinePageDataset.readDataFromFile(xmlPrediction);
+            } else if (method.equals("POST")) {
+                name = params.containsKey("name") ? params.get("name") : "prediction";
+                prediction = ImageLinePageDataset.readDataFromStream(name, new ByteArrayInputStream(readBody(exchange)));
+            } else {
+                throw new IllegalArgumentException("missing parameter xp (or POST the prediction XML)");
+            }
+            if (prediction == null) {
+                throw new IOException("cannot read the polygons of " + name);
+            }
+
+            List<Results> results = evaluate(imageGroundTruth, xmlGroundTruth, prediction, t);
+            status = 200;
+            body = toJson(name, results, (System.nanoTime() - start) / 1e9);
+            logger.info("Evaluated " + name + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = error(e.getMessage());
+        } catch (AccessDeniedException e) {
+            logger.warn("refused " + e.getMessage());
+            status = 403;
+            body = error("access denied: " + e.getFile());
+        } catch (BodyTooLargeException e) {
+            status = 413;
+            body = error(e.getMessage());
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+            status = 422;
+            body = error(e.getMessage());
+        } catch (RuntimeException | Error e) {
+            // Even an Error (e.g. out of memory on a large GT) is answered, the server keeps serving
+            logger.error("evaluation failed", e);
+            status = 500;
+            body = error(String.valueOf(e));
+        }
+        if (status != 200) {
+            nbFailed.incrementAndGet();
+        }
+        nanos.addAndGet(System.nanoTime() - start);
+        send(exchange, status, body);
+    }
+
+    /**
+     * Handle /status
+     */
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        StringWriter s = new StringWriter();
+        try (JsonWriter json = new JsonWriter(s)) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("requests").value(nbRequests.get());
+            json.name("failed").value(nbFailed.get());
+            json.name("seconds");
+            value(json, nanos.get() / 1e9);
+            json.name("cache").beginObject();
+            json.name("size").value(cache.size());
+            json.name("capacity").value(cache.getCapacity());
+            json.name("hits").value(cache.getHits());
+            json.name("misses").value(cache.getMisses());
+            json.name("evictions").value(cache.getEvictions());
+            json.name("hitRate");
+            value(json, cache.getHitRate());
+            json.endObject();
+            json.endObject();
+        }
+        send(exchange, 200, s.append("\n").toString());
+    }
+
+    /**
+     * Check that a requested file is a regular file, under the root directory if any
+     *
+     * @param path the path of the file, relative to the root directory (or the working directory)
+     * @return the path of the file to read
+     * @throws AccessDeniedException if the file is outside of the root directory
+     * @throws IOException           if the file does not exist or is not a regular file
+     */
+    private String checkFile(String path) throws IOException {
+        Path file = (root != null) ? root.resolve(path) : Paths.get(path);
+        Path real = file.toRealPath();
+        if (root != null && !real.startsWith(root)) {
+            throw new AccessDeniedException(path, null, "outside of " + root);
+        }
+        if (!Files.isRegularFile(real)) {
+            throw new IOException("not a regular file: " + path);
+        }
+        return (root != null) ? real.toString() : path;
+    }
+
+    /**
+     * Read the body of a request, at most MAX_BODY_SIZE bytes
+     *
+     * @throws BodyTooLargeException if the body is larger
+     */
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length != null && length.matches("\\d{1,18}") && Long.parseLong(length) > MAX_BODY_SIZE) {
+            throw new BodyTooLargeException(Long.parseLong(length));
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                if (body.size() + n > MAX_BODY_SIZE) {
+                    throw new BodyTooLargeException(body.size() + n);
+                }
+                body.write(buffer, 0, n);
+            }
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Parse the thresholds of a request, as the -mt option of the tool
+     */
+    private static double[] parseThresholds(String value) {
+        double[] thresholds = LineSegmentationEvaluatorTool.parseThresholds(value);
+        for (double threshold : thresholds) {
+            if (!(threshold >= 0 && threshold <= 1)) {
+                throw new IllegalArgumentException("invalid matching threshold: " + threshold);
+            }
+        }
+        return thresholds;
+    }
+
+    /**
+     * Write the results of a page as JSON:
+     * {"name", "seconds", "results": [{"threshold", measures..., "counts": {...}}]}
+     */
+    private static String toJson(String name, List<Results> results, double seconds) throws IOException {
+        StringWriter s = new StringWriter();
+        try (JsonWriter json = new JsonWriter(s)) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("name").value(name);
+            json.name("seconds").value(seconds);
+            json.name("results").beginArray();
+            for (Results r : results) {
+                Metrics m = r.getMetrics();
+                json.beginObject();
+                json.name("threshold").value(m.threshold);
+                for (String key : Results.MEASURES) {
+                    // LineSegmentation.LinesIU.double -> LinesIU
+                    json.name(key.split("\\.")[1]);
+                    if (key.endsWith(".int")) {
+                        json.value((long) m.get(key));
+                    } else {
+                        value(json, m.get(key));
+                    }
+                }
+                json.name("counts").beginObject();
+                json.name("nbLinesTruth").value(m.nbLinesTruth);
+                json.name("nbLinesProposed").value(m.nbLinesProposed);
+                json.name("nbLinesCorrect").value(m.nbLinesCorrect);
+                json.name("nbLinesMissed").value(m.nbLinesMissed);
+                json.name("nbLinesExtra").value(m.nbLinesExtra);
+                json.name("matchedTP").value(m.matchedTP);
+                json.name("matchedFP").value(m.matchedFP);
+                json.name("matchedFN").value(m.matchedFN);
+                json.name("TP").value(m.TP);
+                json.name("FP").value(m.FP);
+                json.name("FN").value(m.FN);
+                json.name("nbPixelsPrediction").value(m.nbPixelsPrediction);
+                json.name("nbPixelsGt").value(m.nbPixelsGt);
+                json.endObject();
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+        return s.append("\n").toString();
+    }
+
+    /**
+     * Write a number, or null if it is not finite (not representable in JSON)
+     */
+    private static void value(JsonWriter json, double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            json.nullValue();
+        } else {
+            json.value(value);
+        }
+    }
+
+    /**
+     * @return the JSON body of an error
+     */
+    private static String error(String message) throws IOException {
+        StringWriter s = new StringWriter();
+        try (JsonWriter json = new JsonWriter(s)) {
+            json.beginObject();
+            json.name("error").value(message);
+            json.endObject();
+        }
+        return s.append("\n").toString();
+    }
+
+    /**
+     * Send a JSON response
+     */
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Parse the (raw) query of a request into its parameters
+     */
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String param : query.split("&")) {
+            if (param.isEmpty()) {
+                continue;
+            }
+            int equal = param.indexOf('=');
+            String key = URLDecoder.decode((equal < 0) ? param : param.substring(0, equal), "UTF-8");
+            String value = (equal < 0) ? "" : URLDecoder.decode(param.substring(equal + 1), "UTF-8");
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    /**
+     * @return the value of a parameter of a request
+     * @throws IllegalArgumentException if the parameter is missing
+     */
+    private static String required(Map<String, String> params, String key) {
+        String value = params.get(key);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("missing parameter " + key);
+        }
+        return value;
+    }
+
+    /**
+     * The body of a request is larger than MAX_BODY_SIZE
+     */
+    private static final class BodyTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private BodyTooLargeException(long size) {
+            super("the body of the request (" + size + " bytes or more) exceeds " + MAX_BODY_SIZE + " bytes");
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.apache.log4j.Logger;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+
+/**
+ * ForegroundMask class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Packed bitset of the countable foreground pixels of a GT image
+ * A pixel of the GT image is countable foreground if it is neither a boundary pixel (bit 23 set)
+ * nor a background pixel (bit 0 set). The GT image is decoded only once, such that the evaluation
+ * never goes through the ColorModel of the image again and keeps only 1 bit per pixel in memory.
+ * Rows are padded to a multiple of 64 pixels, bit (x & 63) of word (x >> 6) of a row being pixel x.
+ * A mask can also cover only a horizontal band of the image (see BandReader), the pixels outside of
+ * the band being then not foreground.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class ForegroundMask {
+
+    /**
+     * Log4j logger
+     */
+    private static final Logger logger = Logger.getLogger(ForegroundMask.class);
+    /**
+     * Size of the GT image
+     */
+    private final int width;
+    private final int height;
+    /**
+     * First row and number of rows of the band covered by the mask (the whole image by default)
+     */
+    private final int fromY;
+    private final int rows;
+    /**
+     * Number of words for each row
+     */
+    private final int wordsPerRow;
+    /**
+     * Row-major bits of the mask
+     */
+    private final long[] bits;
+
+    /**
+     * Decode the countable foreground of a GT image
+     *
+     * @param groundTruthImage the ground truth image
+     */
+    public ForegroundMask(BufferedImage groundTruthImage) {
+        this(groundTruthImage, 0, groundTruthImage.getHeight());
+    }
+
+    /**
+     * Decode the countable foreground of a horizontal band of a GT image
+     *
+     * @param band   the rows [fromY, fromY + band.getHeight()) of the ground truth image
+     * @param fromY  the first row of the band in the image
+     * @param height the height of the whole image
+     */
+    public ForegroundMask(BufferedImage band, int fromY, int height) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        this.width = band.getWidth();
+        this.height = height;
+        this.fromY = fromY;
+        this.rows = band.getHeight();
+        if (fromY < 0 || fromY + rows > height) {
+            throw new IllegalArgumentException("band [" + fromY + ", " + (fromY + rows) + ") outside of the image of height " + height);
+        }
+        wordsPerRow = (width + 63) >> 6;
+        bits = new long[wordsPerRow * rows];
+
+        switch (band.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+                decodeIntRGB(band.getRaster());
+                break;
+            case BufferedImage.TYPE_3BYTE_BGR:
+                decodeByteRGB(band.getRaster(), 3);
+                break;
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                decodeByteRGB(band.getRaster(), 4);
+                break;
+            default:
+                decodeRGB(band);
+        }
+    }
+
+    /**
+     * Wrap an already decoded foreground (see GroundTruthCache)
+     *
+     * @param width  the width of the GT image
+     * @param height the height of the GT image
+     * @param bits   the row-major bits of the mask, as returned by getBits()
+     */
+    ForegroundMask(int width, int height, long[] bits) {
+        this.width = width;
+        this.height = height;
+        this.fromY = 0;
+        this.rows = height;
+        this.wordsPerRow = (width + 63) >> 6;
+        if (bits.length != wordsPerRow * height) {
+            throw new IllegalArgumentException("expected " + wordsPerRow * height + " words, got " + bits.length);
+        }
+        this.bits = bits;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Check whether a pixel is countable foreground. Pixels outside of the image are not.
+     *
+     * @param x the x coordinate of the pixel
+     * @param y the y coordinate of the pixel
+     * @return true if the pixel is neither boundary nor background
+     */
+    public boolean isForeground(int x, int y) {
+        if (x < 0 || y < fromY || x >= width || y >= fromY + rows) {
+            return false;
+        }
+        return ((bits[(y - fromY) * wordsPerRow + (x >> 6)] >>> x) & 1L) != 0;
+    }
+
+    /**
+     * @return the width of the GT image
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the GT image
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the first row of the band covered by the mask
+     */
+    int getFromY() {
+        return fromY;
+    }
+
+    /**
+     * @return the number of rows of the band covered by the mask
+     */
+    int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the row-major bits of the mask (not a copy), starting at the first row of its band
+     */
+    long[] getBits() {
+        return bits;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param rgb the RGB value of a GT pixel
+     * @return true if the pixel is neither boundary nor background
+     */
+    private static boolean isForeground(int rgb) {
+        return ((rgb >> 23) & 0x1) == 0 && (rgb & 0x1) == 0;
+    }
+
+    /**
+     * Decode images storing one packed RGB int per pixel
+     */
+    private void decodeIntRGB(WritableRaster raster) {
+        int[] row = new int[width];
+        for (int y = 0; y < rows; y++) {
+            raster.getDataElements(0, y, width, 1, row);
+            for (int x = 0; x < width; x++) {
+                if (isForeground(row[x])) {
+                    bits[y * wordsPerRow + (x >> 6)] |= 1L << x;
+                }
+            }
+        }
+    }
+
+    /**
+     * Decode images storing one byte per band, in the order R, G, B (, A)
+     */
+    private void decodeByteRGB(WritableRaster raster, int nbBands) {
+        byte[] row = new byte[width * nbBands];
+        for (int y = 0; y < rows; y++) {
+            raster.getDataElements(0, y, width, 1, row);
+            for (int x = 0, i = 0; x < width; x++, i += nbBands) {
+                // Boundary is the highest bit of the red band, background the lowest of the blue one
+                if ((row[i] & 0x80) == 0 && (row[i + 2] & 0x1) == 0) {
+                    bits[y * wordsPerRow + (x >> 6)] |= 1L << x;
+                }
+            }
+        }
+    }
+
+    /**
+     * Decode any other image through its ColorModel, one row at a time
+     */
+    private void decodeRGB(BufferedImage image) {
+        int[] row = new int[width];
+        for (int y = 0; y < rows; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                if (isForeground(row[x])) {
+                    bits[y * wordsPerRow + (x >> 6)] |= 1L << x;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.apache.log4j.Logger;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * GroundTruthCache class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief On-disk cache of the decoded ground truth of the pages
+ * The countable foreground of the GT image and the rasterized GT polygons are stored in one binary
+ * file per page, named after the SHA-256 of the contents of the GT image and GT XML. Evaluating
+ * several predictions against the same GT then costs a hash and a memory-mapped read instead of a
+ * PNG decoding, an XML parsing and a rasterization. A missing, truncated or stale file is rebuilt.
+ *
+ * File format (big endian):
+ * header:   magic, version (int), content hash (32 bytes), width, height, wordsPerRow, nbPolygons (int)
+ * bitset:   height * wordsPerRow words of the foreground mask
+ * polygons: for each polygon npoints, nbWords (int), x and y coordinates (int), nbWords words of its mask
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class GroundTruthCache {
+
+    /**
+     * Log4j logger
+     */
+    private static final Logger logger = Logger.getLogger(GroundTruthCache.class);
+    /**
+     * Magic number ("LSGT") and version of the file format
+     */
+    private static final int MAGIC = 0x4C534754;
+    private static final int VERSION = 1;
+    /**
+     * Size of the header in bytes (keeps the words 8-byte aligned)
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 32 + 4 * 4;
+    /**
+     * Directory of the cache files
+     */
+    private final Path directory;
+
+    /**
+     * Build a cache
+     *
+     * @param directory the directory of the cache files, created if needed
+     * @throws IOException if the directory cannot be created
+     */
+    public GroundTruthCache(String directory) throws IOException {
+        this.directory = Files.createDirectories(Paths.get(directory));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Load the ground truth of a page, from the cache if it holds a valid entry for the contents of
+     * the GT files, otherwise by decoding them (and storing the result in the cache).
+     *
+     * @param imageGroundTruth path of the GT image
+     * @param xmlGroundTruth   path of the GT XML
+     * @return the ground truth of the page
+     * @throws IOException if the GT files cannot be read
+     */
+    public Entry load(String imageGroundTruth, String xmlGroundTruth) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        byte[] image = Files.readAllBytes(Paths.get(imageGroundTruth));
+        byte[] xml = Files.readAllBytes(Paths.get(xmlGroundTruth));
+        byte[] hash = hash(image, xml);
+        Path file = directory.resolve(toHex(hash) + ".gt");
+
+        if (Files.isRegularFile(file)) {
+            try {
+                Entry entry = read(file, hash);
+                logger.debug("ground truth of " + imageGroundTruth + " read from cache " + file);
+                return entry;
+            } catch (IOException | RuntimeException e) {
+                logger.warn("invalid cache file " + file + " (" + e.getMessage() + "), rebuilding it");
+            }
+        }
+
+        // Decode the GT files
+        Entry entry = decode(ImageIO.read(new ByteArrayInputStream(image)), imageGroundTruth, xmlGroundTruth);
+
+        try {
+            write(file, hash, entry);
+            logger.debug("ground truth of " + imageGroundTruth + " written to cache " + file);
+        } catch (IOException e) {
+            logger.warn("cannot write cache file " + file + ": " + e.getMessage());
+        }
+        return entry;
+    }
+
+    /**
+     * Check whether the cache holds an entry for the contents of the GT files, i.e. whether load() reads
+     * it instead of decoding the files. Only the header of the cache file is checked.
+     *
+     * @param imageGroundTruth path of the GT image
+     * @param xmlGroundTruth   path of the GT XML
+     * @return true if the cache file of the GT exists and its header matches the contents of the GT files
+     * @throws IOException if the GT files cannot be read
+     */
+    public boolean contains(String imageGroundTruth, String xmlGroundTruth) throws IOException {
+        byte[] hash = hash(Files.readAllBytes(Paths.get(imageGroundTruth)), Files.readAllBytes(Paths.get(xmlGroundTruth)));
+        Path file = directory.resolve(toHex(hash) + ".gt");
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return false;
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.BIG_ENDIAN);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return false;
+            }
+            byte[] storedHash = new byte[hash.length];
+            header.get(storedHash);
+            return Arrays.equals(hash, storedHash);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Decode the ground truth of a page, without any cache file
+     *
+     * @param imageGroundTruth path of the GT image
+     * @param xmlGroundTruth   path of the GT XML
+     * @return the ground truth of the page
+     * @throws IOException if the GT files cannot be read
+     */
+    public static Entry decode(String imageGroundTruth, String xmlGroundTruth) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        File image = new File(imageGroundTruth);
+        if (!image.canRead()) {
+            throw new IOException("cannot read image: " + imageGroundTruth);
+        }
+        return decode(ImageIO.read(image), imageGroundTruth, xmlGroundTruth);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Build the ground truth of a page from its decoded image and its XML
+     *
+     * @param groundTruthImage the decoded GT image, null if it could not be decoded
+     * @param imageGroundTruth path of the GT image (for the error messages)
+     * @param xmlGroundTruth   path of the GT XML
+     * @return the ground truth of the page
+     * @throws IOException if the image could not be decoded or the XML cannot be read
+     */
+    private static Entry decode(BufferedImage groundTruthImage, String imageGroundTruth, String xmlGroundTruth) throws IOException {
+        if (groundTruthImage == null) {
+            throw new IOException("cannot decode image: " + imageGroundTruth);
+        }
+        List<Polygon> polygons = ImageLinePageDataset.readDataFromFile(xmlGroundTruth);
+        if (polygons == null) {
+            throw new IOException("cannot read the polygons of " + xmlGroundTruth);
+        }
+        return new Entry(new ForegroundMask(groundTruthImage), PolygonMask.rasterize(polygons));
+    }
+
+    /**
+     * Read a cache file
+     *
+     * @param file the cache file
+     * @param hash the expected content hash
+     * @return the ground truth stored in the file
+     * @throws IOException if the file cannot be read or is invalid
+     */
+    private static Entry read(Path file, byte[] hash) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("not a cache file of version " + VERSION);
+            }
+            byte[] storedHash = new byte[hash.length];
+            buffer.get(storedHash);
+            if (!Arrays.equals(hash, storedHash)) {
+                throw new IOException("content hash mismatch");
+            }
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int wordsPerRow = buffer.getInt();
+            int nbPolygons = buffer.getInt();
+            if (width < 0 || height < 0 || nbPolygons < 0 || nbPolygons > buffer.remaining() / 8 || wordsPerRow != (width + 63) >> 6) {
+                throw new IOException("corrupted header");
+            }
+
+            ForegroundMask foreground = new ForegroundMask(width, height, readWords(buffer, (long) wordsPerRow * height));
+
+            List<PolygonMask> masks = new ArrayList<>(nbPolygons);
+            for (int i = 0; i < nbPolygons; i++) {
+                int npoints = buffer.getInt();
+                int nbWords = buffer.getInt();
+                if (npoints < 0 || nbWords < 0 || buffer.remaining() < 8L * npoints) {
+                    throw new IOException("corrupted polygon " + i);
+                }
+                int[] xpoints = new int[npoints];
+                int[] ypoints = new int[npoints];
+                buffer.asIntBuffer().get(xpoints).get(ypoints);
+                buffer.position(buffer.position() + 8 * npoints);
+                masks.add(new PolygonMask(new Polygon(xpoints, ypoints, npoints), readWords(buffer, nbWords)));
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException("trailing bytes");
+            }
+            return new Entry(foreground, masks);
+        }
+    }
+
+    /**
+     * Read words from a buffer
+     *
+     * @param buffer  the buffer
+     * @param nbWords the number of words to read
+     * @return the words
+     * @throws IOException if the buffer is too short
+     */
+    private static long[] readWords(ByteBuffer buffer, long nbWords) throws IOException {
+        if (buffer.remaining() < 8 * nbWords) {
+            throw new IOException("truncated file");
+        }
+        long[] words = new long[(int) nbWords];
+        buffer.asLongBuffer().get(words);
+        buffer.position(buffer.position() + 8 * words.length);
+        return words;
+    }
+
+    /**
+     * Write a cache file. The file is written under a temporary name then renamed, such that
+     * concurrent readers never see a partial file.
+     *
+     * @param file  the cache file
+     * @param hash  the content hash
+     * @param entry the ground truth to store
+     * @throws IOException if the file cannot be written
+     */
+    private void write(Path file, byte[] hash, Entry entry) throws IOException {
+        ForegroundMask foreground = entry.getForeground();
+        long size = HEADER_SIZE + 8L * foreground.getBits().length;
+        for (PolygonMask mask : entry.getMasks()) {
+            size += 8 + 8L * mask.getPolygon().npoints + 8L * mask.getBits().length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("ground truth too large to be cached");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).put(hash);
+        buffer.putInt(foreground.getWidth()).putInt(foreground.getHeight()).putInt((foreground.getWidth() + 63) >> 6);
+        buffer.putInt(entry.getMasks().size());
+        putWords(buffer, foreground.getBits());
+        for (PolygonMask mask : entry.getMasks()) {
+            Polygon polygon = mask.getPolygon();
+            buffer.putInt(polygon.npoints).putInt(mask.getBits().length);
+            buffer.asIntBuffer().put(polygon.xpoints, 0, polygon.npoints).put(polygon.ypoints, 0, polygon.npoints);
+            buffer.position(buffer.position() + 8 * polygon.npoints);
+            putWords(buffer, mask.getBits());
+        }
+        buffer.flip();
+
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Write words in a buffer
+     */
+    private static void putWords(ByteBuffer buffer, long[] words) {
+        buffer.asLongBuffer().put(words);
+        buffer.position(buffer.position() + 8 * words.length);
+    }
+
+    /**
+     * @return the SHA-256 of the format version and the contents of the GT files
+     */
+    private static byte[] hash(byte[] image, byte[] xml) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(ByteBuffer.allocate(12).putInt(VERSION).putInt(image.length).putInt(xml.length).array());
+            digest.update(image);
+            digest.update(xml);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the hexadecimal representation of the bytes
+     */
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * The ground truth of a page: its countable foreground and its rasterized polygons
+     */
+    public static final class Entry {
+        private final ForegroundMask foreground;
+        private final List<PolygonMask> masks;
+
+        private Entry(ForegroundMask foreground, List<PolygonMask> masks) {
+            this.foreground = foreground;
+            this.masks = Collections.unmodifiableList(masks);
+        }
+
+        /**
+         * @return the countable foreground of the GT image
+         */
+        public ForegroundMask getForeground() {
+            return foreground;
+        }
+
+        /**
+         * @return the rasterized GT polygons
+         */
+        public List<PolygonMask> getMasks() {
+            return masks;
+        }
+    }
+}
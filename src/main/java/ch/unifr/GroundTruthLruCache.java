@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * GroundTruthLruCache class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief In-memory cache of the decoded ground truth of the most recently used pages
+ * An entry is keyed by the paths of the GT image and GT XML, with their size and modification time,
+ * such that a modified GT is decoded again. At most capacity entries are kept, the least recently
+ * used one being evicted first. Concurrent requests for the same GT wait for a single decoding.
+ * Missed entries are decoded, or loaded from the on-disk cache if one is given.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class GroundTruthLruCache {
+
+    /**
+     * Log4j logger
+     */
+    private static final Logger logger = Logger.getLogger(GroundTruthLruCache.class);
+    /**
+     * Maximal number of entries
+     */
+    private final int capacity;
+    /**
+     * On-disk cache used to load the missed entries (null to decode them)
+     */
+    private final GroundTruthCache disk;
+    /**
+     * The entries, in access order (guarded by itself, like the counters)
+     */
+    private final LinkedHashMap<Key, CompletableFuture<GroundTruthCache.Entry>> entries;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Build a cache
+     *
+     * @param capacity the maximal number of entries
+     * @param disk     the on-disk cache used to load the missed entries, null to decode them
+     */
+    public GroundTruthLruCache(int capacity, GroundTruthCache disk) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("the capacity must be positive, got " + capacity);
+        }
+        this.capacity = capacity;
+        this.disk = disk;
+        this.entries = new LinkedHashMap<Key, CompletableFuture<GroundTruthCache.Entry>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompletableFuture<GroundTruthCache.Entry>> eldest) {
+                if (size() > GroundTruthLruCache.this.capacity) {
+                    evictions++;
+                    logger.debug("evicting ground truth of " + eldest.getKey().imageGroundTruth);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Get the ground truth of a page, decoding it if it is not in the cache
+     *
+     * @param imageGroundTruth path of the GT image
+     * @param xmlGroundTruth   path of the GT XML
+     * @return the ground truth of the page
+     * @throws IOException if the GT files cannot be read
+     */
+    public GroundTruthCache.Entry load(String imageGroundTruth, String xmlGroundTruth) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        Key key = new Key(imageGroundTruth, xmlGroundTruth);
+        CompletableFuture<GroundTruthCache.Entry> future;
+        boolean missed = false;
+        synchronized (entries) {
+            future = entries.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                entries.put(key, future);
+                misses++;
+                missed = true;
+            } else {
+                hits++;
+            }
+        }
+
+        // Decode the missed entry outside of the lock, the other requests for it wait on the future
+        if (missed) {
+            try {
+                future.complete((disk != null)
+                        ? disk.load(imageGroundTruth, xmlGroundTruth)
+                        : GroundTruthCache.decode(imageGroundTruth, xmlGroundTruth));
+            } catch (Throwable e) {
+                // Whatever the failure (even an Error), the waiters are released and the entry is decoded again later
+                synchronized (entries) {
+                    entries.remove(key, future);
+                }
+                future.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while loading the ground truth of " + imageGroundTruth);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * @return the maximal number of entries
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the number of requests served from the cache
+     */
+    public long getHits() {
+        synchronized (entries) {
+            return hits;
+        }
+    }
+
+    /**
+     * @return the number of requests for which the ground truth has been loaded
+     */
+    public long getMisses() {
+        synchronized (entries) {
+            return misses;
+        }
+    }
+
+    /**
+     * @return the number of entries evicted
+     */
+    public long getEvictions() {
+        synchronized (entries) {
+            return evictions;
+        }
+    }
+
+    /**
+     * @return the ratio of the requests served from the cache, NaN if there was no request
+     */
+    public double getHitRate() {
+        synchronized (entries) {
+            return (double) hits / (hits + misses);
+        }
+    }
+
+    /**
+     * Identity of the GT files of a page: their absolute paths, sizes and modification times
+     */
+    private static final class Key {
+        private final String imageGroundTruth;
+        private final String xmlGroundTruth;
+        private final long imageLength;
+        private final long imageModified;
+        private final long xmlLength;
+        private final long xmlModified;
+
+        private Key(String imageGroundTruth, String xmlGroundTruth) {
+            File image = new File(imageGroundTruth).getAbsoluteFile();
+            File xml = new File(xmlGroundTruth).getAbsoluteFile();
+            this.imageGroundTruth = image.getPath();
+            this.xmlGroundTruth = xml.getPath();
+            this.imageLength = image.length();
+            this.imageModified = image.lastModified();
+            this.xmlLength = xml.length();
+            this.xmlModified = xml.lastModified();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return imageLength == key.imageLength && imageModified == key.imageModified
+                    && xmlLength == key.xmlLength && xmlModified == key.xmlModified
+                    && imageGroundTruth.equals(key.imageGroundTruth) && xmlGroundTruth.equals(key.xmlGroundTruth);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(imageGroundTruth, xmlGroundTruth, imageLength, imageModified, xmlLength, xmlModified);
+        }
+    }
+}
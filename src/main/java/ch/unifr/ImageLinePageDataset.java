@@ -6,16 +6,17 @@
 package ch.unifr;
 
 import org.apache.log4j.Logger;
-import org.jdom2.Document;
-import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.Namespace;
-import org.jdom2.input.SAXBuilder;
-
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.awt.*;
-import java.io.File;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -25,6 +26,9 @@ import java.util.List;
  * @review Michele Alberti <michele.alberti@unifr.ch>
  * @date 25.07.2017
  * @brief Load data files in PAGE format
+ * The files are read in a single forward pass with a StAX reader, without building a document tree.
+ * Only the structure Page/TextRegion/TextLine/Coords (in the namespace of the root element) is
+ * followed, and the points of the coordinates are parsed directly into int arrays.
  */
 public class ImageLinePageDataset {
 
@@ -36,6 +40,21 @@ public class ImageLinePageDataset {
      * TASKTAG should be "Coords" for line segmentation and "Baseline" for baseline extraction
      */
     private static final String TASKTAG = "Coords";
+    /**
+     * Depth of the elements of interest (the root element being at depth 1)
+     */
+    private static final int PAGE_DEPTH = 2;
+    private static final int REGION_DEPTH = 3;
+    private static final int LINE_DEPTH = 4;
+    private static final int TASK_DEPTH = 5;
+    /**
+     * StAX factory of each thread, configured to not resolve external entities
+     */
+    private static final ThreadLocal<XMLInputFactory> FACTORY = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    });
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // PUBLIC STATIC
@@ -50,85 +69,253 @@ public class ImageLinePageDataset {
     public static List<Polygon> readDataFromFile(final String path) {
         logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
 
-        // Getting XML doc from PAGE ground truth
-        Document xmlDocument = null;
-        try {
-            xmlDocument = new SAXBuilder().build(new File(path));
-        } catch (JDOMException | IOException e) {
+        // Streaming the polygons out of the PAGE XML
+        List<Polygon> lines = null;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(path))) {
+            lines = getPolygonFromXml(path, in);
+        } catch (XMLStreamException | IOException e) {
             logger.error("cannot open file: " + path);
             if (logger.isDebugEnabled()) {
                 e.printStackTrace();
             }
         }
 
-        List<Polygon> lines = getPolygonFromXml(xmlDocument);
-
         String classname = (lines == null) ? "null" : lines.getClass().getName();
         logger.trace(classname + "@" + Integer.toHexString(System.identityHashCode(lines)));
         return lines;
     }
 
+    /**
+     * Load output data from a stream (e.g. an uploaded PAGE XML document)
+     *
+     * @param name the name of the document (for the error messages)
+     * @param in   the PAGE XML document, not closed
+     * @return the output data object, null if the document cannot be parsed
+     */
+    public static List<Polygon> readDataFromStream(final String name, final InputStream in) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        try {
+            return getPolygonFromXml(name, new BufferedInputStream(in));
+        } catch (XMLStreamException e) {
+            logger.error("cannot parse document: " + name);
+            logger.debug("cannot parse document: " + name, e);
+            return null;
+        }
+    }
+
+    /**
+     * Count the TextLine elements of a PAGE XML file, without parsing their coordinates
+     *
+     * @param path the path of the file
+     * @return the number of TextLine elements (in the namespace of the root element)
+     * @throws IOException if the file cannot be read or is not well formed
+     */
+    public static int countLines(final String path) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(path))) {
+            XMLStreamReader reader = FACTORY.get().createXMLStreamReader(path, in);
+            try {
+                String namespace = null;
+                int count = 0;
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    if (namespace == null) {
+                        namespace = namespaceOf(reader);
+                    } else if (reader.getLocalName().equals("TextLine") && namespace.equals(namespaceOf(reader))) {
+                        count++;
+                    }
+                }
+                return count;
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("cannot parse " + path + ": " + e.getMessage(), e);
+        }
+    }
+
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // PRIVATE STATIC
     ///////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
-     * Convert an XML document into a list of polygons
+     * Extract the polygons of an XML document
      *
-     * @param xmlDocument the XML ground truth
-     * @return a list of polygon
+     * @param path the path of the document (for the error messages)
+     * @param in   the XML document
+     * @return a list of polygon, null if the document does not follow the PAGE structure
+     * @throws XMLStreamException if the document is not well formed
      */
-    private static List<Polygon> getPolygonFromXml(Document xmlDocument) {
+    private static List<Polygon> getPolygonFromXml(String path, InputStream in) throws XMLStreamException {
         logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
-        if (xmlDocument == null) {
-            logger.error("cannot extract polygons from null xml document");
-            return null;
-        }
 
         List<Polygon> polygons = new ArrayList<>();
 
-        Element root = xmlDocument.getRootElement();
-        Namespace namespace = root.getNamespace();
-        Element page = root.getChild("Page", namespace);
-        List<Element> textRegions = page.getChildren("TextRegion", namespace);
+        // Buffers of the coordinates, reused for every line
+        int[][] points = {new int[64], new int[64]};
+
+        XMLStreamReader reader = FACTORY.get().createXMLStreamReader(path, in);
+        try {
+            String namespace = null;    // Namespace of the root element
+            int depth = 0;
+            boolean inPage = false;     // Within the first Page element
+            boolean pageDone = false;   // The first Page element has been read
+            boolean inRegion = false;   // Within a TextRegion of the first Page
+            boolean inLine = false;     // Within a TextLine of such a TextRegion
+            Polygon polygon = null;     // Polygon of the first TASKTAG of the current TextLine
 
-        // Parsing structure of standard Page Xml…
-        for (Element region : textRegions) {
+            // Parsing structure of standard Page Xml…
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 1) {
+                        namespace = namespaceOf(reader);
+                        continue;
+                    }
+                    if (!namespace.equals(namespaceOf(reader))) {
+                        continue;
+                    }
+                    String name = reader.getLocalName();
+                    if (depth == PAGE_DEPTH && !pageDone && name.equals("Page")) {
+                        inPage = true;
+                    } else if (depth == REGION_DEPTH && inPage && name.equals("TextRegion")) {
+                        inRegion = true;
+                    } else if (depth == LINE_DEPTH && inRegion && name.equals("TextLine")) {
+                        inLine = true;
+                        polygon = null;
+                    } else if (depth == TASK_DEPTH && inLine && polygon == null && name.equals(TASKTAG)) {
+                        // Get the list of point and parse it
+                        String coordString = reader.getAttributeValue(null, "points");
+                        if (coordString == null) {
+                            logger.error(path + ": " + TASKTAG + " without points at line " + reader.getLocation().getLineNumber());
+                            return null;
+                        }
+                        polygon = parsePoints(coordString, points);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == LINE_DEPTH && inLine) {
+                        if (polygon == null) {
+                            logger.error(path + ": TextLine without " + TASKTAG + " at line " + reader.getLocation().getLineNumber());
+                            return null;
+                        }
+                        // add the polygon
+                        polygons.add(polygon);
+                        inLine = false;
+                    } else if (depth == REGION_DEPTH) {
+                        inRegion = false;
+                    } else if (depth == PAGE_DEPTH && inPage) {
+                        inPage = false;
+                        pageDone = true;
+                    }
+                    depth--;
+                }
+            }
 
-            // Find the text region corresponding to main text area
-            // DISABLED On 26.02.2019 as it seems that there is always only 1 text region
-            //if (region.getAttribute("id").getValue().equals("region_textline")) {
+            if (namespace == null || !pageDone) {
+                logger.error(path + ": no Page element found");
+                return null;
+            }
+        } finally {
+            reader.close();
+        }
 
-            // Get all the text lines
-            List<Element> textLines = region.getChildren("TextLine", namespace);
-            for (Element line : textLines) {
+        logger.debug("found " + polygons.size() + " polygons in XML document");
+        return polygons;
+    }
 
-                Polygon polygon = new Polygon();
+    /**
+     * @return the namespace URI of the current element, "" if none
+     */
+    private static String namespaceOf(XMLStreamReader reader) {
+        String namespace = reader.getNamespaceURI();
+        return (namespace == null) ? "" : namespace;
+    }
 
-                // Get the list of point and split it
-                String coordString = line.getChild(TASKTAG, namespace).getAttributeValue("points");
-                String[] coords = coordString.split(" ");
+    /**
+     * Parse a list of points "x1,y1 x2,y2 ..." without splitting it into strings
+     *
+     * @param coordString the list of points
+     * @param points      the buffers of the x and y coordinates, grown if needed
+     * @return the polygon of the points
+     * @throws NumberFormatException if a point is malformed
+     */
+    private static Polygon parsePoints(String coordString, int[][] points) {
+        int length = coordString.length();
 
-                // For each point
-                for (int j = 0; j < coords.length; j++) {
+        // Trailing separators are ignored, as String.split() does
+        while (length > 0 && coordString.charAt(length - 1) == ' ') {
+            length--;
+        }
 
-                    // Split x and y
-                    String[] c = coords[j].split(",");
-                    int x = Integer.parseInt(c[0]);
-                    int y = Integer.parseInt(c[1]);
+        int npoints = 0;
+        int i = 0;
+        while (i < length) {
+            if (npoints == points[0].length) {
+                points[0] = Arrays.copyOf(points[0], npoints * 2);
+                points[1] = Arrays.copyOf(points[1], npoints * 2);
+            }
 
-                    // Add point
-                    polygon.addPoint(x, y);
-                }
+            // Find the end of the point
+            int end = coordString.indexOf(' ', i);
+            if (end < 0 || end > length) {
+                end = length;
+            }
 
-                // add the polygon
-                polygons.add(polygon);
+            // Split x and y
+            int comma = coordString.indexOf(',', i);
+            if (comma < 0 || comma >= end) {
+                throw new NumberFormatException("malformed point: \"" + coordString.substring(i, end) + "\"");
             }
-            //}
+            int yEnd = coordString.indexOf(',', comma + 1);
+            if (yEnd < 0 || yEnd > end) {
+                yEnd = end;
+            }
+
+            // Add point
+            points[0][npoints] = parseInt(coordString, i, comma);
+            points[1][npoints] = parseInt(coordString, comma + 1, yEnd);
+            npoints++;
+
+            i = end + 1;
         }
 
-        logger.debug("found " + polygons.size() + " polygons in XML document");
-        return polygons;
+        // The polygon keeps its own copy of the coordinates
+        return new Polygon(points[0], points[1], npoints);
     }
-}
 
+    /**
+     * Parse a decimal integer, as Integer.parseInt(s.substring(from, to)) does
+     *
+     * @param s    the string
+     * @param from first char of the integer
+     * @param to   end of the integer (exclusive)
+     * @return the integer
+     * @throws NumberFormatException if the chars are not a valid integer
+     */
+    private static int parseInt(String s, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+        if (i == to) {
+            throw new NumberFormatException("For input string: \"" + s.substring(from, to) + "\"");
+        }
+
+        long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || (value = value * 10 + digit) > limit) {
+                throw new NumberFormatException("For input string: \"" + s.substring(from, to) + "\"");
+            }
+        }
+        return (int) (negative ? -value : value);
+    }
+}
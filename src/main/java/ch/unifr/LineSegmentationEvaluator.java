@@ -5,13 +5,20 @@
 
 package ch.unifr;
 
-import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * LineSegmentationEvaluator class of the Experimenter project
@@ -24,18 +31,87 @@ import java.util.List;
  * Method Output (MO) polygons and compute the matching possibilities areas.
  * Final matching is done starting from the biggest matching possibility area
  * and continuing until all polygons are match or until no matching possibility remains.
+ * The evaluator keeps no state between evaluations, one instance can be shared by several threads.
+ * An evaluator processing each page on several threads owns a pool of threads, shut down by close().
  */
 @SuppressWarnings({"WeakerAccess"})
-public class LineSegmentationEvaluator {
+public class LineSegmentationEvaluator implements AutoCloseable {
 
     /**
      * Log4j logger
      */
     protected static final Logger logger = Logger.getLogger(LineSegmentationEvaluator.class);
     /**
-     * Evaluation image
+     * Engine used to compute the matching possibilities
      */
-    private BufferedImage evalImage = null;
+    private final Engine engine;
+    /**
+     * Pool scoring the candidate pairs and the matched lines of a page in parallel (null if sequential)
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Number of rows of the horizontal bands processed in parallel
+     */
+    private static final int BAND_HEIGHT = 128;
+    /**
+     * Classes of the foreground pixels of the visualization, and their colors:
+     * (0x007F00) GREEN:   Foreground predicted correctly
+     * (0xFFFF00) YELLOW:  Foreground which belong two multiple lines (all cases)
+     * (0xFF0000) RED:     Foreground does not belong to this line (False positive)
+     * (0x0088FF) BLUE:    Foreground that should have been in this (False negative)
+     */
+    private static final int GREEN = 1;
+    private static final int RED = 2;
+    private static final int BLUE = 3;
+    private static final int YELLOW = 4;
+    private static final int[] CLASS_COLORS = {0x000000, 0x007F00, 0xFF0000, 0x0088FF, 0xFFFF00};
+
+    /**
+     * The engines available for computing the matching possibilities. They produce exactly the same results.
+     */
+    public enum Engine {
+        /**
+         * Scan the union of the bounding boxes of every pair of overlapping polygons
+         */
+        PAIRWISE,
+        /**
+         * Walk the foreground once and build a GT x prediction co-occurrence table (see CooccurrenceTable)
+         */
+        COOCCURRENCE,
+        /**
+         * Encode the foreground and the polygons as runs of pixels per row and count the pixels of the pairs
+         * of overlapping polygons by merging their runs (see SpanMask)
+         */
+        SPANS
+    }
+
+    /**
+     * Build an evaluator using the default (pairwise) engine
+     */
+    public LineSegmentationEvaluator() {
+        this(Engine.PAIRWISE);
+    }
+
+    /**
+     * Build an evaluator
+     *
+     * @param engine the engine used to compute the matching possibilities
+     */
+    public LineSegmentationEvaluator(Engine engine) {
+        this(engine, 1);
+    }
+
+    /**
+     * Build an evaluator processing each page on several threads. The results (including the
+     * visualization) do not depend on the number of threads.
+     *
+     * @param engine  the engine used to compute the matching possibilities
+     * @param threads the number of threads used within a page
+     */
+    public LineSegmentationEvaluator(Engine engine, int threads) {
+        this.engine = engine;
+        this.pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+    }
 
     /**
      * Evaluate output data with respect to ground truth
@@ -49,125 +125,259 @@ public class LineSegmentationEvaluator {
     public Results evaluate(BufferedImage groundTruthImage, List<Polygon> groundTruth, List<Polygon> prediction, double threshold) {
         logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
 
-        // Match overlapping polygons
-        List<Pair<Polygon, Polygon>> matching = getMatchingPolygons(groundTruthImage, groundTruth, prediction);
+        // Decode the countable foreground of the GT image once
+        return evaluate(new ForegroundMask(groundTruthImage), groundTruth, prediction, threshold);
+    }
 
-        // Init evaluation image
-        evalImage = new BufferedImage(groundTruthImage.getWidth(), groundTruthImage.getHeight(), BufferedImage.TYPE_INT_RGB);
+    /**
+     * Evaluate output data with respect to ground truth for several matching thresholds. The
+     * matching and the pixel counting are done once, only the classification of the lines is
+     * repeated for each threshold.
+     *
+     * @param groundTruthImage the ground truth groundTruthImage
+     * @param prediction       the polygons output by the method to evaluate
+     * @param groundTruth      the ground truth polygons
+     * @param thresholds       the IU thresholds for line matching
+     * @return one Results object per threshold, in the same order
+     */
+    public List<Results> evaluate(BufferedImage groundTruthImage, List<Polygon> groundTruth, List<Polygon> prediction, double[] thresholds) {
+        return evaluate(groundTruthImage, groundTruth, prediction, thresholds, null);
+    }
 
-        // Lines count
-        int nbLinesCorrect = 0;
-        int nbLinesMissed = 0;
-        int nbLinesExtra = 0;
+    /**
+     * Evaluate output data with respect to ground truth for several matching thresholds, recording
+     * the wall time of the phases and the counters of the evaluation
+     *
+     * @param groundTruthImage the ground truth groundTruthImage
+     * @param prediction       the polygons output by the method to evaluate
+     * @param groundTruth      the ground truth polygons
+     * @param thresholds       the IU thresholds for line matching
+     * @param stats            the stats of the page, null to disable the instrumentation
+     * @return one Results object per threshold, in the same order
+     */
+    public List<Results> evaluate(BufferedImage groundTruthImage, List<Polygon> groundTruth, List<Polygon> prediction, double[] thresholds, Stats stats) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
 
-        // Pixels counts for the matched lines
-        int matchedTP = 0;
-        int matchedFN = 0;
-        int matchedFP = 0;
+        long start = Stats.start(stats);
+        ForegroundMask foreground = new ForegroundMask(groundTruthImage);
+        Stats.stop(stats, Stats.Phase.FOREGROUND, start);
 
-        // Pixels counts for the whole image
-        int TP = 0;
-        int FN = 0;
-        int FP = 0;
-        int nbPixelsPrediction = 0;
-        int nbPixelsGt = 0;
+        start = Stats.start(stats);
+        List<PolygonMask> groundTruthMasks = PolygonMask.rasterize(groundTruth);
+        List<PolygonMask> predictionMasks = PolygonMask.rasterize(prediction);
+        Stats.stop(stats, Stats.Phase.RASTERIZE, start);
 
-        // For every match
-        for (Pair<Polygon, Polygon> match : matching) {
+        return evaluateMasks(foreground, groundTruthMasks, predictionMasks, thresholds, stats);
+    }
 
-            // Extract the predicted and ground truth polygons from the match pair
-            Polygon pp = match.getKey();
-            Polygon pgt = match.getValue();
+    /**
+     * Evaluate output data with respect to ground truth
+     *
+     * @param foreground  the countable foreground of the ground truth image
+     * @param prediction  the polygons output by the method to evaluate
+     * @param groundTruth the ground truth polygons
+     * @param threshold   the IU threshold for line matching
+     * @return Results object
+     */
+    public Results evaluate(ForegroundMask foreground, List<Polygon> groundTruth, List<Polygon> prediction, double threshold) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
 
-            logger.trace("evaluation matching " + pgt + " * " + pp);
+        // Rasterize every polygon once, the masks are shared by the matching and the evaluation
+        return evaluateMasks(foreground, PolygonMask.rasterize(groundTruth), PolygonMask.rasterize(prediction), threshold);
+    }
 
-            // Pixels counts for the line (current match of polygons)
-            int lineTP = 0; // True positive pixels
-            int lineFN = 0; // False negative pixels
-            int lineFP = 0; // False positive pixels
-            int lineNbPixelsPrediction = 0;
-            int lineNbPixelsGt = 0;
-
-            // These lines are for deep MANUAL inspection only (especially for the visualization!)
-            //if(pp!=null && pgt!=null)continue; // Skip all correctly matched lines
-            //if(pp==null || pgt==null)continue; // Skip all the extra and missed lines
-
-            /* Find the bounding box of both polygons, i.e the bounding box of the union
-             * In case one of the two polygons is null (because it was an extra o miss line)
-             * the union is exactly the non-null polygon.
-             */
-            Rectangle rp = (pp != null) ? pp.getBounds() : pgt.getBounds();
-            Rectangle rgt = (pgt != null) ? pgt.getBounds() : pp.getBounds();
+    /**
+     * Evaluate output data with respect to ground truth, both already rasterized
+     *
+     * @param foreground  the countable foreground of the ground truth image
+     * @param groundTruth the rasterized ground truth polygons
+     * @param prediction  the rasterized polygons output by the method to evaluate
+     * @param threshold   the IU threshold for line matching
+     * @return Results object
+     */
+    public Results evaluateMasks(ForegroundMask foreground, List<PolygonMask> groundTruth, List<PolygonMask> prediction, double threshold) {
+        return evaluateMasks(foreground, groundTruth, prediction, new double[]{threshold}).get(0);
+    }
 
-            // Find the union
-            Rectangle union = rgt.union(rp);
+    /**
+     * Evaluate output data with respect to ground truth, both already rasterized, for several
+     * matching thresholds
+     *
+     * @param foreground  the countable foreground of the ground truth image
+     * @param groundTruth the rasterized ground truth polygons
+     * @param prediction  the rasterized polygons output by the method to evaluate
+     * @param thresholds  the IU thresholds for line matching
+     * @return one Results object per threshold, in the same order
+     */
+    public List<Results> evaluateMasks(ForegroundMask foreground, List<PolygonMask> groundTruth, List<PolygonMask> prediction, double[] thresholds) {
+        return evaluateMasks(foreground, groundTruth, prediction, thresholds, null);
+    }
 
-            // For every pixel in the bounding box
-            for (int x = (int) union.getMinX(); x < union.getMaxX(); x++) {
-                for (int y = (int) union.getMinY(); y < union.getMaxY(); y++) {
+    /**
+     * Evaluate output data with respect to ground truth, both already rasterized, for several
+     * matching thresholds, recording the wall time of the phases and the counters of the evaluation.
+     * The visualization time is recorded when (and if) the visualization is rendered.
+     *
+     * @param foreground  the countable foreground of the ground truth image
+     * @param groundTruth the rasterized ground truth polygons
+     * @param prediction  the rasterized polygons output by the method to evaluate
+     * @param thresholds  the IU thresholds for line matching
+     * @param stats       the stats of the page, null to disable the instrumentation
+     * @return one Results object per threshold, in the same order
+     */
+    public List<Results> evaluateMasks(ForegroundMask foreground, List<PolygonMask> groundTruth, List<PolygonMask> prediction, double[] thresholds, Stats stats) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
 
-                    // Ignore boundary pixels
-                    if (((groundTruthImage.getRGB(x, y) >> 23) & 0x1) == 1) {
-                        continue;
-                    }
+        // The runs of the foreground and of the polygons are shared by the matching and the counting
+        PageSpans spans = (engine == Engine.SPANS) ? encodeSpans(foreground, groundTruth, prediction, stats) : null;
 
-                    // Ignore background pixels
-                    if ((groundTruthImage.getRGB(x, y) & 0x1) == 1) {
-                        continue;
-                    }
+        // Match overlapping polygons
+        Matching matching = getMatchingPolygons(foreground, groundTruth, prediction, spans, stats);
+
+        // Count the pixels of every match. The matches are independent, hence counted in parallel
+        long start = Stats.start(stats);
+        LineCounts[] lines = compute(() -> range(matching.size())
+                .mapToObj(i -> (spans != null)
+                        ? spans.countPixels(matching.getPredictionId(i), matching.getGroundTruthId(i))
+                        : countPixels(foreground, matching.getPrediction(i), matching.getGroundTruth(i), stats))
+                .toArray(LineCounts[]::new));
+        Stats.stop(stats, Stats.Phase.COUNTING, start);
+
+        // Only the classification of the lines depends on the threshold
+        List<Results> results = new ArrayList<>(thresholds.length);
+        for (double threshold : thresholds) {
+            Color[] colors = new Color[matching.size()];
+            Results r = getResults(groundTruth.size(), prediction.size(), matching, lines, threshold, colors);
+
+            // The visualization is painted from the classification of the lines, only if requested
+            r.setVisualizationRenderer(() -> {
+                long s = Stats.start(stats);
+                BufferedImage visualization = paintVisualization(foreground, matching, colors);
+                Stats.stop(stats, Stats.Phase.VISUALIZATION, s);
+                return visualization;
+            });
+            results.add(r);
+        }
+        return results;
+    }
 
-                    // Check the type of pixel: TP, FN, FP (it cannot be a TN here, we're iterating on the union.
-                    boolean isInPp = (pp != null) && pp.contains(x, y);
-                    boolean isInPgt = (pgt != null) && pgt.contains(x, y);
+    /**
+     * Evaluate a page whose GT image is read in horizontal bands of bandHeight rows (see BandReader),
+     * such that the memory needed depends on the width of the page and on the height of the bands, but
+     * not on the height of the page. The foreground areas of the lines and the intersections of the pairs
+     * of lines are accumulated band by band in a co-occurrence table, from which the matching and the
+     * pixel counts of the lines are derived: the results are exactly those of evaluate().
+     * The visualization is not rendered in memory, but written band by band, reading the GT image again
+     * (see Results.getVisualizationWriter()).
+     *
+     * @param imageGroundTruth path of the ground truth image
+     * @param groundTruth      the ground truth polygons
+     * @param prediction       the polygons output by the method to evaluate
+     * @param thresholds       the IU thresholds for line matching
+     * @param bandHeight       the number of rows of the bands
+     * @param stats            the stats of the page, null to disable the instrumentation
+     * @return one Results object per threshold, in the same order
+     * @throws IOException if the GT image cannot be read
+     */
+    public List<Results> evaluateBanded(String imageGroundTruth, List<Polygon> groundTruth, List<Polygon> prediction,
+                                        double[] thresholds, int bandHeight, Stats stats) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
 
-                    if (isInPp && isInPgt) {           // Predicted correctly
-                        lineTP++;
-                    } else if (!isInPp && isInPgt) {   // Not predicted (but it should have been)
-                        lineFN++;
-                    } else if (isInPp && !isInPgt) {   // Predicted (but it should NOT have been)
-                        lineFP++;
-                    }
+        if (bandHeight < 1) {
+            throw new IllegalArgumentException("the bands must have at least one row, got " + bandHeight);
+        }
 
-                    // Update pmo size
-                    if (isInPp) {
-                        lineNbPixelsPrediction++;
-                    }
+        // Accumulate the co-occurrences band by band
+        CooccurrenceTable table = null;
+        int width;
+        int height;
+        try (BandReader reader = new BandReader(imageGroundTruth)) {
+            width = reader.getWidth();
+            height = reader.getHeight();
+            for (int fromY = 0; fromY < height; fromY += bandHeight) {
+                int toY = Math.min(height, fromY + bandHeight);
+                Band band = readBand(reader, groundTruth, prediction, fromY, toY, stats);
+
+                long start = Stats.start(stats);
+                CooccurrenceTable t = getCooccurrences(band.foreground, band.groundTruth, band.prediction, fromY, toY);
+                table = (table == null) ? t : table.merge(t);
+                Stats.stop(stats, Stats.Phase.PAIR_SCORING, start);
+                Stats.add(stats, Stats.Counter.PIXELS_VISITED, (long) width * (toY - fromY));
+            }
+        }
+        if (table == null) {
+            throw new IOException("empty image: " + imageGroundTruth);
+        }
 
-                    // Update pgt size
-                    if (isInPgt) {
-                        lineNbPixelsGt++;
-                    }
+        // Match the lines
+        Possibilities possibilities = getPossibilities(table, stats);
+        Stats.add(stats, Stats.Counter.POSSIBILITIES, possibilities.size);
+        logger.debug(possibilities.size + " possibilities");
+        Matching matching = match(groundTruth.size(), prediction.size(), possibilities, stats);
+
+        // The pixels of every match are counted in the table
+        long start = Stats.start(stats);
+        LineCounts[] lines = new LineCounts[matching.size()];
+        for (int i = 0; i < matching.size(); i++) {
+            lines[i] = countPixels(table, matching.getPredictionId(i), matching.getGroundTruthId(i));
+        }
+        Stats.stop(stats, Stats.Phase.COUNTING, start);
+
+        List<Results> results = new ArrayList<>(thresholds.length);
+        for (double threshold : thresholds) {
+            Color[] colors = new Color[matching.size()];
+            Results r = getResults(groundTruth.size(), prediction.size(), matching, lines, threshold, colors);
+            r.setVisualizationWriter((visualization, original, overlap, format) -> writeBandedVisualization(
+                    imageGroundTruth, width, height, groundTruth, prediction, matching, colors, bandHeight,
+                    visualization, original, overlap, format, stats));
+            results.add(r);
+        }
+        return results;
+    }
 
-                    // Update visualization image
-                    /*
-                     * (0x007F00) GREEN:   Foreground predicted correctly
-                     * (0xFFFF00) YELLOW:  Foreground which belong two multiple lines (all cases)
-                     * (0xFF0000) RED:     Foreground does not belong to this line (False positive)
-                     * (0x00FFFF) BLUE:    Foreground that should have been in this (False negative)
-                     */
-                    // Draw only if it concerns this line
-                    if (isInPgt || isInPp) {
-                        int color = 0x0;                   // Black
-                        if (isInPp && isInPgt) {
-                            color = 0x007F00;              // Green
-                        } else if (isInPp && !isInPgt) {
-                            color = 0xFF0000;              // Red
-                        } else if (!isInPp && isInPgt) {
-                            color = 0x0088FF;              // Blue
-                        }
+    /**
+     * Classify the matched lines and compute the scores for a matching threshold
+     *
+     * @param nbGroundTruth the number of ground truth polygons
+     * @param nbPrediction  the number of polygons output by the method to evaluate
+     * @param matching      the matches (prediction, GT)
+     * @param lines         the pixels counts of each match
+     * @param threshold     the IU threshold for line matching
+     * @param colors        filled with the color of the polygon of each match on the visualization
+     * @return Results object, without visualization
+     */
+    private Results getResults(int nbGroundTruth, int nbPrediction,
+                               Matching matching, LineCounts[] lines, double threshold, Color[] colors) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
 
-                        // Get the current color of the visualization
-                        int current = evalImage.getRGB(x, y) & 0x00FFFFFF;
-                        // If its not black and its not the same with want to apply -> it must be yellow!
-                        if (current != 0 && current != color) {
-                            evalImage.setRGB(x, y, 0xFFFF00);    // Yellow
-                        } else {
-                            evalImage.setRGB(x, y, color);
-                        }
-                    }
+        // Lines count
+        int nbLinesCorrect = 0;
+        int nbLinesMissed = 0;
+        int nbLinesExtra = 0;
 
-                }
-            }
+        // Pixels counts for the matched lines
+        long matchedTP = 0;
+        long matchedFN = 0;
+        long matchedFP = 0;
+
+        // Pixels counts for the whole image
+        long TP = 0;
+        long FN = 0;
+        long FP = 0;
+        long nbPixelsPrediction = 0;
+        long nbPixelsGt = 0;
+
+        // For every match
+        for (int i = 0; i < matching.size(); i++) {
+
+            logger.trace("evaluation matching " + matching.getGroundTruthId(i) + " * " + matching.getPredictionId(i));
+
+            // Pixels counts for the line (current match of polygons)
+            int lineTP = lines[i].TP; // True positive pixels
+            int lineFN = lines[i].FN; // False negative pixels
+            int lineFP = lines[i].FP; // False positive pixels
+            int lineNbPixelsPrediction = lines[i].nbPixelsPrediction;
+            int lineNbPixelsGt = lines[i].nbPixelsGt;
 
             // Drawing polygon color
             Color color = Color.WHITE;
@@ -221,56 +431,15 @@ public class LineSegmentationEvaluator {
                 color = Color.PINK;
             }
 
-            ///////////////////////////////////////////////////////////////////////////////////////
-            // Draw the polygon on the visualization
-            if (pp != null) {
-                Graphics g = evalImage.getGraphics();
-                g.setColor(color);
-                g.drawPolygon(pp);
-            }
+            colors[i] = color;
         }
 
-        // Line scores
-        double linePrecision = nbLinesCorrect / (double) (nbLinesCorrect + nbLinesExtra);
-        double lineRecall = nbLinesCorrect / (double) (nbLinesCorrect + nbLinesMissed);
-        double lineF1 = 2 * nbLinesCorrect / (double) (2 * nbLinesCorrect + nbLinesMissed + nbLinesExtra);
-        double lineIU = nbLinesCorrect / (double) (nbLinesCorrect + nbLinesMissed + nbLinesExtra);
-
-        // Pixel scores
-        double matchedPixelPrecision = matchedTP / (double) (matchedTP + matchedFP);
-        double matchedPixelRecall = matchedTP / (double) (matchedTP + matchedFN);
-        double matchedPixelF1 = 2 * matchedTP / (double) (2 * matchedTP + matchedFP + matchedFN);
-        double matchedPixelIU = matchedTP / (double) (matchedTP + matchedFP + matchedFN);
-
-        // Pixel scores
-        double pixelPrecision = TP / (double) (TP + FP);
-        double pixelRecall = TP / (double) (TP + FN);
-        double pixelF1 = 2 * TP / (double) (2 * TP + FP + FN);
-        double pixelIU = TP / (double) (TP + FP + FN);
-
-        // Storing line results
-        Results results = new Results();
-
-        results.put(Results.LINES_NB_TRUTH, groundTruth.size());
-        results.put(Results.LINES_NB_PROPOSED, prediction.size());
-        results.put(Results.LINES_NB_CORRECT, nbLinesCorrect);
-
-        results.put(Results.LINES_IU, lineIU);
-        results.put(Results.LINES_FMEASURE, lineF1);
-        results.put(Results.LINES_RECALL, lineRecall);
-        results.put(Results.LINES_PRECISION, linePrecision);
-
-        // Storing matched pixel results
-        results.put(Results.MATCHED_PIXEL_IU, matchedPixelIU);
-        results.put(Results.MATCHED_PIXEL_FMEASURE, matchedPixelF1);
-        results.put(Results.MATCHED_PIXEL_PRECISION, matchedPixelPrecision);
-        results.put(Results.MATCHED_PIXEL_RECALL, matchedPixelRecall);
-
-        // Storing pixel results
-        results.put(Results.PIXEL_IU, pixelIU);
-        results.put(Results.PIXEL_FMEASURE, pixelF1);
-        results.put(Results.PIXEL_PRECISION, pixelPrecision);
-        results.put(Results.PIXEL_RECALL, pixelRecall);
+        // Storing the counts, the scores are derived from them
+        Metrics metrics = new Metrics(threshold, nbGroundTruth, nbPrediction,
+                nbLinesCorrect, nbLinesMissed, nbLinesExtra,
+                matchedTP, matchedFP, matchedFN,
+                TP, FP, FN, nbPixelsPrediction, nbPixelsGt);
+        Results results = new Results(metrics);
 
         logger.trace(results.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(results)));
 
@@ -278,253 +447,909 @@ public class LineSegmentationEvaluator {
         logger.debug("TP = " + TP);
         logger.debug("FP = " + FP);
         logger.debug("FN = " + FN);
-        logger.debug("GT size = " + groundTruth.size());
+        logger.debug("GT size = " + nbGroundTruth);
 
-        logger.debug("Prediction size = " + prediction.size());
+        logger.debug("Prediction size = " + nbPrediction);
         logger.debug("nbPixelsPrediction = " + nbPixelsPrediction);
         logger.debug("nbPixelsGt = " + nbPixelsGt);
         logger.debug("nbLinesCorrect = " + nbLinesCorrect);
         logger.debug("nbLinesExtra = " + nbLinesExtra);
         logger.debug("nbLinesMissed = " + nbLinesMissed);
 
-        logger.debug("line IU = " + lineIU);
-        logger.debug("line F1 = " + lineF1);
-        logger.debug("linePrecision = " + linePrecision);
-        logger.debug("lineRecall = " + lineRecall);
+        if (logger.isDebugEnabled()) {
+            logger.debug("line IU = " + metrics.getLinesIU());
+            logger.debug("line F1 = " + metrics.getLinesFMeasure());
+            logger.debug("linePrecision = " + metrics.getLinesPrecision());
+            logger.debug("lineRecall = " + metrics.getLinesRecall());
+
+            logger.debug("matchedPixel IU = " + metrics.getMatchedPixelIU());
+            logger.debug("matchedPixel F1 = " + metrics.getMatchedPixelFMeasure());
+            logger.debug("matchedPixelPrecision = " + metrics.getMatchedPixelPrecision());
+            logger.debug("matchedPixelRecall = " + metrics.getMatchedPixelRecall());
+
+            logger.debug("pixel IU = " + metrics.getPixelIU());
+            logger.debug("pixel F1 = " + metrics.getPixelFMeasure());
+            logger.debug("pixelPrecision = " + metrics.getPixelPrecision());
+            logger.debug("pixelRecall = " + metrics.getPixelRecall());
+        }
 
-        logger.debug("matchedPixel IU = " + matchedPixelIU);
-        logger.debug("matchedPixel F1 = " + matchedPixelF1);
-        logger.debug("matchedPixelPrecision = " + matchedPixelPrecision);
-        logger.debug("matchedPixelRecall = " + matchedPixelRecall);
+        return results;
+    }
 
-        logger.debug("pixel IU = " + pixelIU);
-        logger.debug("pixel F1 = " + pixelF1);
-        logger.debug("pixelPrecision = " + pixelPrecision);
-        logger.debug("pixelRecall = " + pixelRecall);
+    /**
+     * Count the pixels of a match
+     *
+     * @param foreground the countable foreground of the ground truth image
+     * @param pp         the predicted polygon of the match, null if none
+     * @param pgt        the ground truth polygon of the match, null if none
+     * @param stats      the stats of the page, null if disabled
+     * @return the pixels counts of the line
+     */
+    private LineCounts countPixels(ForegroundMask foreground, PolygonMask pp, PolygonMask pgt, Stats stats) {
 
-        return results;
+        // These lines are for deep MANUAL inspection only (especially for the visualization!)
+        //if(pp!=null && pgt!=null)return new LineCounts(); // Skip all correctly matched lines
+        //if(pp==null || pgt==null)return new LineCounts(); // Skip all the extra and missed lines
+
+        /* Find the bounding box of both polygons, i.e the bounding box of the union
+         * In case one of the two polygons is null (because it was an extra o miss line)
+         * the union is exactly the non-null polygon.
+         */
+        Rectangle union = getUnion(pp, pgt);
+        Stats.add(stats, Stats.Counter.PIXELS_VISITED, (long) union.width * union.height);
+
+        // Pixels counts for the line (current match of polygons), 64 pixels at a time
+        LineCounts counts = new LineCounts();
+        counts.nbPixelsPrediction = (pp != null) ? pp.countForeground(foreground) : 0;
+        counts.nbPixelsGt = (pgt != null) ? pgt.countForeground(foreground) : 0;
+
+        // TP: predicted correctly, FN: not predicted (but it should have been), FP: predicted (but it should NOT have been)
+        counts.TP = (pp != null && pgt != null) ? PolygonMask.countForeground(pp, pgt, foreground) : 0;
+        counts.FN = counts.nbPixelsGt - counts.TP;
+        counts.FP = counts.nbPixelsPrediction - counts.TP;
+        return counts;
     }
 
     /**
-     * Find the best matching polygons between the prediction and the groundTruth
+     * Read a band of the GT image and rasterize the rows of the polygons within it
      *
-     * @param prediction  polygons given by the method
-     * @param groundTruth polygons in the ground truth
-     * @return the matching polygons
+     * @param reader      the reader of the GT image
+     * @param groundTruth the ground truth polygons
+     * @param prediction  the polygons output by the method to evaluate
+     * @param fromY       first row of the band (inclusive)
+     * @param toY         last row of the band (exclusive)
+     * @param stats       the stats of the page, null if disabled
+     * @return the band
+     * @throws IOException if the GT image cannot be read
      */
-    private List<Pair<Polygon, Polygon>> getMatchingPolygons(BufferedImage groundTruthImage, List<Polygon> groundTruth, List<Polygon> prediction) {
+    private static Band readBand(BandReader reader, List<Polygon> groundTruth, List<Polygon> prediction,
+                                 int fromY, int toY, Stats stats) throws IOException {
+        long start = Stats.start(stats);
+        BufferedImage image = reader.read(fromY, toY);
+        Stats.stop(stats, Stats.Phase.PNG_DECODE, start);
+
+        start = Stats.start(stats);
+        ForegroundMask foreground = new ForegroundMask(image, fromY, reader.getHeight());
+        Stats.stop(stats, Stats.Phase.FOREGROUND, start);
+
+        start = Stats.start(stats);
+        Band band = new Band(foreground, PolygonMask.rasterize(groundTruth, fromY, toY), PolygonMask.rasterize(prediction, fromY, toY));
+        Stats.stop(stats, Stats.Phase.RASTERIZE, start);
+        return band;
+    }
+
+    /**
+     * Write the visualization of a page evaluated by bands (see evaluateBanded()), and its overlap with
+     * the original image if any. The GT image is read again band by band, each band of the visualization
+     * being painted, overlapped and written before the next one is read. The colors of the visualization
+     * are known beforehand: it is written with a palette if the format allows it.
+     *
+     * @throws IOException if an image cannot be read or written
+     */
+    private void writeBandedVisualization(String imageGroundTruth, int width, int height,
+                                          List<Polygon> groundTruth, List<Polygon> prediction,
+                                          Matching matching, Color[] colors, int bandHeight,
+                                          File visualization, String original, File overlap, PngFormat format, Stats stats) throws IOException {
         logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
 
-        // Init the return value (the match)
-        List<Pair<Polygon, Polygon>> matching = new ArrayList<>();
-        Set<Polygon> matchedPolygons = new HashSet<>();
+        int[] palette = null;
+        if (format.isPalette()) {
+            Set<Integer> distinct = new LinkedHashSet<>();
+            for (int color : CLASS_COLORS) {
+                distinct.add(0xFF000000 | color);
+            }
+            for (Color color : colors) {
+                distinct.add(0xFF000000 | color.getRGB());
+            }
+            if (distinct.size() <= PngWriter.MAX_PALETTE_SIZE) {
+                palette = distinct.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
 
-        // Init the list of all possibilities
-        ArrayList<Possibility> possibilities = new ArrayList<>();
+        try (BandReader reader = new BandReader(imageGroundTruth);
+             BandReader originalReader = (original != null) ? new BandReader(original) : null;
+             PngWriter visualizationWriter = new PngWriter(visualization, width, height, false, format, palette);
+             PngWriter overlapWriter = (original != null) ? new PngWriter(overlap, width, height, true, format, null) : null) {
 
-        /* Measure the score between each pair of polygons \in GT U P,
-         * where GT and P represent the set of polygons for the GT and the
-         * prediction respectively.
-         * The outcome is a list of maximal size |GT|X|P| where each element of
-         * the list is a triplet (Possibility.class) which stores a possible
-         * match between two polygons and their score (in this case the IU).
-         * Triplets with the trivial score 0 (no overlap between the bounds of
-         * the polygons) are omitted in the list.
-         */
-        // For every GT polygon
-        for (Polygon pgt : groundTruth) {
+            if (originalReader != null && (originalReader.getWidth() != width || originalReader.getHeight() != height)) {
+                throw new IOException("the original image " + original + " is " + originalReader.getWidth() + "x"
+                        + originalReader.getHeight() + ", the ground truth is " + width + "x" + height);
+            }
+
+            for (int fromY = 0; fromY < height; fromY += bandHeight) {
+                int toY = Math.min(height, fromY + bandHeight);
+                Band band = readBand(reader, groundTruth, prediction, fromY, toY, stats);
 
-            // Find bounding box of GT
-            Rectangle rgt = pgt.getBounds();
-            logger.trace("matching possibility for GT: " + pgt);
+                long start = Stats.start(stats);
+                BufferedImage image = new BufferedImage(width, toY - fromY, BufferedImage.TYPE_INT_RGB);
+                paintRows(image, fromY, band.foreground, matching.withMasks(band.groundTruth, band.prediction), colors);
+                Stats.stop(stats, Stats.Phase.VISUALIZATION, start);
 
-            // For every Prediction polygon
-            for (Polygon pp : prediction) {
+                start = Stats.start(stats);
+                visualizationWriter.write(image);
+                Stats.stop(stats, Stats.Phase.PNG_ENCODE, start);
 
-                // Find bounding box of prediction
-                Rectangle rp = pp.getBounds();
+                if (originalReader != null) {
+                    start = Stats.start(stats);
+                    BufferedImage originalBand = originalReader.read(fromY, toY);
+                    Stats.stop(stats, Stats.Phase.PNG_DECODE, start);
 
-                // Skip if no overlap
-                if (!rgt.intersects(rp)) {
-                    logger.trace("no matching possibility of " + pgt + " with MO: " + pp);
-                    continue;
+                    OverlapCompositor.write(image, originalBand, overlapWriter, stats);
                 }
+            }
+        }
+        Stats.add(stats, Stats.Counter.BYTES_WRITTEN, visualization.length() + ((original != null) ? overlap.length() : 0));
+    }
 
-                // Find the union
-                Rectangle union = rgt.union(rp);
+    /**
+     * Count the pixels of a match from a co-occurrence table
+     *
+     * @param table the co-occurrence table of the page
+     * @param pp    the index of the predicted polygon of the match, -1 if none
+     * @param pgt   the index of the ground truth polygon of the match, -1 if none
+     * @return the pixels counts of the line
+     */
+    private static LineCounts countPixels(CooccurrenceTable table, int pp, int pgt) {
+        LineCounts counts = new LineCounts();
+        counts.nbPixelsPrediction = (pp >= 0) ? table.getPredictionArea(pp) : 0;
+        counts.nbPixelsGt = (pgt >= 0) ? table.getGroundTruthArea(pgt) : 0;
+        counts.TP = (pp >= 0 && pgt >= 0) ? table.getIntersection(pgt, pp) : 0;
+        counts.FN = counts.nbPixelsGt - counts.TP;
+        counts.FP = counts.nbPixelsPrediction - counts.TP;
+        return counts;
+    }
 
-                // Iterate the union area looking for foreground pixels belonging to both polygons
-                int intersectingPixels = 0;
-                int unionPixels = 0;
-                for (int x = (int) union.getMinX(); x < union.getMaxX(); x++) {
-                    for (int y = (int) union.getMinY(); y < union.getMaxY(); y++) {
-                        // Ignore boundary pixels
-                        if (((groundTruthImage.getRGB(x, y) >> 23) & 0x1) == 1) {
-                            continue;
-                        }
+    /**
+     * Paint the visualization of the matches. The image is split in horizontal bands painted in
+     * parallel, each band replaying all the matches in order so that the result does not depend
+     * on the number of threads.
+     *
+     * @param foreground the countable foreground of the ground truth image
+     * @param matching   the matches (prediction, GT)
+     * @param colors     the color of the polygon of each match
+     * @return the visualization image
+     */
+    private BufferedImage paintVisualization(ForegroundMask foreground, Matching matching, Color[] colors) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
 
-                        // Ignore background pixels
-                        if ((groundTruthImage.getRGB(x, y) & 0x1) == 1) {
-                            continue;
-                        }
+        // Init evaluation image
+        BufferedImage evalImage = new BufferedImage(foreground.getWidth(), foreground.getHeight(), BufferedImage.TYPE_INT_RGB);
+        paintRows(evalImage, 0, foreground, matching, colors);
+        return evalImage;
+    }
 
-                        // Check if pixels belong to polygons
-                        boolean isInPp = pp.contains(x, y);
-                        boolean isInPgt = pgt.contains(x, y);
+    /**
+     * Paint the rows of the visualization held by an image, in horizontal bands painted in parallel
+     *
+     * @param evalImage the image of the rows [originY, originY + evalImage.getHeight()) of the visualization,
+     *                  a new (black) TYPE_INT_RGB image
+     * @param originY   the first row of the visualization held by the image
+     * @param foreground the countable foreground of the ground truth image (at least of these rows)
+     * @param matching   the matches (prediction, GT)
+     * @param colors     the color of the polygon of each match
+     */
+    private void paintRows(BufferedImage evalImage, int originY, ForegroundMask foreground, Matching matching, Color[] colors) {
+        int height = evalImage.getHeight();
+        int bandHeight = (pool == null) ? Math.max(height, 1) : BAND_HEIGHT;
+        int nbBands = (height + bandHeight - 1) / bandHeight;
+        compute(() -> {
+            range(nbBands).forEach(b -> paintBand(evalImage, originY, foreground, matching, colors,
+                    originY + b * bandHeight, originY + Math.min(height, (b + 1) * bandHeight)));
+            return null;
+        });
+    }
 
-                        // If the pixel belongs to both the polygons
-                        if (isInPp && isInPgt) {
-                            intersectingPixels++;
+    /**
+     * Paint the rows [fromY, toY) of the visualization, held by an image starting at row originY.
+     * <p>
+     * The matches are painted in order, each one coloring the foreground of its polygons then drawing the
+     * outline of its prediction over it. A pixel covered by an outline thus ends up in the color of the last
+     * outline covering it, recolored by the fills of the matches painted after that outline (and only those).
+     * This lets all the outlines be drawn first in one batch, each in a color holding the index of its match,
+     * then the fills be replayed straight on the pixels of the image, 64 at a time from the bits of the masks,
+     * skipping the pixels an outline painted later covers. The class of each filled pixel is kept in the
+     * alpha byte of the pixels (unused by TYPE_INT_RGB), the colors being resolved in a last pass over the rows.
+     */
+    private void paintBand(BufferedImage evalImage, int originY, ForegroundMask foreground, Matching matching, Color[] colors, int fromY, int toY) {
+        int width = evalImage.getWidth();
+        int[] pixels = ((DataBufferInt) evalImage.getRaster().getDataBuffer()).getData();
+
+        // Draw the outlines, in the color index + 1
+        int[] outlineColors = new int[matching.size()];
+        Graphics g = evalImage.createGraphics();
+        g.translate(0, -originY);
+        g.setClip(0, fromY, width, toY - fromY);
+        for (int i = 0; i < matching.size(); i++) {
+            PolygonMask pp = matching.getPrediction(i);
+            if (pp != null) {
+                outlineColors[i] = colors[i].getRGB() & 0x00FFFFFF;
+                g.setColor(new Color(i + 1));
+                g.drawPolygon(pp.getPolygon());
+            }
+        }
+        g.dispose();
+
+        // Fill the foreground of the lines
+        long[] fg = foreground.getBits();
+        int fgWordsPerRow = (width + 63) >> 6;
+        for (int i = 0; i < matching.size(); i++) {
+            PolygonMask pp = matching.getPrediction(i);
+            PolygonMask pgt = matching.getGroundTruth(i);
+            Rectangle union = getUnion(pp, pgt);
+
+            // The rows and words of the bounding box, in the band and in the image
+            int y0 = Math.max(Math.max(union.y, fromY), foreground.getFromY());
+            int y1 = Math.min(Math.min(union.y + union.height, toY), foreground.getFromY() + foreground.getRows());
+            int w0 = Math.max(union.x >> 6, 0);
+            int w1 = Math.min((union.x + union.width + 63) >> 6, fgWordsPerRow);
+
+            for (int y = y0; y < y1; y++) {
+                int fi = (y - foreground.getFromY()) * fgWordsPerRow;
+                int row = (y - originY) * width;
+                for (int w = w0; w < w1; w++) {
+                    long inPp = (pp != null) ? pp.getWord(y, w) : 0L;
+                    long inPgt = (pgt != null) ? pgt.getWord(y, w) : 0L;
+                    // Ignore boundary and background pixels, and the pixels not concerning this line
+                    long word = fg[fi + w] & (inPp | inPgt);
+                    while (word != 0) {
+                        int bit = Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        int p = row + (w << 6) + bit;
+                        int pixel = pixels[p];
+
+                        // Outlined later: the outline will cover the fill
+                        int outline = (pixel & 0x00FFFFFF) - 1;
+                        if (outline >= i) {
+                            continue;
                         }
+                        int fill = ((inPp >>> bit & 1L) != 0) ? (((inPgt >>> bit & 1L) != 0) ? GREEN : RED) : BLUE;
 
-                        // If the pixel belongs any of the polygons
-                        if (isInPp || isInPgt) {
-                            unionPixels++;
+                        // Get the current color of the visualization
+                        int previous = getClass(pixel);
+                        int current = (previous != 0) ? CLASS_COLORS[previous] : (outline >= 0) ? outlineColors[outline] : 0;
+                        // If its not black and its not the same with want to apply -> it must be yellow!
+                        if (current != 0 && current != CLASS_COLORS[fill]) {
+                            fill = YELLOW;
                         }
+                        pixels[p] = (fill << 24) | (pixel & 0x00FFFFFF);
                     }
                 }
+            }
+        }
 
-                // Omit trivial '0' results
-                if (intersectingPixels > 0) {
-                    // Add the matching possibility
-                    possibilities.add(new Possibility(pgt, pp, intersectingPixels / (double) unionPixels));
-                    logger.trace("matching possibility: " + pgt + " * " + pp + " = " + intersectingPixels / (double) unionPixels);
-                }
+        // Resolve the colors
+        for (int p = (fromY - originY) * width, end = (toY - originY) * width; p < end; p++) {
+            int pixel = pixels[p];
+            if (pixel != 0) {
+                int fill = getClass(pixel);
+                pixels[p] = (fill != 0) ? CLASS_COLORS[fill] : outlineColors[(pixel & 0x00FFFFFF) - 1];
             }
         }
-        logger.debug(possibilities.size() + " possibilities");
+    }
 
-        /* Traverse the score-descending sorted list of Possibility and select
+    /**
+     * @return the class of a pixel of the visualization being painted, 0 if not filled (Java2D sets the
+     * alpha byte of the pixels it draws, which are not filled yet)
+     */
+    private static int getClass(int pixel) {
+        int fill = pixel >>> 24;
+        return (fill <= YELLOW) ? fill : 0;
+    }
+
+    /**
+     * @return the bounding box of the union of two polygons, one of them can be null
+     */
+    private static Rectangle getUnion(PolygonMask pp, PolygonMask pgt) {
+        Rectangle rp = (pp != null) ? pp.getBounds() : pgt.getBounds();
+        Rectangle rgt = (pgt != null) ? pgt.getBounds() : pp.getBounds();
+        return rgt.union(rp);
+    }
+
+    /**
+     * Find the best matching polygons between the prediction and the groundTruth
+     *
+     * @param prediction  rasterized polygons given by the method
+     * @param groundTruth rasterized polygons in the ground truth
+     * @param spans       the runs of the foreground and of the polygons (span engine only, null otherwise)
+     * @param stats       the stats of the page, null if disabled
+     * @return the matching polygons
+     */
+    private Matching getMatchingPolygons(ForegroundMask foreground, List<PolygonMask> groundTruth, List<PolygonMask> prediction, PageSpans spans, Stats stats) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        // Compute the list of all possibilities
+        long start = Stats.start(stats);
+        Possibilities possibilities;
+        if (spans != null) {
+            possibilities = getPossibilitiesFromSpans(groundTruth, prediction, spans, stats);
+        } else if (engine == Engine.COOCCURRENCE) {
+            possibilities = getPossibilitiesFromCooccurrences(foreground, groundTruth, prediction, stats);
+        } else {
+            possibilities = getPossibilities(foreground, groundTruth, prediction, stats);
+        }
+        Stats.stop(stats, Stats.Phase.PAIR_SCORING, start);
+        Stats.add(stats, Stats.Counter.POSSIBILITIES, possibilities.size);
+        logger.debug(possibilities.size + " possibilities");
+
+        return match(groundTruth.size(), prediction.size(), possibilities, stats).withMasks(groundTruth, prediction);
+    }
+
+    /**
+     * Match the polygons from their matching possibilities
+     *
+     * @param nbGroundTruth the number of polygons in the ground truth
+     * @param nbPrediction  the number of polygons given by the method
+     * @param possibilities the matching possibilities
+     * @param stats         the stats of the page, null if disabled
+     * @return the matching polygons (as indexes, see Matching.withMasks())
+     */
+    private Matching match(int nbGroundTruth, int nbPrediction, Possibilities possibilities, Stats stats) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        // Init the return value (the match)
+        Matching matching = new Matching(nbGroundTruth, nbPrediction);
+        boolean[] matchedGroundTruth = new boolean[nbGroundTruth];
+        boolean[] matchedPrediction = new boolean[nbPrediction];
+
+        long start = Stats.start(stats);
+
+        /* Traverse the score-descending sorted list of possibilities and select
          * the first available match for each polygon belonging to the Prediction set.
          * This ensures that no polygons are matched twice and that each polygon
          * belonging to P gets matched with is best (available) matching polygon in
          * the GT, thus maximizing the total matching score in a deterministic way.
+         * Ties are broken by the order of the list (the sort is stable).
          */
-        Collections.sort(possibilities);
-        for (Possibility p : possibilities) {
+        for (int i : possibilities.sortByScore()) {
+            int gt = possibilities.gt[i];
+            int p = possibilities.p[i];
             // Take the next one free on the sorted list
-            if (!matchedPolygons.contains(p.p) && !matchedPolygons.contains(p.gt)) {
+            if (!matchedPrediction[p] && !matchedGroundTruth[gt]) {
                 // Add matching polygons
-                logger.debug("match " + p.score);
-                matching.add(Pair.of(p.p, p.gt));
-                matchedPolygons.add(p.p);
-                matchedPolygons.add(p.gt);
+                logger.debug("match " + possibilities.score[i]);
+                matching.add(p, gt);
+                matchedPrediction[p] = true;
+                matchedGroundTruth[gt] = true;
             }
         }
 
         logger.info("found " + matching.size() + " matches");
 
         // Add all missing GT polygons (un-matched) by matching them will 'null'
-        for (Polygon pgt : groundTruth) {
-            if (!matchedPolygons.contains(pgt)) {
+        for (int gt = 0; gt < nbGroundTruth; gt++) {
+            if (!matchedGroundTruth[gt]) {
                 logger.debug("missed line matched with null");
-                matching.add(Pair.of(null, pgt));
-                matchedPolygons.add(pgt);
+                matching.add(-1, gt);
+                matchedGroundTruth[gt] = true;
             }
         }
         // Add all extra Prediction polygons (un-matched) by matching them will 'null'
-        for (Polygon pp : prediction) {
-            if (!matchedPolygons.contains(pp)) {
+        for (int p = 0; p < nbPrediction; p++) {
+            if (!matchedPrediction[p]) {
                 logger.debug("extra line matched with null");
-                matching.add(Pair.of(pp, null));
-                matchedPolygons.add(pp);
+                matching.add(p, -1);
+                matchedPrediction[p] = true;
             }
         }
 
-        // Check that all polygons got eventually matched
-        if (matchedPolygons.size() != groundTruth.size() + prediction.size()) {
-            logger.error("ERROR: some polygons have not been matched!");
-        }
-
         logger.trace(matching.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(matching)));
 
+        Stats.stop(stats, Stats.Phase.MATCHING, start);
         return matching;
     }
 
     /**
-     * Get the evaluation image
+     * Compute the matching possibilities by scanning the union of the bounding boxes of every
+     * pair of overlapping polygons
      *
-     * @return eval image
+     * @param foreground  the countable foreground of the ground truth image
+     * @param groundTruth rasterized polygons in the ground truth
+     * @param prediction  rasterized polygons given by the method
+     * @param stats       the stats of the page, null if disabled
+     * @return the list of possibilities with a non-zero score
      */
-    public BufferedImage getEvalImage() {
-        return evalImage;
+    private Possibilities getPossibilities(ForegroundMask foreground, List<PolygonMask> groundTruth, List<PolygonMask> prediction, Stats stats) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        /* Measure the score between each pair of polygons \in GT U P,
+         * where GT and P represent the set of polygons for the GT and the
+         * prediction respectively.
+         * The outcome is a list of maximal size |GT|X|P| where each element of
+         * the list is a triplet (gt, p, score) which stores a possible
+         * match between two polygons and their score (in this case the IU).
+         * Triplets with the trivial score 0 (no overlap between the bounds of
+         * the polygons) are omitted in the list. The candidates with overlapping
+         * bounds are retrieved from a spatial index of the prediction, in the same
+         * order as iterating over the whole prediction.
+         */
+        BoundsIndex index = new BoundsIndex(prediction);
+
+        // The foreground pixels of a polygon do not depend on the pair, they are counted once
+        int[] predictionAreas = compute(() -> range(prediction.size())
+                .map(i -> prediction.get(i).countForeground(foreground))
+                .toArray());
+
+        // Every GT polygon is scored independently, the possibilities are concatenated in the GT order
+        List<Possibilities> perGroundTruth = compute(() -> range(groundTruth.size())
+                .mapToObj(i -> getPossibilities(foreground, groundTruth, i, prediction, predictionAreas, index, stats))
+                .collect(Collectors.toList()));
+
+        Possibilities possibilities = new Possibilities();
+        for (Possibilities p : perGroundTruth) {
+            possibilities.addAll(p);
+        }
+        return possibilities;
+    }
+
+    /**
+     * Compute the matching possibilities of one GT polygon
+     *
+     * @param foreground  the countable foreground of the ground truth image
+     * @param groundTruth rasterized polygons in the ground truth
+     * @param gt          index of the GT polygon
+     * @param prediction  rasterized polygons given by the method
+     * @param predictionAreas the number of foreground pixels of every predicted polygon
+     * @param index       spatial index of the bounding boxes of the prediction
+     * @param stats       the stats of the page, null if disabled
+     * @return the list of possibilities of the GT polygon with a non-zero score
+     */
+    private Possibilities getPossibilities(ForegroundMask foreground, List<PolygonMask> groundTruth, int gt, List<PolygonMask> prediction,
+                                           int[] predictionAreas, BoundsIndex index, Stats stats) {
+        Possibilities possibilities = new Possibilities();
+        PolygonMask pgt = groundTruth.get(gt);
+        int groundTruthArea = pgt.countForeground(foreground);
+
+        // Find bounding box of GT
+        Rectangle rgt = pgt.getBounds();
+        logger.trace("matching possibility for GT: " + pgt.getPolygon());
+
+        // For every Prediction polygon whose bounding box overlaps
+        int[] candidates = index.query(rgt);
+        long pixelsVisited = 0;
+        for (int candidate : candidates) {
+
+            // Find bounding box of prediction
+            PolygonMask pp = prediction.get(candidate);
+            Rectangle rp = pp.getBounds();
+
+            // Find the union
+            Rectangle union = rgt.union(rp);
+            pixelsVisited += (long) union.width * union.height;
+
+            // Count the foreground pixels belonging to both polygons, the union follows from the areas
+            int intersectingPixels = PolygonMask.countForeground(pgt, pp, foreground);
+            int unionPixels = groundTruthArea + predictionAreas[candidate] - intersectingPixels;
+
+            // Omit trivial '0' results
+            if (intersectingPixels > 0) {
+                // Add the matching possibility
+                possibilities.add(gt, candidate, intersectingPixels / (double) unionPixels);
+                logger.trace("matching possibility: " + pgt.getPolygon() + " * " + pp.getPolygon() + " = " + intersectingPixels / (double) unionPixels);
+            }
+        }
+        Stats.add(stats, Stats.Counter.CANDIDATE_PAIRS, candidates.length);
+        Stats.add(stats, Stats.Counter.PIXELS_VISITED, pixelsVisited);
+        return possibilities;
+    }
+
+    /**
+     * Encode the countable foreground and the polygons as runs of pixels, and count the foreground
+     * pixels of every polygon
+     *
+     * @param foreground  the countable foreground of the ground truth image
+     * @param groundTruth rasterized polygons in the ground truth
+     * @param prediction  rasterized polygons given by the method
+     * @param stats       the stats of the page, null if disabled
+     * @return the runs of the page
+     */
+    private PageSpans encodeSpans(ForegroundMask foreground, List<PolygonMask> groundTruth, List<PolygonMask> prediction, Stats stats) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        long start = Stats.start(stats);
+        SpanMask foregroundSpans = new SpanMask(foreground);
+        Stats.stop(stats, Stats.Phase.FOREGROUND, start);
+
+        start = Stats.start(stats);
+        List<SpanMask> groundTruthSpans = compute(() -> range(groundTruth.size())
+                .mapToObj(i -> new SpanMask(groundTruth.get(i)))
+                .collect(Collectors.toList()));
+        List<SpanMask> predictionSpans = compute(() -> range(prediction.size())
+                .mapToObj(i -> new SpanMask(prediction.get(i)))
+                .collect(Collectors.toList()));
+        int[] groundTruthAreas = compute(() -> range(groundTruth.size())
+                .map(i -> SpanMask.countIntersection(groundTruthSpans.get(i), foregroundSpans))
+                .toArray());
+        int[] predictionAreas = compute(() -> range(prediction.size())
+                .map(i -> SpanMask.countIntersection(predictionSpans.get(i), foregroundSpans))
+                .toArray());
+        Stats.stop(stats, Stats.Phase.RASTERIZE, start);
+
+        return new PageSpans(foregroundSpans, groundTruthSpans, predictionSpans, groundTruthAreas, predictionAreas);
+    }
+
+    /**
+     * Compute the matching possibilities by merging the runs of the pairs of polygons whose bounding
+     * boxes overlap. The possibilities are listed in the same order as in getPossibilities(), with the
+     * same scores, such that the (stable) sorting on the score yields exactly the same matching.
+     *
+     * @param groundTruth rasterized polygons in the ground truth
+     * @param prediction  rasterized polygons given by the method
+     * @param spans       the runs of the foreground and of the polygons
+     * @param stats       the stats of the page, null if disabled
+     * @return the list of possibilities with a non-zero score
+     */
+    private Possibilities getPossibilitiesFromSpans(List<PolygonMask> groundTruth, List<PolygonMask> prediction, PageSpans spans, Stats stats) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        BoundsIndex index = new BoundsIndex(prediction);
+
+        // Every GT polygon is scored independently, the possibilities are concatenated in the GT order
+        List<Possibilities> perGroundTruth = compute(() -> range(groundTruth.size())
+                .mapToObj(gt -> {
+                    Possibilities possibilities = new Possibilities();
+                    int[] candidates = index.query(groundTruth.get(gt).getBounds());
+                    for (int candidate : candidates) {
+                        int intersectingPixels = spans.getIntersection(gt, candidate);
+                        // Omit trivial '0' results
+                        if (intersectingPixels > 0) {
+                            int unionPixels = spans.groundTruthAreas[gt] + spans.predictionAreas[candidate] - intersectingPixels;
+                            possibilities.add(gt, candidate, intersectingPixels / (double) unionPixels);
+                        }
+                    }
+                    Stats.add(stats, Stats.Counter.CANDIDATE_PAIRS, candidates.length);
+                    return possibilities;
+                })
+                .collect(Collectors.toList()));
+
+        Possibilities possibilities = new Possibilities();
+        for (Possibilities p : perGroundTruth) {
+            possibilities.addAll(p);
+        }
+        return possibilities;
+    }
+
+    /**
+     * Compute the matching possibilities from the co-occurrence table of the GT and prediction lines.
+     * The possibilities are listed in the same order as in getPossibilities(), such that the (stable)
+     * sorting on the score yields exactly the same matching.
+     *
+     * @param foreground  the countable foreground of the ground truth image
+     * @param groundTruth rasterized polygons in the ground truth
+     * @param prediction  rasterized polygons given by the method
+     * @param stats       the stats of the page, null if disabled
+     * @return the list of possibilities with a non-zero score
+     */
+    private Possibilities getPossibilitiesFromCooccurrences(ForegroundMask foreground, List<PolygonMask> groundTruth, List<PolygonMask> prediction, Stats stats) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        CooccurrenceTable table = getCooccurrences(foreground, groundTruth, prediction, 0, foreground.getHeight());
+
+        // The whole foreground is walked once
+        Stats.add(stats, Stats.Counter.PIXELS_VISITED, (long) foreground.getWidth() * foreground.getHeight());
+        return getPossibilities(table, stats);
+    }
+
+    /**
+     * Build the co-occurrence table of the rows [fromY, toY). The table is built on horizontal bands
+     * in parallel, the partial tables are then summed up.
+     */
+    private CooccurrenceTable getCooccurrences(ForegroundMask foreground, List<PolygonMask> groundTruth, List<PolygonMask> prediction, int fromY, int toY) {
+        int height = toY - fromY;
+        int bandHeight = (pool == null) ? Math.max(height, 1) : BAND_HEIGHT;
+        int nbBands = (height + bandHeight - 1) / bandHeight;
+        return compute(() -> range(nbBands)
+                .mapToObj(b -> new CooccurrenceTable(foreground, groundTruth, prediction, fromY + b * bandHeight, fromY + Math.min(height, (b + 1) * bandHeight)))
+                .reduce(CooccurrenceTable::merge)
+                .orElseGet(() -> new CooccurrenceTable(foreground, groundTruth, prediction, fromY, toY)));
+    }
+
+    /**
+     * List the matching possibilities of a co-occurrence table, in the same order as getPossibilities()
+     *
+     * @param table the co-occurrence table of the page
+     * @param stats the stats of the page, null if disabled
+     * @return the list of possibilities with a non-zero score
+     */
+    private static Possibilities getPossibilities(CooccurrenceTable table, Stats stats) {
+        // Every co-occurring pair is a candidate
+        long[] pairs = table.getPairs();
+        Stats.add(stats, Stats.Counter.CANDIDATE_PAIRS, pairs.length);
+
+        Possibilities possibilities = new Possibilities();
+        for (long pair : pairs) {
+            int gt = CooccurrenceTable.groundTruthOf(pair);
+            int p = CooccurrenceTable.predictionOf(pair);
+            int intersectingPixels = table.getIntersection(gt, p);
+            int unionPixels = table.getUnion(gt, p);
+            possibilities.add(gt, p, intersectingPixels / (double) unionPixels);
+        }
+        return possibilities;
     }
 
     /**
      * This method overlaps the evaluation visualization with the original image to further
-     * enable the user to spot and interpret the mistakes in the prediction
+     * enable the user to spot and interpret the mistakes in the prediction. To write it in a file,
+     * OverlapCompositor.write() avoids holding the whole overlap in memory.
      *
-     * @param visualization the visualization image generated by this.getEvalImage()
+     * @param visualization the visualization image of the results (see Results.getVisualization())
      * @param original      the original image as it is in the dataset
      * @return a BufferedImage representing the overlapped images
      */
     public BufferedImage overlapEvaluation(BufferedImage visualization, BufferedImage original) {
+        return OverlapCompositor.overlap(visualization, original);
+    }
 
-        assert (visualization.getWidth() == original.getWidth());
-        assert (visualization.getHeight() == original.getHeight());
+    /**
+     * Shut down the pool of threads of the evaluator, if any. The pages being evaluated are completed,
+     * but the evaluator cannot evaluate other pages on several threads afterwards.
+     */
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
 
-        // Create new image of type ARGB (with alpha channel)
-        BufferedImage overlap = new BufferedImage(visualization.getWidth(), visualization.getHeight(), BufferedImage.TYPE_INT_ARGB);
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE
+    ///////////////////////////////////////////////////////////////////////////////////////////////
 
-        Graphics g = overlap.getGraphics();
+    /**
+     * Run a task in the pool of the evaluator, or directly if sequential
+     */
+    private <T> T compute(Supplier<T> task) {
+        return (pool == null) ? task.get() : pool.submit((Callable<T>) task::get).join();
+    }
 
-        // Paint original
-        g.drawImage(original, 0, 0, null);
+    /**
+     * @return the stream of the indexes [0, n), parallel if the evaluator has a pool
+     */
+    private IntStream range(int n) {
+        IntStream range = IntStream.range(0, n);
+        return (pool == null) ? range : range.parallel();
+    }
 
-        // Set alpha
-        ((Graphics2D) g).setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.57f));
+    /**
+     * The pixels counts of a line (i.e. a match of polygons)
+     */
+    private static final class LineCounts {
+        int TP;
+        int FN;
+        int FP;
+        int nbPixelsPrediction;
+        int nbPixelsGt;
+    }
+
+    /**
+     * The runs of the countable foreground and of the polygons of a page, with the number of foreground
+     * pixels of every polygon
+     */
+    private static final class PageSpans {
+        private final SpanMask foreground;
+        private final List<SpanMask> groundTruth;
+        private final List<SpanMask> prediction;
+        private final int[] groundTruthAreas;
+        private final int[] predictionAreas;
+
+        private PageSpans(SpanMask foreground, List<SpanMask> groundTruth, List<SpanMask> prediction,
+                          int[] groundTruthAreas, int[] predictionAreas) {
+            this.foreground = foreground;
+            this.groundTruth = groundTruth;
+            this.prediction = prediction;
+            this.groundTruthAreas = groundTruthAreas;
+            this.predictionAreas = predictionAreas;
+        }
 
-        // Paint visualization
-        g.drawImage(visualization, 0, 0, null);
+        /**
+         * @return the number of foreground pixels in both polygons
+         */
+        int getIntersection(int gt, int p) {
+            return SpanMask.countIntersection(groundTruth.get(gt), prediction.get(p), foreground);
+        }
 
-        return overlap;
+        /**
+         * Count the pixels of a match
+         *
+         * @param pp  the index of the predicted polygon of the match, -1 if none
+         * @param pgt the index of the ground truth polygon of the match, -1 if none
+         * @return the pixels counts of the line
+         */
+        LineCounts countPixels(int pp, int pgt) {
+            LineCounts counts = new LineCounts();
+            counts.nbPixelsPrediction = (pp >= 0) ? predictionAreas[pp] : 0;
+            counts.nbPixelsGt = (pgt >= 0) ? groundTruthAreas[pgt] : 0;
+            counts.TP = (pp >= 0 && pgt >= 0) ? getIntersection(pgt, pp) : 0;
+            counts.FN = counts.nbPixelsGt - counts.TP;
+            counts.FP = counts.nbPixelsPrediction - counts.TP;
+            return counts;
+        }
     }
 
-    ///////////////////////////////////////////////////////////////////////////////////////////////
-    // PRIVATE
-    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * The foreground and the masks of the polygons within a horizontal band of a page
+     */
+    private static final class Band {
+        private final ForegroundMask foreground;
+        private final List<PolygonMask> groundTruth;
+        private final List<PolygonMask> prediction;
+
+        private Band(ForegroundMask foreground, List<PolygonMask> groundTruth, List<PolygonMask> prediction) {
+            this.foreground = foreground;
+            this.groundTruth = groundTruth;
+            this.prediction = prediction;
+        }
+    }
 
     /**
-     * This class represent a triplet of two polygons (GT and prediction) and their
-     * matching score (typically the IU). It is used to represent a possible match between
-     * a GT polygon and a Prediction one.
+     * The matches between prediction and GT polygons, as indexes in their lists (-1 for none).
+     * Unmatched polygons are matched with none. The masks of the polygons are attached with withMasks().
      */
-    private final class Possibility implements Comparable<Possibility> {
+    private static final class Matching {
+        private final List<PolygonMask> groundTruth;
+        private final List<PolygonMask> prediction;
+        private final int[] predictionIds;
+        private final int[] groundTruthIds;
+        private int size = 0;
+
+        Matching(int nbGroundTruth, int nbPrediction) {
+            this.groundTruth = null;
+            this.prediction = null;
+            // Every polygon appears in exactly one match
+            this.predictionIds = new int[nbGroundTruth + nbPrediction];
+            this.groundTruthIds = new int[predictionIds.length];
+        }
+
+        private Matching(Matching matching, List<PolygonMask> groundTruth, List<PolygonMask> prediction) {
+            this.groundTruth = groundTruth;
+            this.prediction = prediction;
+            this.predictionIds = matching.predictionIds;
+            this.groundTruthIds = matching.groundTruthIds;
+            this.size = matching.size;
+        }
+
         /**
-         * The polygon belonging to the GT
+         * @return the same matches, with the masks of the polygons (whole or bands of them)
          */
-        public final Polygon gt;
+        Matching withMasks(List<PolygonMask> groundTruth, List<PolygonMask> prediction) {
+            return new Matching(this, groundTruth, prediction);
+        }
+
+        void add(int p, int gt) {
+            predictionIds[size] = p;
+            groundTruthIds[size] = gt;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
         /**
-         * The polygon belonging to the prediction
+         * @return the index of the predicted polygon of the i-th match, -1 if none
          */
-        public final Polygon p;
+        int getPredictionId(int i) {
+            return predictionIds[i];
+        }
+
         /**
-         * The matching score between the two (typically the IU of their bounds)
+         * @return the index of the ground truth polygon of the i-th match, -1 if none
          */
-        public final double score;
+        int getGroundTruthId(int i) {
+            return groundTruthIds[i];
+        }
 
         /**
-         * Build a Possibility (triplet)
-         *
-         * @param gt    the gt polygon
-         * @param p     the prediction polygon
-         * @param score their matching score
+         * @return the predicted polygon of the i-th match, null if none
+         */
+        PolygonMask getPrediction(int i) {
+            return (predictionIds[i] < 0) ? null : prediction.get(predictionIds[i]);
+        }
+
+        /**
+         * @return the ground truth polygon of the i-th match, null if none
          */
-        public Possibility(Polygon gt, Polygon p, double score) {
-            this.gt = gt;
-            this.p = p;
-            this.score = score;
+        PolygonMask getGroundTruth(int i) {
+            return (groundTruthIds[i] < 0) ? null : groundTruth.get(groundTruthIds[i]);
+        }
+    }
+
+    /**
+     * The possible matches between a GT polygon and a Prediction one, stored as parallel arrays of
+     * triplets (gt, p, score) where gt and p are indexes in their lists and score is their matching
+     * score (typically the IU).
+     */
+    private static final class Possibilities {
+        int[] gt = new int[16];
+        int[] p = new int[16];
+        double[] score = new double[16];
+        int size = 0;
+
+        void add(int gt, int p, double score) {
+            if (size == this.gt.length) {
+                grow(2 * size);
+            }
+            this.gt[size] = gt;
+            this.p[size] = p;
+            this.score[size] = score;
+            size++;
+        }
+
+        void addAll(Possibilities other) {
+            if (size + other.size > gt.length) {
+                grow(Math.max(2 * gt.length, size + other.size));
+            }
+            System.arraycopy(other.gt, 0, gt, size, other.size);
+            System.arraycopy(other.p, 0, p, size, other.size);
+            System.arraycopy(other.score, 0, score, size, other.size);
+            size += other.size;
+        }
+
+        private void grow(int capacity) {
+            gt = Arrays.copyOf(gt, capacity);
+            p = Arrays.copyOf(p, capacity);
+            score = Arrays.copyOf(score, capacity);
         }
 
         /**
-         * Comparator on the score of possibilities
+         * Sort the possibilities by descending score. Possibilities with the same score keep
+         * their relative order, as with Collections.sort().
          *
-         * @param p the possibility to comapre to
-         * @return standard Double.compare (-1,0,1)
+         * @return the indexes of the possibilities in sorted order
          */
-        @Override
-        public int compareTo(Possibility p) {
-            return Double.compare(p.score, score);
+        int[] sortByScore() {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            // Bottom-up merge sort, stable
+            int[] buffer = new int[size];
+            for (int width = 1; width < size; width *= 2) {
+                for (int from = 0; from < size - width; from += 2 * width) {
+                    merge(order, buffer, from, from + width, Math.min(from + 2 * width, size));
+                }
+            }
+            return order;
+        }
+
+        /**
+         * Merge the sorted runs order[from, mid) and order[mid, to)
+         */
+        private void merge(int[] order, int[] buffer, int from, int mid, int to) {
+            // Already in order
+            if (score[order[mid - 1]] >= score[order[mid]]) {
+                return;
+            }
+            System.arraycopy(order, from, buffer, from, to - from);
+            int i = from;
+            int j = mid;
+            for (int k = from; k < to; k++) {
+                // Take from the right run only if strictly better, for stability
+                if (j < to && (i >= mid || score[buffer[j]] > score[buffer[i]])) {
+                    order[k] = buffer[j++];
+                } else {
+                    order[k] = buffer[i++];
+                }
+            }
         }
     }
 }
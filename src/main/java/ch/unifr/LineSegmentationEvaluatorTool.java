@@ -12,13 +12,20 @@ import org.jdom2.JDOMException;
 import org.jdom2.Namespace;
 import org.jdom2.input.SAXBuilder;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * LineSegmentationEvaluatorTool class of the ICDAR 2017 competition
@@ -34,6 +41,10 @@ public class LineSegmentationEvaluatorTool {
      * Log4j logger
      */
     private static final Logger logger = Logger.getLogger(LineSegmentationEvaluatorTool.class);
+    /**
+     * Maximal number of thresholds of a range start:end:step
+     */
+    static final int MAX_THRESHOLDS = 10000;
 
     /**
      * HisDoc Layout Competition Task-3(line segmentation) Evaluator
@@ -46,20 +57,20 @@ public class LineSegmentationEvaluatorTool {
         ///////////////////////////////////////////////////////////////////////////////////////////////
         Options options = new Options();
 
-        // GT image
-        Option igt = new Option("igt", "imageGroundTruth", true, "Ground Truth image at pixel-level");
-        igt.setRequired(true);
-        options.addOption(igt);
+        // GT image (or directory of GT images for batch evaluation)
+        options.addOption(new Option("igt", "imageGroundTruth", true, "Ground Truth image at pixel-level (or directory)"));
+
+        // GT XML (or directory of GT XMLs for batch evaluation)
+        options.addOption(new Option("xgt", "xmlGroundTruth", true, "Ground Truth XML (or directory)"));
+
+        // Prediction XML (or directory of prediction XMLs for batch evaluation)
+        options.addOption(new Option("xp", "xmlPrediction", true, "Prediction XML (or directory)"));
 
-        // GT XML
-        Option xgt = new Option("xgt", "xmlGroundTruth", true, "Ground Truth XML");
-        xgt.setRequired(true);
-        options.addOption(xgt);
+        // Manifest of the pages for batch evaluation (optional)
+        options.addOption(new Option("m", "manifest", true, "Manifest of the pages to evaluate, one 'imageGroundTruth,xmlGroundTruth,xmlPrediction[,original]' per line"));
 
-        // Prediction XML
-        Option xp = new Option("xp", "xmlPrediction", true, "Prediction XML");
-        xp.setRequired(true);
-        options.addOption(xp);
+        // Number of pages evaluated concurrently in batch evaluation (optional)
+        options.addOption(new Option("j", "threads", true, "Number of pages evaluated concurrently (batch evaluation)"));
 
         // Output path, relative to prediction input path (optional)
         options.addOption(new Option("out", "outputPath", true, "Output path, relative to prediction input path"));
@@ -68,7 +79,7 @@ public class LineSegmentationEvaluatorTool {
         options.addOption(new Option("overlap", true, "Overlap original image with the visualized results"));
 
         // Matching threshold (optional)
-        options.addOption(new Option("mt", "matchingThreshold", true, "Matching threshold for detected lines"));
+        options.addOption(new Option("mt", "matchingThreshold", true, "Matching threshold for detected lines, or a list (0.5,0.75) or range (0.5:0.95:0.05) of thresholds to sweep"));
 
         // Save CSV file (optional)
         options.addOption(new Option("csv", false, "(Flag) Save the CSV file"));
@@ -76,6 +87,55 @@ public class LineSegmentationEvaluatorTool {
         // Account for comments (optional)
         options.addOption(new Option("c", "comments", false, "(Flag) Take comments into account"));
 
+        // Matching engine (optional)
+        options.addOption(new Option("e", "engine", true, "Matching engine: pairwise (default), cooccurrence or spans"));
+
+        // Metrics only (optional)
+        options.addOption(new Option("nv", "noVisualization", false, "(Flag) Compute the measures only, without writing the visualization"));
+
+        // Cache of the decoded ground truth (optional)
+        options.addOption(new Option("cache", "cacheDirectory", true, "Directory caching the decoded ground truth across runs"));
+
+        // Partial results of the dataset, mergeable with other partial results (optional)
+        options.addOption(new Option("pr", "partialResults", true, "File where the mergeable partial results of the dataset are written (batch evaluation)"));
+
+        // Shard of the pages to evaluate (optional)
+        options.addOption(new Option("shard", "shard", true, "Evaluate only the shard i/N of the pages (batch evaluation)"));
+
+        // Partial results to merge (optional)
+        options.addOption(Option.builder("merge").longOpt("merge").hasArgs().valueSeparator(',')
+                .desc("Merge partial results files into the dataset results (written in the output path)").build());
+
+        // Instrumentation (optional)
+        options.addOption(new Option("st", "stats", true, "Record the wall time of the phases and the counters, written in <arg>.json and <arg>.prom"));
+
+        // Evaluation server (optional)
+        options.addOption(new Option("server", true, "Serve evaluation requests over HTTP on the port <arg>"));
+
+        // Address the server listens to (optional)
+        options.addOption(new Option("host", true, "Address the server listens to (default the loopback address, 0.0.0.0 for all interfaces)"));
+
+        // Directory of the files the server may read (optional)
+        options.addOption(new Option("root", true, "Directory the paths requested from the server are relative to, no file outside of it is read"));
+
+        // Number of pages whose decoded GT is kept in memory by the server (optional)
+        options.addOption(new Option("cs", "cacheSize", true, "Number of pages whose decoded ground truth is kept in memory (server)"));
+
+        // Number of threads used within each page (optional)
+        options.addOption(new Option("pt", "pageThreads", true, "Number of threads used to evaluate each page"));
+
+        // Height of the bands in which the GT images are read (optional)
+        options.addOption(new Option("band", "bandHeight", true, "Read the ground truth images in bands of <arg> rows, to evaluate very large scans in bounded memory"));
+
+        // Stages of the pipeline evaluating the pages (optional)
+        options.addOption(new Option("pipe", "pipeline", true, "Load, evaluate and write the pages in a pipeline of l,e,w[,q] threads (and queue capacity) per stage (batch evaluation)"));
+
+        // Settings of the PNG encoder (optional)
+        options.addOption(new Option("png", "pngFormat", true, "Deflate level (0-9), palette or rgb, and threads of the PNG encoder: level[,palette|rgb[,threads]] (default 4,palette,1)"));
+
+        // Memory budget of the pages evaluated concurrently (optional)
+        options.addOption(new Option("mb", "memoryBudget", true, "Memory in MB the pages evaluated concurrently may use, 0 for no limit (batch evaluation, default 3/4 of the heap)"));
+
         // Parse arguments
         CommandLine cmd;
 
@@ -88,6 +148,227 @@ public class LineSegmentationEvaluatorTool {
             return;
         }
 
+        // Either a manifest or the three inputs are compulsory (unless merging partial results or serving)
+        if (!cmd.hasOption("merge") && !cmd.hasOption("server") && !cmd.hasOption("manifest")
+                && !(cmd.hasOption("imageGroundTruth") && cmd.hasOption("xmlGroundTruth") && cmd.hasOption("xmlPrediction"))) {
+            System.out.println("Missing required options: igt, xgt, xp (or manifest)");
+            new HelpFormatter().printHelp("utility-name", options);
+            System.exit(1);
+            return;
+        }
+
+        double[] thresholds = {0.75};
+        if(cmd.hasOption("matchingThreshold")) {
+            try {
+                thresholds = parseThresholds(cmd.getOptionValue("matchingThreshold"));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid matching threshold: " + e.getMessage());
+                new HelpFormatter().printHelp("utility-name", options);
+                System.exit(1);
+                return;
+            }
+            if (thresholds.length == 1) {
+                logger.info("Matching threshold is: " + (100*thresholds[0]) + " %");
+            } else {
+                logger.info("Matching thresholds are: " + Arrays.toString(thresholds));
+            }
+        }
+
+        boolean comments = false;
+        if(cmd.hasOption("comments")) {
+            comments = true;
+            logger.info("Taking comments into account: true");
+        }
+
+        LineSegmentationEvaluator.Engine engine = LineSegmentationEvaluator.Engine.PAIRWISE;
+        if (cmd.hasOption("engine")) {
+            try {
+                engine = LineSegmentationEvaluator.Engine.valueOf(cmd.getOptionValue("engine").toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.out.println("Unknown matching engine: " + cmd.getOptionValue("engine"));
+                new HelpFormatter().printHelp("utility-name", options);
+                System.exit(1);
+                return;
+            }
+            logger.info("Matching engine is: " + engine);
+        }
+
+        Shard shard = null;
+        if (cmd.hasOption("shard")) {
+            try {
+                shard = Shard.parse(cmd.getOptionValue("shard"));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid shard: " + e.getMessage());
+                new HelpFormatter().printHelp("utility-name", options);
+                System.exit(1);
+                return;
+            }
+            logger.info("Shard is: " + shard);
+        }
+
+        Pipeline pipeline = null;
+        if (cmd.hasOption("pipeline")) {
+            try {
+                pipeline = Pipeline.parse(cmd.getOptionValue("pipeline"));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid pipeline: " + e.getMessage());
+                new HelpFormatter().printHelp("utility-name", options);
+                System.exit(1);
+                return;
+            }
+            logger.info("Pipeline is: " + pipeline);
+        }
+
+        PngFormat png = PngFormat.DEFAULT;
+        if (cmd.hasOption("pngFormat")) {
+            try {
+                png = PngFormat.parse(cmd.getOptionValue("pngFormat"));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid PNG format: " + e.getMessage());
+                new HelpFormatter().printHelp("utility-name", options);
+                System.exit(1);
+                return;
+            }
+            logger.info("PNG format is: " + png);
+        }
+
+        // Merge partial results of previous runs
+        if (cmd.hasOption("merge")) {
+            System.exit(merge(cmd) ? 0 : 1);
+            return;
+        }
+
+        int pageThreads = 1;
+        if (cmd.hasOption("pageThreads")) {
+            try {
+                pageThreads = parseInt(cmd.getOptionValue("pageThreads"), 1);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid number of threads per page: " + e.getMessage());
+                new HelpFormatter().printHelp("utility-name", options);
+                System.exit(1);
+                return;
+            }
+            logger.info("Threads per page: " + pageThreads);
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (cmd.hasOption("threads")) {
+            try {
+                threads = parseInt(cmd.getOptionValue("threads"), 1);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid number of threads: " + e.getMessage());
+                new HelpFormatter().printHelp("utility-name", options);
+                System.exit(1);
+                return;
+            }
+        }
+
+        int bandHeight = 0;
+        if (cmd.hasOption("bandHeight")) {
+            try {
+                bandHeight = parseInt(cmd.getOptionValue("bandHeight"), 1);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid height of the bands: " + e.getMessage());
+                new HelpFormatter().printHelp("utility-name", options);
+                System.exit(1);
+                return;
+            }
+            logger.info("Ground truth images read in bands of " + bandHeight + " rows");
+            if (cmd.hasOption("cacheDirectory")) {
+                logger.warn("the ground truth cache is not used when reading the images in bands");
+            }
+        }
+
+        GroundTruthCache cache = null;
+        if (cmd.hasOption("cacheDirectory")) {
+            try {
+                cache = new GroundTruthCache(cmd.getOptionValue("cacheDirectory"));
+                logger.info("Ground truth cache is: " + cmd.getOptionValue("cacheDirectory"));
+            } catch (IOException e) {
+                logger.error("cannot create cache directory: " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+        }
+
+        // The evaluator is closed when done, the server closes it when stopped
+        LineSegmentationEvaluator evaluator = new LineSegmentationEvaluator(engine, pageThreads);
+
+        // Settings of the evaluation of the pages, one by one or in batch
+        BatchEvaluator.Builder settings = BatchEvaluator.builder(evaluator)
+                .thresholds(thresholds)
+                .threads(threads)
+                .visualize(!cmd.hasOption("noVisualization"))
+                .cache(cache)
+                .instrumented(cmd.hasOption("stats"))
+                .bandHeight(bandHeight)
+                .pipeline(pipeline)
+                .png(png);
+
+        // Serve evaluation requests until the process is stopped
+        if (cmd.hasOption("server")) {
+            int port;
+            try {
+                port = parseInt(cmd.getOptionValue("server"), 0);
+                if (port > 65535) {
+                    throw new IllegalArgumentException(port + " is greater than 65535");
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid port: " + e.getMessage());
+                new HelpFormatter().printHelp("utility-name", options);
+                System.exit(1);
+                return;
+            }
+            int cacheSize;
+            try {
+                cacheSize = parseInt(cmd.getOptionValue("cacheSize", "64"), 1);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid cache size: " + e.getMessage());
+                new HelpFormatter().printHelp("utility-name", options);
+                System.exit(1);
+                return;
+            }
+            if (!serve(cmd, evaluator, thresholds, cache, port, cacheSize, threads)) {
+                evaluator.close();
+                System.exit(1);
+            }
+            return;
+        }
+
+        // Evaluate a whole dataset if a manifest or directories are given
+        if (cmd.hasOption("manifest") || new File(cmd.getOptionValue("xmlPrediction")).isDirectory()) {
+            Stats stats = cmd.hasOption("stats") ? new Stats() : null;
+            Map<String, Stats> pageStats = new LinkedHashMap<>();
+            // Admit the pages within the memory budget
+            MemoryBudget budget = null;
+            long budgetMB = (Runtime.getRuntime().maxMemory() >> 20) * 3 / 4;
+            if (cmd.hasOption("memoryBudget")) {
+                try {
+                    budgetMB = parseLong(cmd.getOptionValue("memoryBudget"), 0);
+                    if (budgetMB > Long.MAX_VALUE >> 20) {
+                        throw new IllegalArgumentException("too large: " + budgetMB);
+                    }
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Invalid memory budget: " + e.getMessage());
+                    new HelpFormatter().printHelp("utility-name", options);
+                    System.exit(1);
+                    return;
+                }
+            }
+            if (budgetMB > 0) {
+                budget = new MemoryBudget(budgetMB << 20);
+                logger.info("Memory budget is: " + budgetMB + " MB");
+            }
+
+            boolean success = evaluateBatch(cmd, settings, thresholds, shard, budget, stats, pageStats);
+            evaluator.close();
+            if (stats != null) {
+                writeStats(cmd.getOptionValue("stats"), pageStats, stats);
+            }
+            System.exit(success ? 0 : 1);
+            return;
+        }
+
         // Assign compulsory parameter values
         String imageGtPath = cmd.getOptionValue("imageGroundTruth").replace("/", File.separator);
         String xmlGtPath = cmd.getOptionValue("xmlGroundTruth").replace("/", File.separator);
@@ -114,73 +395,409 @@ public class LineSegmentationEvaluatorTool {
         // Add the prediction file name without extension
         outputPath += xmlPredictionPath.substring(xmlPredictionPath.lastIndexOf(File.separator) + 1, xmlPredictionPath.lastIndexOf('.'));
 
-        double threshold = 0.75;
-        if(cmd.hasOption("matchingThreshold")) {
-            threshold = Double.parseDouble(cmd.getOptionValue("matchingThreshold"));
-            logger.info("Matching threshold is: " + (100*threshold) + " %");
+        ///////////////////////////////////////////////////////////////////////////////////////////////
+        // Parse inputs and evaluate
+        ///////////////////////////////////////////////////////////////////////////////////////////////
+
+        Page page = new Page(imageGtPath, xmlGtPath, xmlPredictionPath, cmd.getOptionValue("overlap"));
+        BatchEvaluator pageEvaluator = settings.build();
+        List<Results> sweep;
+        try {
+            sweep = pageEvaluator.evaluateSweep(page);
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+            System.exit(1);
+            return;
         }
+        Results results = sweep.get(0);
 
-        boolean comments = false;
-        if(cmd.hasOption("comments")) {
-            comments = true;
-            logger.info("Taking comments into account: true");
+        Stats stats = results.getStats();
+
+        // Write the results in a CSV file, if outPath is provided
+        if (cmd.hasOption("csv")) {
+            logger.info("Writing results in " + outputPath);
+            if (sweep.size() == 1) {
+                String fName = outputPath + "-results.csv";
+                writeCSV(fName, () -> results.writeToCSV(fName), stats);
+            } else {
+                String fName = outputPath + "-sweep-results.csv";
+                writeCSV(fName, () -> Results.writeSweepToCSV(fName, sweep), stats);
+            }
         }
 
-        ///////////////////////////////////////////////////////////////////////////////////////////////
-        // Parse input XMLs
-        ///////////////////////////////////////////////////////////////////////////////////////////////
+        // Write evaluation image, and the overlap with the original image if desired
+        if (!cmd.hasOption("noVisualization")) {
+            pageEvaluator.writeImages(results, page, outputPath);
+        }
+
+        // The visualization is painted when written, the evaluator is not needed past this point
+        evaluator.close();
+
+        if (stats != null) {
+            writeStats(cmd.getOptionValue("stats"), Collections.singletonMap(page.getName(), stats), stats);
+        }
+    }
+
+    /**
+     * Evaluate all the pages of a manifest, or of matching directories, on a pool of threads.
+     * All the outputs are written in the output path (relative to the current directory), the
+     * per-page results in results.csv and the dataset measures in aggregate-results.csv: their average
+     * (macro) and the measures of their summed counts (micro). When sweeping several thresholds, they
+     * are written in sweep-results.csv and sweep-aggregate-results.csv, with lines for every threshold.
+     * When evaluating a shard i/N, the names of the files end with -i-of-N and the partial results are
+     * written in partial-results-i-of-N.txt (unless another file is given), to be merged with the others.
+     *
+     * @param cmd        the parsed command line
+     * @param settings   the settings of the evaluation of the pages, completed with the memory budget
+     * @param thresholds the IU thresholds for line matching
+     * @param shard      the shard of the pages to evaluate, null for all the pages
+     * @param budget     the memory budget of the pages evaluated concurrently, null for none
+     * @param stats      the stats of the run, in which the stats of every page are summed (null if not instrumented)
+     * @param pageStats  the map where the stats of every page are put (if instrumented)
+     * @return true if all the pages have been evaluated
+     */
+    private static boolean evaluateBatch(CommandLine cmd, BatchEvaluator.Builder settings, double[] thresholds, Shard shard,
+                                         MemoryBudget budget, Stats stats, Map<String, Stats> pageStats) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
 
-        // Loading the image GT
-        BufferedImage image = null;
-        logger.info("Loading image ground truth from " + imageGtPath);
+        List<Page> pages;
         try {
-            image = ImageIO.read(new File(imageGtPath));
+            if (cmd.hasOption("manifest")) {
+                pages = Page.readManifest(cmd.getOptionValue("manifest"));
+            } else {
+                pages = Page.matchDirectories(
+                        cmd.getOptionValue("imageGroundTruth"),
+                        cmd.getOptionValue("xmlGroundTruth"),
+                        cmd.getOptionValue("xmlPrediction"),
+                        cmd.getOptionValue("overlap"));
+            }
         } catch (IOException e) {
             logger.error(e.getMessage());
+            return false;
         }
 
-        // Loading GT XML
-        logger.info("Loading page ground truth from " + xmlGtPath);
-        // truth = ImageLinePageDataset.readDataFromFile(xmlGtPath, comments);
-        List<Polygon> truth = ImageLinePageDataset.readDataFromFile(xmlGtPath);
+        String suffix = "";
+        if (shard != null) {
+            try {
+                pages = shard.select(pages);
+            } catch (IOException e) {
+                // Another machine reading the file would compute another assignment
+                logger.error("cannot assign the pages to the shards: " + e.getMessage());
+                return false;
+            }
+            suffix = "-" + shard.getIndex() + "-of-" + shard.getCount();
+        }
 
-        // Loading prediction XML
-        logger.info("Loading method output from " + xmlPredictionPath);
-        //output = ImageLinePageDataset.readDataFromFile(xmlPredictionPath, comments);
-        List<Polygon> output = ImageLinePageDataset.readDataFromFile(xmlPredictionPath);
+        String outputDir = cmd.getOptionValue("outputPath", ".").replace("/", File.separator);
 
-        // Evaluating the prediction provided
-        logger.info("Evaluating...");
-        LineSegmentationEvaluator evaluator = new LineSegmentationEvaluator();
-        Results results = evaluator.evaluate(image, truth, output, threshold);
+        // Aggregate the pages for every threshold as they are evaluated
+        List<Aggregator> aggregators = new ArrayList<>(thresholds.length);
+        for (double threshold : thresholds) {
+            aggregators.add(new Aggregator(threshold));
+        }
+        List<List<Results>> sweeps = settings.budget(budget).build().evaluateSweep(pages, outputDir, aggregators);
+        int nbFailed = Collections.frequency(sweeps, null);
+        logger.info("Evaluated " + (sweeps.size() - nbFailed) + " pages, " + nbFailed + " failed");
+        if (budget != null) {
+            logger.info("Peak estimated memory of the pages: " + (budget.getPeak() >> 20) + " MB");
+        }
 
-        // / Add the prediction filename to the results
-        results.put(Results.FILENAME,xmlPredictionPath.substring(xmlPredictionPath.lastIndexOf(File.separator) + 1, xmlPredictionPath.lastIndexOf('.')));
+        // Sum up the stats of the pages
+        if (stats != null) {
+            for (List<Results> sweep : sweeps) {
+                if (sweep != null) {
+                    pageStats.put(sweep.get(0).get(Results.FILENAME), sweep.get(0).getStats());
+                    stats.merge(sweep.get(0).getStats());
+                }
+            }
+        }
 
-        // Write the results in a CSV file, if outPath is provided
+        // Write the partial results, to be merged with the ones of other runs
+        String partialResults = cmd.getOptionValue("partialResults");
+        if (partialResults == null && shard != null) {
+            partialResults = outputDir + File.separator + "partial-results" + suffix + ".txt";
+        }
+        if (partialResults != null) {
+            try {
+                Aggregator.write(partialResults, aggregators);
+                logger.info("Writing partial results in " + partialResults);
+            } catch (IOException e) {
+                logger.error("cannot write partial results: " + e.getMessage());
+                return false;
+            }
+        }
+
+        // Write the results of every page (in the order of the list)
         if (cmd.hasOption("csv")) {
-            logger.info("Writing results in " + outputPath);
-            results.writeToCSV(outputPath +  "-results.csv");
+            logger.info("Writing results in " + outputDir);
+            List<Results> rows = new ArrayList<>();
+            for (List<Results> sweep : sweeps) {
+                if (sweep != null) {
+                    rows.addAll(sweep);
+                }
+            }
+            if (thresholds.length == 1) {
+                String fName = outputDir + File.separator + "results" + suffix + ".csv";
+                writeCSV(fName, () -> Results.writeToCSV(fName, rows), stats);
+            } else {
+                String fName = outputDir + File.separator + "sweep-results" + suffix + ".csv";
+                writeCSV(fName, () -> Results.writeSweepToCSV(fName, rows), stats);
+            }
+        }
+
+        // Log and write the dataset measures
+        reportAggregates(aggregators, cmd.hasOption("csv") ? outputDir : null, suffix, stats);
+        return nbFailed == 0;
+    }
+
+    /**
+     * Start the evaluation server, which keeps running (and the JVM alive) until the process is stopped
+     *
+     * @param cmd        the command line
+     * @param evaluator  the evaluator
+     * @param thresholds the default IU thresholds for line matching
+     * @param cache      the on-disk cache of the decoded ground truth, null if none
+     * @param port       the port to listen to
+     * @param cacheSize  the number of pages whose decoded ground truth is kept in memory
+     * @param threads    the number of requests handled concurrently
+     * @return true if the server has been started
+     */
+    private static boolean serve(CommandLine cmd, LineSegmentationEvaluator evaluator, double[] thresholds, GroundTruthCache cache,
+                                 int port, int cacheSize, int threads) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        InetAddress host = InetAddress.getLoopbackAddress();
+        if (cmd.hasOption("host")) {
+            try {
+                host = InetAddress.getByName(cmd.getOptionValue("host"));
+            } catch (UnknownHostException e) {
+                logger.error("unknown host: " + cmd.getOptionValue("host"));
+                return false;
+            }
+        }
+        if (!host.isLoopbackAddress()) {
+            logger.warn("the server has no authentication: any client reaching " + host.getHostAddress() + " can use it"
+                    + (cmd.hasOption("root") ? "" : " and read any file (see -root)"));
         }
 
-        // Write evaluation image
-        BufferedImage visualization = evaluator.getEvalImage();
+        EvaluationServer server;
         try {
-            ImageIO.write(visualization, "png", new File(outputPath+"-visualization.png"));
-            logger.info("Writing visualization image in " + outputPath);
+            server = new EvaluationServer(host, port, evaluator, thresholds, new GroundTruthLruCache(cacheSize, cache), threads,
+                    cmd.hasOption("root") ? Paths.get(cmd.getOptionValue("root")) : null);
         } catch (IOException e) {
-            logger.error(e);
+            logger.error("cannot start the server: " + e.getMessage());
+            return false;
+        }
+        logger.info("Ground truth of " + cacheSize + " pages kept in memory, " + threads + " requests handled concurrently");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+        server.start();
+        return true;
+    }
+
+    /**
+     * Merge the partial results files of several runs (e.g. the shards of a dataset) and write the
+     * dataset measures in aggregate-results.csv (or sweep-aggregate-results.csv) in the output path,
+     * and the merged partial results in the partial results file, if given.
+     *
+     * @param cmd the parsed command line
+     * @return true if the partial results have been merged
+     */
+    private static boolean merge(CommandLine cmd) {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        List<Aggregator> aggregators = null;
+        try {
+            for (String fName : cmd.getOptionValues("merge")) {
+                List<Aggregator> partial = Aggregator.read(fName.trim());
+                if (aggregators == null) {
+                    aggregators = partial;
+                    continue;
+                }
+                if (partial.size() != aggregators.size()) {
+                    logger.error(fName + ": expected " + aggregators.size() + " thresholds, found " + partial.size());
+                    return false;
+                }
+                for (int t = 0; t < partial.size(); t++) {
+                    aggregators.get(t).merge(partial.get(t));
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("cannot merge partial results: " + e.getMessage());
+            return false;
         }
+        logger.info("Merged " + cmd.getOptionValues("merge").length + " partial results: "
+                + aggregators.get(0).getNbPages() + " pages, " + aggregators.get(0).getNbFailed() + " failed");
 
-        // If desired, overlap the original image with the visualized result
-        if(cmd.hasOption("overlap")){
+        String outputDir = cmd.getOptionValue("outputPath", ".").replace("/", File.separator);
+        if (!new File(outputDir).isDirectory() && !new File(outputDir).mkdirs()) {
+            logger.error("cannot create output directory " + outputDir);
+            return false;
+        }
+
+        if (cmd.hasOption("partialResults")) {
             try {
-                ImageIO.write(evaluator.overlapEvaluation(visualization, ImageIO.read(new File(cmd.getOptionValue("overlap")))), "png", new File(outputPath+"-overlap.png"));
-                logger.info("Writing overlap image in " + outputPath);
+                Aggregator.write(cmd.getOptionValue("partialResults"), aggregators);
+                logger.info("Writing partial results in " + cmd.getOptionValue("partialResults"));
             } catch (IOException e) {
-                logger.error(e);
+                logger.error("cannot write partial results: " + e.getMessage());
+                return false;
+            }
+        }
+
+        reportAggregates(aggregators, outputDir, "", null);
+        return aggregators.get(0).getNbFailed() == 0;
+    }
+
+    /**
+     * Log the macro (average of the pages) and micro (on the summed counts) measures of every
+     * threshold, and write them in aggregate-results.csv (sweep-aggregate-results.csv when sweeping
+     * several thresholds)
+     *
+     * @param aggregators the aggregators, one per threshold
+     * @param outputDir   the output directory, null to log the measures only
+     * @param suffix      the suffix of the name of the CSV file
+     * @param stats       the stats of the run, null if not instrumented
+     */
+    private static void reportAggregates(List<Aggregator> aggregators, String outputDir, String suffix, Stats stats) {
+        List<Results> averages = new ArrayList<>(2 * aggregators.size());
+        for (Aggregator aggregator : aggregators) {
+            Results macro = aggregator.getMacroResults();
+            Results micro = aggregator.getMicroResults();
+            averages.add(macro);
+            averages.add(micro);
+
+            String prefix = (aggregators.size() == 1) ? "" : "threshold " + aggregator.getThreshold() + ": ";
+            for (String measure : Results.MEASURES) {
+                logger.info(prefix + "average " + measure.split("\\.")[1] + " = " + macro.get(measure));
+            }
+            for (String measure : Results.MEASURES) {
+                logger.info(prefix + "micro-average " + measure.split("\\.")[1] + " = " + micro.get(measure));
             }
         }
+
+        if (outputDir != null) {
+            if (aggregators.size() == 1) {
+                String fName = outputDir + File.separator + "aggregate-results" + suffix + ".csv";
+                writeCSV(fName, () -> Results.writeToCSV(fName, averages), stats);
+            } else {
+                String fName = outputDir + File.separator + "sweep-aggregate-results" + suffix + ".csv";
+                writeCSV(fName, () -> Results.writeSweepToCSV(fName, averages), stats);
+            }
+        }
+    }
+
+    /**
+     * Write a CSV file, recording the wall time and the number of bytes written
+     *
+     * @param fName the CSV file
+     * @param write the writing of the file
+     * @param stats the stats, null if not instrumented
+     */
+    private static void writeCSV(String fName, Runnable write, Stats stats) {
+        if (stats == null) {
+            write.run();
+            return;
+        }
+        long length = new File(fName).length();
+        long start = Stats.start(stats);
+        write.run();
+        Stats.stop(stats, Stats.Phase.CSV_WRITE, start);
+        Stats.add(stats, Stats.Counter.BYTES_WRITTEN, new File(fName).length() - length);
+    }
+
+    /**
+     * Write the stats of the pages and their total in prefix.json and prefix.prom (Prometheus text format)
+     *
+     * @param prefix    the prefix of the files
+     * @param pageStats the stats of every page, by name
+     * @param stats     the total stats
+     */
+    private static void writeStats(String prefix, Map<String, Stats> pageStats, Stats stats) {
+        try {
+            Files.write(Paths.get(prefix + ".json"), Stats.toJson(pageStats, stats).getBytes(StandardCharsets.UTF_8));
+            Files.write(Paths.get(prefix + ".prom"), Stats.toPrometheus(pageStats, stats).getBytes(StandardCharsets.UTF_8));
+            logger.info("Writing stats in " + prefix + ".json and " + prefix + ".prom");
+        } catch (IOException e) {
+            logger.error("cannot write stats: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parse the matching thresholds: a single value, a comma separated list of values, or a range
+     * start:end:step (end included)
+     *
+     * @param value the value of the option
+     * @return the thresholds
+     * @throws IllegalArgumentException if the value cannot be parsed, or the range has more than MAX_THRESHOLDS values
+     */
+    static double[] parseThresholds(String value) {
+        if (value.contains(":")) {
+            String[] range = value.split(":");
+            if (range.length != 3) {
+                throw new IllegalArgumentException("expected start:end:step, got " + value);
+            }
+            double start = Double.parseDouble(range[0]);
+            double end = Double.parseDouble(range[1]);
+            double step = Double.parseDouble(range[2]);
+            if (!(step > 0) || !(end >= start) || Double.isInfinite(end - start)) {
+                throw new IllegalArgumentException("empty range " + value);
+            }
+            // Tolerate the rounding errors of the step, such that 0.5:0.95:0.05 includes 0.95
+            double steps = Math.floor((end - start) / step + 1e-9);
+            if (steps >= MAX_THRESHOLDS) {
+                throw new IllegalArgumentException("more than " + MAX_THRESHOLDS + " thresholds in the range " + value);
+            }
+            int n = (int) steps + 1;
+            double[] thresholds = new double[n];
+            for (int i = 0; i < n; i++) {
+                thresholds[i] = Math.round((start + i * step) * 1e9) / 1e9;
+            }
+            return thresholds;
+        }
+
+        String[] list = value.split(",");
+        double[] thresholds = new double[list.length];
+        for (int i = 0; i < list.length; i++) {
+            thresholds[i] = Double.parseDouble(list[i].trim());
+        }
+        return thresholds;
+    }
+
+    /**
+     * Parse the integer value of an option
+     *
+     * @param value the value of the option
+     * @param min   the minimal value
+     * @return the value
+     * @throws IllegalArgumentException if the value is not an integer, or is less than min
+     */
+    static int parseInt(String value, int min) {
+        long parsed = parseLong(value, min);
+        if (parsed > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too large: " + value);
+        }
+        return (int) parsed;
+    }
+
+    /**
+     * Parse the long integer value of an option
+     *
+     * @param value the value of the option
+     * @param min   the minimal value
+     * @return the value
+     * @throws IllegalArgumentException if the value is not an integer, or is less than min
+     */
+    static long parseLong(String value, long min) {
+        long parsed;
+        try {
+            parsed = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not an integer: " + value);
+        }
+        if (parsed < min) {
+            throw new IllegalArgumentException(parsed + " is less than " + min);
+        }
+        return parsed;
     }
 
     /**
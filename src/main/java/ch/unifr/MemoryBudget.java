@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MemoryBudget class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Admission control of the pages evaluated concurrently, by their estimated memory footprint
+ * A page is admitted once its estimated footprint fits in what remains of the budget, and gives it back once
+ * done. Pages are admitted in the order they ask for it (a large page is not overtaken forever by smaller ones),
+ * and a page larger than the whole budget is admitted alone. The budget is counted in KB.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class MemoryBudget {
+
+    /**
+     * Log4j logger
+     */
+    private static final Logger logger = Logger.getLogger(MemoryBudget.class);
+    /**
+     * Size of the budget, in KB
+     */
+    private final int capacity;
+    /**
+     * The KB not reserved by the admitted pages (fair, i.e. FIFO)
+     */
+    private final Semaphore available;
+    /**
+     * Bytes reserved by the admitted pages, and the maximum reached
+     */
+    private final AtomicLong used = new AtomicLong();
+    private final AtomicLong peak = new AtomicLong();
+
+    /**
+     * Build a budget
+     *
+     * @param bytes the size of the budget, in bytes
+     */
+    public MemoryBudget(long bytes) {
+        if (bytes < 1024) {
+            throw new IllegalArgumentException("the budget must be at least 1 KB, got " + bytes + " bytes");
+        }
+        this.capacity = (int) Math.min(bytes >> 10, Integer.MAX_VALUE);
+        this.available = new Semaphore(capacity, true);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Wait until a page fits in the budget and reserve its footprint
+     *
+     * @param name  the name of the page, for logging
+     * @param bytes the estimated footprint of the page, in bytes
+     * @return the reservation, to be given to release()
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int acquire(String name, long bytes) throws InterruptedException {
+        int kb = (int) Math.min((bytes + 1023) >> 10, capacity);
+        if (kb == capacity) {
+            logger.warn("page " + name + " needs an estimated " + (bytes >> 20) + " MB, not less than the budget of "
+                    + (capacity >> 10) + " MB: it is evaluated alone");
+        }
+        // tryAcquire() would overtake the waiting pages, even on a fair semaphore
+        if (available.hasQueuedThreads() || available.availablePermits() < kb) {
+            logger.debug("page " + name + " waits for " + kb + " KB of memory");
+        }
+        available.acquire(kb);
+        long total = used.addAndGet((long) kb << 10);
+        peak.accumulateAndGet(total, Math::max);
+        return kb;
+    }
+
+    /**
+     * Give back the reservation of a page
+     *
+     * @param reservation the value returned by acquire()
+     */
+    public void release(int reservation) {
+        used.addAndGet(-((long) reservation << 10));
+        available.release(reservation);
+    }
+
+    /**
+     * @return the size of the budget, in bytes
+     */
+    public long getCapacity() {
+        return (long) capacity << 10;
+    }
+
+    /**
+     * @return the bytes reserved by the pages currently admitted
+     */
+    public long getUsed() {
+        return used.get();
+    }
+
+    /**
+     * @return the maximum of the bytes reserved at once
+     */
+    public long getPeak() {
+        return peak.get();
+    }
+}
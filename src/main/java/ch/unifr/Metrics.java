@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Metrics class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Typed record of the outcome of the evaluation of a page (or of a whole dataset)
+ * Holds the raw line and pixel counts in primitive fields and derives the scores from them on
+ * demand, without going through strings. It also formats the measures for the CSV files without
+ * String.format(), independently of the default locale.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public final class Metrics {
+
+    /**
+     * The IU threshold for line matching
+     */
+    public final double threshold;
+    /**
+     * Lines counts
+     */
+    public final long nbLinesTruth;
+    public final long nbLinesProposed;
+    public final long nbLinesCorrect;
+    public final long nbLinesMissed;
+    public final long nbLinesExtra;
+    /**
+     * Pixels counts for the matched lines
+     */
+    public final long matchedTP;
+    public final long matchedFP;
+    public final long matchedFN;
+    /**
+     * Pixels counts for the whole image
+     */
+    public final long TP;
+    public final long FP;
+    public final long FN;
+    public final long nbPixelsPrediction;
+    public final long nbPixelsGt;
+
+    /**
+     * Build the metrics of a page (or the micro metrics of a dataset, from the sums of its counts)
+     *
+     * @param threshold          the IU threshold for line matching
+     * @param nbLinesTruth       number of GT lines
+     * @param nbLinesProposed    number of predicted lines
+     * @param nbLinesCorrect     number of correctly detected lines
+     * @param nbLinesMissed      number of missed lines
+     * @param nbLinesExtra       number of extra lines
+     * @param matchedTP          true positive pixels of the correctly detected lines
+     * @param matchedFP          false positive pixels of the correctly detected lines
+     * @param matchedFN          false negative pixels of the correctly detected lines
+     * @param TP                 true positive pixels
+     * @param FP                 false positive pixels
+     * @param FN                 false negative pixels
+     * @param nbPixelsPrediction foreground pixels of the predicted lines
+     * @param nbPixelsGt         foreground pixels of the GT lines
+     */
+    public Metrics(double threshold, long nbLinesTruth, long nbLinesProposed,
+                   long nbLinesCorrect, long nbLinesMissed, long nbLinesExtra,
+                   long matchedTP, long matchedFP, long matchedFN,
+                   long TP, long FP, long FN, long nbPixelsPrediction, long nbPixelsGt) {
+        this.threshold = threshold;
+        this.nbLinesTruth = nbLinesTruth;
+        this.nbLinesProposed = nbLinesProposed;
+        this.nbLinesCorrect = nbLinesCorrect;
+        this.nbLinesMissed = nbLinesMissed;
+        this.nbLinesExtra = nbLinesExtra;
+        this.matchedTP = matchedTP;
+        this.matchedFP = matchedFP;
+        this.matchedFN = matchedFN;
+        this.TP = TP;
+        this.FP = FP;
+        this.FN = FN;
+        this.nbPixelsPrediction = nbPixelsPrediction;
+        this.nbPixelsGt = nbPixelsGt;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Append a number with 4 decimals, exactly as String.format(Locale.ROOT, "%2.4f", value) does: the
+     * separator is always a point, whatever the default locale (String.format() would write 5,0000 in German)
+     *
+     * @param s     the builder
+     * @param value the number
+     * @return the builder
+     */
+    public static StringBuilder appendDecimal(StringBuilder s, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return s.append(value);
+        }
+        double abs = Math.abs(value);
+        double scaled = abs * 10000;
+        double fraction = scaled - Math.floor(scaled);
+        // Formatter rounds half-up the shortest decimal representation of the value, which may
+        // differ from rounding the binary value when it is (almost) halfway: let BigDecimal decide.
+        // Almost is a few ulps of the scaled value, which are more than 1e-6 from about 1e10 on
+        if (scaled >= 1e15 || Math.abs(fraction - 0.5) < Math.max(1e-6, 4 * Math.ulp(scaled))) {
+            return s.append(BigDecimal.valueOf(value).setScale(4, RoundingMode.HALF_UP).toPlainString());
+        }
+        long units = (long) Math.floor(scaled + 0.5);
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            // Negative values rounded to zero keep their sign, as with Formatter
+            s.append('-');
+        }
+        s.append(units / 10000).append('.');
+        long decimals = units % 10000;
+        for (long d = 1000; d > decimals && d > 1; d /= 10) {
+            s.append('0');
+        }
+        return s.append(decimals);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Get a measure by its key
+     *
+     * @param key one of Results.MATCHING_THRESHOLD or Results.MEASURES
+     * @return the value of the measure
+     * @throws IllegalArgumentException if the key is not a measure
+     */
+    public double get(String key) {
+        switch (key) {
+            case Results.MATCHING_THRESHOLD:
+                return threshold;
+            case Results.LINES_NB_TRUTH:
+                return nbLinesTruth;
+            case Results.LINES_NB_PROPOSED:
+                return nbLinesProposed;
+            case Results.LINES_NB_CORRECT:
+                return nbLinesCorrect;
+            case Results.LINES_IU:
+                return getLinesIU();
+            case Results.LINES_FMEASURE:
+                return getLinesFMeasure();
+            case Results.LINES_RECALL:
+                return getLinesRecall();
+            case Results.LINES_PRECISION:
+                return getLinesPrecision();
+            case Results.MATCHED_PIXEL_IU:
+                return getMatchedPixelIU();
+            case Results.MATCHED_PIXEL_FMEASURE:
+                return getMatchedPixelFMeasure();
+            case Results.MATCHED_PIXEL_PRECISION:
+                return getMatchedPixelPrecision();
+            case Results.MATCHED_PIXEL_RECALL:
+                return getMatchedPixelRecall();
+            case Results.PIXEL_IU:
+                return getPixelIU();
+            case Results.PIXEL_FMEASURE:
+                return getPixelFMeasure();
+            case Results.PIXEL_PRECISION:
+                return getPixelPrecision();
+            case Results.PIXEL_RECALL:
+                return getPixelRecall();
+            default:
+                throw new IllegalArgumentException("not a measure: " + key);
+        }
+    }
+
+    // Line scores
+
+    public double getLinesPrecision() {
+        return nbLinesCorrect / (double) (nbLinesCorrect + nbLinesExtra);
+    }
+
+    public double getLinesRecall() {
+        return nbLinesCorrect / (double) (nbLinesCorrect + nbLinesMissed);
+    }
+
+    public double getLinesFMeasure() {
+        return 2 * nbLinesCorrect / (double) (2 * nbLinesCorrect + nbLinesMissed + nbLinesExtra);
+    }
+
+    public double getLinesIU() {
+        return nbLinesCorrect / (double) (nbLinesCorrect + nbLinesMissed + nbLinesExtra);
+    }
+
+    // Matched pixel scores
+
+    public double getMatchedPixelPrecision() {
+        return matchedTP / (double) (matchedTP + matchedFP);
+    }
+
+    public double getMatchedPixelRecall() {
+        return matchedTP / (double) (matchedTP + matchedFN);
+    }
+
+    public double getMatchedPixelFMeasure() {
+        return 2 * matchedTP / (double) (2 * matchedTP + matchedFP + matchedFN);
+    }
+
+    public double getMatchedPixelIU() {
+        return matchedTP / (double) (matchedTP + matchedFP + matchedFN);
+    }
+
+    // Pixel scores
+
+    public double getPixelPrecision() {
+        return TP / (double) (TP + FP);
+    }
+
+    public double getPixelRecall() {
+        return TP / (double) (TP + FN);
+    }
+
+    public double getPixelFMeasure() {
+        return 2 * TP / (double) (2 * TP + FP + FN);
+    }
+
+    public double getPixelIU() {
+        return TP / (double) (TP + FP + FN);
+    }
+}
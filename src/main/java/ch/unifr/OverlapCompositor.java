@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.apache.log4j.Logger;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+
+/**
+ * OverlapCompositor class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Overlap of the visualization with the original image, streamed row by row into a PNG file
+ * The visualization is painted over the original image with an opacity of 0.57 (SRC_OVER), as Java2D does it,
+ * but with integer arithmetic on a few rows at a time: the overlap is never held in memory as a whole. Over an
+ * opaque original every channel is blended with the same 8-bit products as Java2D (see mul8()), such that the
+ * pixels are identical. An original which is not opaque (or not of the size of the visualization) is still
+ * blended by Java2D, strip by strip.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class OverlapCompositor {
+
+    /**
+     * Log4j logger
+     */
+    private static final Logger logger = Logger.getLogger(OverlapCompositor.class);
+    /**
+     * Opacity of the visualization over the original image
+     */
+    public static final float ALPHA = 0.57f;
+    /**
+     * The opacity as Java2D applies it, on 8 bits (145), and the weight of the original (110)
+     */
+    private static final int SOURCE_WEIGHT = (int) (ALPHA * 255 + 0.5f);
+    private static final int DESTINATION_WEIGHT = 0xFF - SOURCE_WEIGHT;
+    /**
+     * The weighted channels of the visualization and of the original, for every value of a channel
+     */
+    private static final int[] SOURCE = new int[256];
+    private static final int[] DESTINATION = new int[256];
+
+    static {
+        for (int c = 0; c < 256; c++) {
+            SOURCE[c] = mul8(SOURCE_WEIGHT, c);
+            DESTINATION[c] = mul8(DESTINATION_WEIGHT, c);
+        }
+    }
+
+    /**
+     * Utility class
+     */
+    private OverlapCompositor() {
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Overlap the visualization with the original image and write the rows of the overlap, a strip at a time
+     *
+     * @param visualization the visualization, or the rows of it matching the original
+     * @param original      the original image, or the same rows of it, drawn at the top left of the visualization
+     * @param writer        the writer of the overlap, whose next rows are these ones
+     * @param stats         the stats of the page (the blending is the overlap phase), null if disabled
+     * @throws IOException if the rows cannot be written
+     */
+    public static void write(BufferedImage visualization, BufferedImage original, PngWriter writer, Stats stats) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        int width = visualization.getWidth();
+        int height = visualization.getHeight();
+        int stripHeight = Math.max(1, Math.min(height, writer.getBandHeight()));
+        long overlapNanos = 0;
+        long encodeNanos = 0;
+
+        BufferedImage strip = new BufferedImage(width, stripHeight, BufferedImage.TYPE_INT_ARGB);
+        for (int fromY = 0; fromY < height; fromY += stripHeight) {
+            int rows = Math.min(stripHeight, height - fromY);
+            BufferedImage rowsStrip = (rows == stripHeight) ? strip : new BufferedImage(width, rows, BufferedImage.TYPE_INT_ARGB);
+
+            long start = System.nanoTime();
+            blend(visualization.getSubimage(0, fromY, width, rows), getRows(original, fromY, width, rows), rowsStrip);
+            long end = System.nanoTime();
+            writer.write(rowsStrip);
+            overlapNanos += end - start;
+            encodeNanos += System.nanoTime() - end;
+        }
+        if (stats != null) {
+            stats.record(Stats.Phase.OVERLAP, overlapNanos);
+            stats.record(Stats.Phase.PNG_ENCODE, encodeNanos);
+        }
+    }
+
+    /**
+     * Overlap the visualization with the original image, in memory
+     *
+     * @param visualization the visualization
+     * @param original      the original image, drawn at the top left of the visualization
+     * @return the overlap, TYPE_INT_ARGB, of the size of the visualization
+     */
+    public static BufferedImage overlap(BufferedImage visualization, BufferedImage original) {
+        BufferedImage overlap = new BufferedImage(visualization.getWidth(), visualization.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        blend(visualization, original, overlap);
+        return overlap;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The rows of the original image overlapped with a strip of the visualization
+     *
+     * @return the rows in the strip, cropped to the strip, null if none
+     */
+    private static BufferedImage getRows(BufferedImage original, int fromY, int width, int rows) {
+        int w = Math.min(width, original.getWidth());
+        int h = Math.min(rows, original.getHeight() - fromY);
+        return (h > 0) ? original.getSubimage(0, fromY, w, h) : null;
+    }
+
+    /**
+     * Blend the visualization over the original image, into a TYPE_INT_ARGB image of the same size (not a
+     * sub-image) whose pixels are all replaced. The original is converted by Java2D, as when it is drawn, then
+     * each row of the visualization is blended into it if both are opaque and the original covers the strip.
+     */
+    private static void blend(BufferedImage visualization, BufferedImage original, BufferedImage overlap) {
+        boolean opaque = original != null && original.getTransparency() == Transparency.OPAQUE
+                && visualization.getTransparency() == Transparency.OPAQUE
+                && original.getWidth() == overlap.getWidth() && original.getHeight() == overlap.getHeight();
+        Graphics2D g = overlap.createGraphics();
+        try {
+            if (opaque) {
+                g.setComposite(AlphaComposite.Src);
+                g.drawImage(original, 0, 0, null);
+            } else {
+                // Drawn over a transparent image, a translucent original is not copied exactly: do as Java2D
+                g.setComposite(AlphaComposite.Clear);
+                g.fillRect(0, 0, overlap.getWidth(), overlap.getHeight());
+                g.setComposite(AlphaComposite.SrcOver);
+                if (original != null) {
+                    g.drawImage(original, 0, 0, null);
+                }
+                g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, ALPHA));
+                g.drawImage(visualization, 0, 0, null);
+                return;
+            }
+        } finally {
+            g.dispose();
+        }
+
+        int width = overlap.getWidth();
+        int[] pixels = ((DataBufferInt) overlap.getRaster().getDataBuffer()).getData();
+        int[] row = new int[width];
+        for (int y = 0; y < overlap.getHeight(); y++) {
+            readRow(visualization, y, row);
+            blendRow(row, pixels, y * width, width);
+        }
+    }
+
+    /**
+     * Blend a row of the visualization over a row of an opaque original, in place
+     *
+     * @param visualization the RGB pixels of the row of the visualization
+     * @param pixels        the ARGB pixels of the original, replaced by the overlap
+     * @param offset        the index of the first pixel of the row in pixels
+     * @param width         the number of pixels of the row
+     */
+    private static void blendRow(int[] visualization, int[] pixels, int offset, int width) {
+        for (int x = 0; x < width; x++) {
+            int s = visualization[x];
+            int d = pixels[offset + x];
+            pixels[offset + x] = 0xFF000000
+                    | (SOURCE[(s >> 16) & 0xFF] + DESTINATION[(d >> 16) & 0xFF]) << 16
+                    | (SOURCE[(s >> 8) & 0xFF] + DESTINATION[(d >> 8) & 0xFF]) << 8
+                    | (SOURCE[s & 0xFF] + DESTINATION[d & 0xFF]);
+        }
+    }
+
+    /**
+     * Read the RGB pixels of a row of the visualization (the alpha byte is not defined)
+     */
+    private static void readRow(BufferedImage image, int y, int[] pixels) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            image.getRaster().getDataElements(0, y, pixels.length, 1, pixels);
+        } else {
+            image.getRGB(0, y, pixels.length, 1, pixels, 0, pixels.length);
+        }
+    }
+
+    /**
+     * Product of two 8-bit values, as the multiplication table of Java2D: round(a * b / 255)
+     */
+    private static int mul8(int a, int b) {
+        return ((a * 0x10101) * b + 0x800000) >>> 24;
+    }
+}
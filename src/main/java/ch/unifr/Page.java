@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.apache.log4j.Logger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Page class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief The input files of the evaluation of one page
+ * A page is made of the GT image, the GT XML, the prediction XML and optionally the original image
+ * (for the overlap). Lists of pages are read either from a manifest file or by matching the files
+ * of several directories by name.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class Page {
+
+    /**
+     * Log4j logger
+     */
+    private static final Logger logger = Logger.getLogger(Page.class);
+    /**
+     * Paths of the input files (original is null if not provided)
+     */
+    private final String imageGroundTruth;
+    private final String xmlGroundTruth;
+    private final String xmlPrediction;
+    private final String original;
+
+    /**
+     * Build a page
+     *
+     * @param imageGroundTruth path of the GT image
+     * @param xmlGroundTruth   path of the GT XML
+     * @param xmlPrediction    path of the prediction XML
+     * @param original         path of the original image, null if none
+     */
+    public Page(String imageGroundTruth, String xmlGroundTruth, String xmlPrediction, String original) {
+        this.imageGroundTruth = imageGroundTruth;
+        this.xmlGroundTruth = xmlGroundTruth;
+        this.xmlPrediction = xmlPrediction;
+        this.original = original;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Read a manifest file. Each line describes a page with comma separated paths:
+     * imageGroundTruth,xmlGroundTruth,xmlPrediction[,original]
+     * Empty lines and lines starting with '#' are ignored. Relative paths are relative to the manifest.
+     *
+     * @param path the path of the manifest
+     * @return the list of pages, in the order of the manifest
+     * @throws IOException if the manifest cannot be read or is malformed
+     */
+    public static List<Page> readManifest(String path) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        File base = new File(path).getAbsoluteFile().getParentFile();
+        List<Page> pages = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length < 3 || fields.length > 4) {
+                throw new IOException(path + ":" + lineNumber + ": expected 3 or 4 comma separated paths");
+            }
+            pages.add(new Page(
+                    resolve(base, fields[0]),
+                    resolve(base, fields[1]),
+                    resolve(base, fields[2]),
+                    (fields.length == 4) ? resolve(base, fields[3]) : null));
+        }
+
+        logger.debug("found " + pages.size() + " pages in manifest " + path);
+        return pages;
+    }
+
+    /**
+     * Match the files of the GT image, GT XML and prediction XML directories by name (without extension).
+     * Every prediction XML which has a GT image and a GT XML of the same name becomes a page.
+     *
+     * @param imageGroundTruthDir  directory of the GT images
+     * @param xmlGroundTruthDir    directory of the GT XMLs
+     * @param xmlPredictionDir     directory of the prediction XMLs
+     * @param originalDir          directory of the original images, null if none
+     * @return the list of pages, sorted by name
+     * @throws IOException if a directory cannot be listed
+     */
+    public static List<Page> matchDirectories(String imageGroundTruthDir, String xmlGroundTruthDir, String xmlPredictionDir, String originalDir) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        Map<String, String> images = listByName(imageGroundTruthDir);
+        Map<String, String> xmls = listByName(xmlGroundTruthDir);
+        Map<String, String> predictions = listByName(xmlPredictionDir);
+        Map<String, String> originals = (originalDir != null) ? listByName(originalDir) : new HashMap<>();
+
+        List<String> names = new ArrayList<>(predictions.keySet());
+        Collections.sort(names);
+
+        List<Page> pages = new ArrayList<>();
+        for (String name : names) {
+            if (!images.containsKey(name) || !xmls.containsKey(name)) {
+                logger.warn("no ground truth for prediction " + predictions.get(name) + ", skipped");
+                continue;
+            }
+            pages.add(new Page(images.get(name), xmls.get(name), predictions.get(name), originals.get(name)));
+        }
+
+        logger.debug("matched " + pages.size() + " pages");
+        return pages;
+    }
+
+    /**
+     * Read the size of an image from its header only, without decoding it
+     *
+     * @param path the path of the image
+     * @return the size of the image
+     * @throws IOException if the image cannot be read or its format is unknown
+     */
+    public static Dimension readImageSize(String path) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(path))) {
+            Iterator<ImageReader> readers = (input != null) ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("cannot read image: " + path);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return the name of the page, i.e. the name of the prediction XML without extension
+     */
+    public String getName() {
+        String name = new File(xmlPrediction).getName();
+        return (name.lastIndexOf('.') > 0) ? name.substring(0, name.lastIndexOf('.')) : name;
+    }
+
+    public String getImageGroundTruth() {
+        return imageGroundTruth;
+    }
+
+    public String getXmlGroundTruth() {
+        return xmlGroundTruth;
+    }
+
+    public String getXmlPrediction() {
+        return xmlPrediction;
+    }
+
+    public String getOriginal() {
+        return original;
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return the path, resolved against base if relative
+     */
+    private static String resolve(File base, String path) {
+        File file = new File(path.trim());
+        return file.isAbsolute() ? file.getPath() : new File(base, file.getPath()).getPath();
+    }
+
+    /**
+     * List the files of a directory by name without extension
+     *
+     * @param dir the directory
+     * @return a map name -> path
+     * @throws IOException if the directory cannot be listed
+     */
+    private static Map<String, String> listByName(String dir) throws IOException {
+        File[] files = new File(dir).listFiles(File::isFile);
+        if (files == null) {
+            throw new IOException("cannot list directory: " + dir);
+        }
+        Map<String, String> byName = new HashMap<>();
+        for (File file : files) {
+            String name = file.getName();
+            name = (name.lastIndexOf('.') > 0) ? name.substring(0, name.lastIndexOf('.')) : name;
+            if (byName.put(name, file.getPath()) != null) {
+                logger.warn("several files named " + name + " in " + dir);
+            }
+        }
+        return byName;
+    }
+}
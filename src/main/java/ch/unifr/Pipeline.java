@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipeline class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief The stages of a pipelined batch evaluation (see BatchEvaluator)
+ * The pages go through three stages, each with its own threads and bounded queue: loading (decoding the GT
+ * image and parsing the XML files), evaluating (matching and counting, CPU bound) and writing (rendering,
+ * encoding and writing the images). A stage whose queue is full blocks the stage feeding it, such that at
+ * most (queue + threads) pages wait in or are processed by each stage, whatever the number of pages.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class Pipeline {
+
+    /**
+     * Number of threads of each stage
+     */
+    private final int loaders;
+    private final int evaluators;
+    private final int writers;
+    /**
+     * Capacity of the queue of each stage, 0 for twice its number of threads
+     */
+    private final int queueSize;
+
+    /**
+     * Build the stages of a pipeline
+     *
+     * @param loaders    the number of threads loading the pages
+     * @param evaluators the number of threads evaluating the pages
+     * @param writers    the number of threads writing the images of the pages
+     * @param queueSize  the capacity of the queue of each stage, 0 for twice its number of threads
+     * @throws IllegalArgumentException if a stage has no thread or the capacity is negative
+     */
+    public Pipeline(int loaders, int evaluators, int writers, int queueSize) {
+        if (loaders < 1 || evaluators < 1 || writers < 1 || queueSize < 0) {
+            throw new IllegalArgumentException("invalid pipeline " + loaders + "," + evaluators + "," + writers + "," + queueSize);
+        }
+        this.loaders = loaders;
+        this.evaluators = evaluators;
+        this.writers = writers;
+        this.queueSize = queueSize;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Parse the stages of a pipeline l,e,w[,q]
+     *
+     * @param value the number of threads loading, evaluating and writing, optionally followed by the
+     *              capacity of the queues, e.g. 2,6,2 or 2,6,2,4
+     * @return the pipeline
+     * @throws IllegalArgumentException if the stages cannot be parsed
+     */
+    public static Pipeline parse(String value) {
+        String[] fields = value.trim().split(",");
+        if (fields.length != 3 && fields.length != 4) {
+            throw new IllegalArgumentException("expected loaders,evaluators,writers[,queue]: " + value);
+        }
+        return new Pipeline(Integer.parseInt(fields[0].trim()), Integer.parseInt(fields[1].trim()), Integer.parseInt(fields[2].trim()),
+                (fields.length == 4) ? Integer.parseInt(fields[3].trim()) : 0);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return a new executor of the loading stage
+     */
+    public ExecutorService newLoadingStage() {
+        return newStage("load", loaders);
+    }
+
+    /**
+     * @return a new executor of the evaluating stage
+     */
+    public ExecutorService newEvaluatingStage() {
+        return newStage("evaluate", evaluators);
+    }
+
+    /**
+     * @return a new executor of the writing stage
+     */
+    public ExecutorService newWritingStage() {
+        return newStage("write", writers);
+    }
+
+    public int getLoaders() {
+        return loaders;
+    }
+
+    public int getEvaluators() {
+        return evaluators;
+    }
+
+    public int getWriters() {
+        return writers;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    @Override
+    public String toString() {
+        return loaders + "," + evaluators + "," + writers + ((queueSize > 0) ? "," + queueSize : "");
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Build the executor of a stage: a fixed number of threads and a bounded queue. Submitting a task to
+     * a stage whose queue is full waits for a free slot (instead of failing), which applies the back
+     * pressure of the stage to the thread submitting, i.e. to the previous stage.
+     *
+     * @param name    the name of the stage, for the names of its threads
+     * @param threads the number of threads of the stage
+     * @return the executor of the stage
+     */
+    private ExecutorService newStage(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, "pipeline-" + name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>((queueSize > 0) ? queueSize : 2 * threads), factory,
+                (r, e) -> {
+                    if (e.isShutdown()) {
+                        throw new RejectedExecutionException("stage " + name + " is shut down");
+                    }
+                    try {
+                        e.getQueue().put(r);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("interrupted while waiting for the stage " + name, ie);
+                    }
+                });
+        executor.prestartAllCoreThreads();
+        return executor;
+    }
+}
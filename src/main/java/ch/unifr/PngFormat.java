@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+/**
+ * PngFormat class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief The settings of the PNG encoder writing the visualization and the overlap (see PngWriter)
+ * The deflate level trades the size of the files for the time spent compressing them. The visualization
+ * has only a handful of colors: with a palette it is written with 1, 2, 4 or 8 bits per pixel instead of 24
+ * (images with more than 256 colors, like the overlap, are still written in true color). Large images are
+ * compressed by several threads, in segments of rows deflated in parallel into a single zlib stream.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class PngFormat {
+
+    /**
+     * The default settings: deflate level 4 (as ImageIO), palette when possible, one thread
+     */
+    public static final PngFormat DEFAULT = new PngFormat(4, true, 1);
+
+    /**
+     * Deflate level, from 0 (stored) to 9 (smallest)
+     */
+    private final int level;
+    /**
+     * Whether the images with at most 256 colors are written with a palette
+     */
+    private final boolean palette;
+    /**
+     * Number of threads compressing a large image
+     */
+    private final int threads;
+
+    /**
+     * Build the settings of the PNG encoder
+     *
+     * @param level   the deflate level, from 0 (stored, fastest) to 9 (smallest, slowest)
+     * @param palette true to write the images with at most 256 colors with a palette
+     * @param threads the number of threads compressing a large image
+     * @throws IllegalArgumentException if the level is not in [0, 9] or there is no thread
+     */
+    public PngFormat(int level, boolean palette, int threads) {
+        if (level < 0 || level > 9 || threads < 1) {
+            throw new IllegalArgumentException("invalid PNG format: level " + level + ", " + threads + " threads");
+        }
+        this.level = level;
+        this.palette = palette;
+        this.threads = threads;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Parse the settings of the PNG encoder level[,palette|rgb[,threads]]
+     *
+     * @param value the deflate level, optionally followed by palette (the default) or rgb (true color
+     *              only) and by the number of threads, e.g. 1, 9,palette or 6,rgb,4
+     * @return the settings
+     * @throws IllegalArgumentException if the settings cannot be parsed
+     */
+    public static PngFormat parse(String value) {
+        String[] fields = value.trim().split(",");
+        if (fields.length > 3) {
+            throw new IllegalArgumentException("expected level[,palette|rgb[,threads]]: " + value);
+        }
+        boolean palette = true;
+        if (fields.length > 1) {
+            String mode = fields[1].trim();
+            if (!mode.equals("palette") && !mode.equals("rgb")) {
+                throw new IllegalArgumentException("expected palette or rgb: " + mode);
+            }
+            palette = mode.equals("palette");
+        }
+        return new PngFormat(Integer.parseInt(fields[0].trim()), palette,
+                (fields.length == 3) ? Integer.parseInt(fields[2].trim()) : 1);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    public int getLevel() {
+        return level;
+    }
+
+    public boolean isPalette() {
+        return palette;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    @Override
+    public String toString() {
+        return level + "," + (palette ? "palette" : "rgb") + "," + threads;
+    }
+}
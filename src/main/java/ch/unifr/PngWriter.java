@@ -0,0 +1,861 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.apache.log4j.Logger;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PngWriter class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Writes a PNG file incrementally, one horizontal band after the other
+ * The image is written non-interlaced, either as 8 bits RGB (or RGBA), as ImageIO does for TYPE_INT_RGB
+ * (or TYPE_INT_ARGB) images, or with a palette of at most 256 colors and 1, 2, 4 or 8 bits per pixel.
+ * In true color, every row is filtered with the filter minimizing the sum of the absolute values of its
+ * bytes; with a palette, the rows are not filtered (the indexes of the colors are not predictable from
+ * their neighbours). The filtered rows are deflated into IDAT chunks (see PngFormat for the settings):
+ * by a single deflater, or, with several threads, in segments of rows deflated in parallel. Each segment
+ * then starts with the end of the previous one as preset dictionary and ends on a byte boundary (sync
+ * flush), such that the segments concatenate into a single zlib stream, as compact as a sequential one.
+ * The image is written in a temporary file next to the PNG file, moved in its place once complete.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class PngWriter implements Closeable {
+
+    /**
+     * Log4j logger
+     */
+    private static final Logger logger = Logger.getLogger(PngWriter.class);
+    /**
+     * Signature of the PNG files
+     */
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    /**
+     * Maximal size of the IDAT chunks
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+    /**
+     * Minimal size of the filtered rows deflated by a thread
+     */
+    private static final int SEGMENT_SIZE = 1 << 20;
+    /**
+     * Size of the window of deflate, i.e. of the preset dictionary of a segment
+     */
+    private static final int WINDOW_SIZE = 1 << 15;
+    /**
+     * Maximal number of colors of a palette
+     */
+    public static final int MAX_PALETTE_SIZE = 256;
+    /**
+     * The PNG file, and the temporary file written until the image is complete
+     */
+    private final Path file;
+    private final Path temporary;
+    private final DataOutputStream out;
+    /**
+     * Size of the image
+     */
+    private final int width;
+    private final int height;
+    /**
+     * Deflate level
+     */
+    private final int level;
+    /**
+     * Bytes per pixel in true color: 3 (RGB) or 4 (RGBA), 0 with a palette
+     */
+    private final int bytesPerPixel;
+    /**
+     * The palette and the number of bits per pixel, null and 8 in true color
+     */
+    private final ColorIndex palette;
+    private final int bitDepth;
+    /**
+     * Bytes of a filtered row, including the filter byte
+     */
+    private final int rowLength;
+    /**
+     * Deflates the filtered rows, null if they are deflated in parallel
+     */
+    private final Deflater deflater;
+    /**
+     * Threads deflating the segments, null if sequential
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Checksum of the filtered rows, ending the zlib stream
+     */
+    private final Adler32 adler = new Adler32();
+    /**
+     * Splits the zlib stream into IDAT chunks
+     */
+    private final IdatStream idat = new IdatStream();
+    /**
+     * The raw bytes of the last row written (index 0 for the filter byte, as in the file)
+     */
+    private byte[] previousRow;
+    /**
+     * The last filtered bytes written (at most WINDOW_SIZE), preset dictionary of the next segment
+     */
+    private byte[] dictionary = new byte[0];
+    /**
+     * Number of rows written
+     */
+    private int rows = 0;
+
+    /**
+     * Create a PNG file in true color, with the default settings, and write its header
+     *
+     * @param file   the PNG file
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @param alpha  true to write the alpha channel (RGBA), false for RGB
+     * @throws IOException if the file cannot be written
+     */
+    public PngWriter(File file, int width, int height, boolean alpha) throws IOException {
+        this(file, width, height, alpha, PngFormat.DEFAULT, null);
+    }
+
+    /**
+     * Create a PNG file and write its header
+     *
+     * @param file    the PNG file
+     * @param width   the width of the image
+     * @param height  the height of the image
+     * @param alpha   true to write the alpha channel (RGBA), false for RGB (ignored with a palette)
+     * @param format  the settings of the encoder (its palette flag is ignored)
+     * @param palette the ARGB colors of the image, at most MAX_PALETTE_SIZE distinct ones, or null to write it in true color
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if the palette is empty or has too many colors
+     */
+    public PngWriter(File file, int width, int height, boolean alpha, PngFormat format, int[] palette) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        if (palette != null && palette.length == 0) {
+            throw new IllegalArgumentException("the palette is empty");
+        }
+        this.width = width;
+        this.height = height;
+        this.level = format.getLevel();
+        this.palette = (palette != null) ? new ColorIndex(palette) : null;
+        this.bytesPerPixel = (palette != null) ? 0 : alpha ? 4 : 3;
+        int nbColors = (palette != null) ? this.palette.size() : 0;
+        this.bitDepth = (palette == null) ? 8 : (nbColors <= 2) ? 1 : (nbColors <= 4) ? 2 : (nbColors <= 16) ? 4 : 8;
+        this.rowLength = 1 + ((palette != null) ? (int) (((long) width * bitDepth + 7) >> 3) : width * bytesPerPixel);
+        this.file = file.toPath();
+        this.temporary = new File(file.getPath() + ".tmp").toPath();
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary.toFile()), CHUNK_SIZE));
+
+        try {
+            out.write(PNG_SIGNATURE);
+            byte[] header = new byte[13];
+            putInt(header, 0, width);
+            putInt(header, 4, height);
+            header[8] = (byte) bitDepth;
+            header[9] = (byte) ((palette != null) ? 3 : alpha ? 6 : 2);     // Color type
+            writeChunk("IHDR", header, header.length);
+            if (palette != null) {
+                writePalette(this.palette.getColors());
+            }
+        } catch (IOException | RuntimeException e) {
+            // The writer is not built, hence never closed: release the file
+            try {
+                out.close();
+                Files.deleteIfExists(temporary);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        // Several threads only if there are several segments
+        boolean parallel = format.getThreads() > 1 && (long) rowLength * height > SEGMENT_SIZE;
+        this.pool = parallel ? new ForkJoinPool(format.getThreads()) : null;
+        this.deflater = parallel ? null : new Deflater(level, true);
+        idat.write(getZlibHeader(level));
+        previousRow = new byte[rowLength];
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Write a whole image as PNG file: with a palette if the format allows it and the image has at most
+     * MAX_PALETTE_SIZE colors, else in true color, without the alpha channel if the image is opaque
+     *
+     * @param image  the image
+     * @param file   the PNG file
+     * @param format the settings of the encoder
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(BufferedImage image, File file, PngFormat format) throws IOException {
+        int[] palette = format.isPalette() ? getPalette(image, MAX_PALETTE_SIZE) : null;
+        boolean alpha = palette == null && image.getColorModel().hasAlpha() && !isOpaque(image);
+        try (PngWriter writer = new PngWriter(file, image.getWidth(), image.getHeight(), alpha, format, palette)) {
+            writer.write(image);
+        }
+    }
+
+    /**
+     * Find the colors of an image
+     *
+     * @param image     the image
+     * @param maxColors the maximal number of colors
+     * @return the ARGB colors of the image, by order of appearance, null if there are more than maxColors
+     */
+    public static int[] getPalette(BufferedImage image, int maxColors) {
+        ColorIndex colors = new ColorIndex(new int[0]);
+        int[] pixels = new int[image.getWidth()];
+        int last = 0;
+        boolean first = true;
+        for (int y = 0; y < image.getHeight(); y++) {
+            readRow(image, y, pixels);
+            for (int argb : pixels) {
+                if ((argb != last || first) && colors.indexOf(argb) < 0) {
+                    if (colors.size() == maxColors) {
+                        return null;
+                    }
+                    colors.add(argb);
+                }
+                last = argb;
+                first = false;
+            }
+        }
+        return colors.getColors();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Write the next rows of the image
+     *
+     * @param band the rows, as wide as the image
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if a color is not in the palette
+     */
+    public void write(BufferedImage band) throws IOException {
+        if (band.getWidth() != width) {
+            throw new IllegalArgumentException("expected a band of width " + width + ", got " + band.getWidth());
+        }
+        if (rows + band.getHeight() > height) {
+            throw new IllegalArgumentException("the image has only " + height + " rows");
+        }
+
+        // The segments of a band are filtered then deflated by groups, bounding the memory
+        int bandY = rows;
+        int segmentRows = getSegmentRows();
+        int groupSize = getGroupSize();
+        for (int y = 0; y < band.getHeight(); y += segmentRows * groupSize) {
+            int nbSegments = Math.min(groupSize, (band.getHeight() - y + segmentRows - 1) / segmentRows);
+            Segment[] segments = new Segment[nbSegments];
+            for (int s = 0; s < nbSegments; s++) {
+                int fromY = y + s * segmentRows;
+                int toY = Math.min(band.getHeight(), fromY + segmentRows);
+                segments[s] = new Segment(band, fromY, toY, bandY + toY == height);
+            }
+            segments[0].prior = previousRow;
+
+            if (pool == null) {
+                Segment segment = segments[0];
+                segment.filter();
+                deflate(segment.filtered, segment.last);
+            } else {
+                run(nbSegments, s -> segments[s].filter());
+                for (Segment segment : segments) {
+                    segment.dictionary = dictionary;
+                    dictionary = getDictionary(dictionary, segment.filtered);
+                }
+                run(nbSegments, s -> segments[s].deflate());
+                for (Segment segment : segments) {
+                    adler.update(segment.filtered);
+                    idat.write(segment.deflated, 0, segment.deflatedLength);
+                }
+            }
+            previousRow = segments[nbSegments - 1].lastRow;
+            rows = bandY + segments[nbSegments - 1].toY;
+        }
+    }
+
+    /**
+     * @return the number of rows filtered and deflated at once: writing bands of this height (or a multiple of
+     * it) keeps all the threads busy, with the least memory
+     */
+    public int getBandHeight() {
+        return getSegmentRows() * getGroupSize();
+    }
+
+    /**
+     * Finish the file and move it in place. Fails if not all the rows have been written, in which case
+     * (as whenever it fails) the PNG file is not written.
+     *
+     * @throws IOException if the file cannot be written or is incomplete
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            try {
+                if (rows != height) {
+                    throw new IOException("incomplete image: " + rows + " rows written out of " + height);
+                }
+                byte[] checksum = new byte[4];
+                putInt(checksum, 0, (int) adler.getValue());
+                idat.write(checksum);
+                idat.flush();
+                writeChunk("IEND", new byte[0], 0);
+            } finally {
+                if (deflater != null) {
+                    deflater.end();
+                }
+                if (pool != null) {
+                    pool.shutdown();
+                }
+                out.close();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return the number of rows of a segment, about SEGMENT_SIZE bytes
+     */
+    private int getSegmentRows() {
+        return Math.max(1, SEGMENT_SIZE / rowLength);
+    }
+
+    /**
+     * @return the number of segments filtered and deflated together
+     */
+    private int getGroupSize() {
+        return (pool == null) ? 1 : 2 * pool.getParallelism();
+    }
+
+    /**
+     * Deflate filtered rows with the deflater of the image (sequential encoding)
+     *
+     * @param data the filtered rows
+     * @param last whether these are the last rows of the image
+     */
+    private void deflate(byte[] data, boolean last) throws IOException {
+        adler.update(data);
+        deflater.setInput(data);
+        if (last) {
+            deflater.finish();
+        }
+        byte[] buffer = new byte[CHUNK_SIZE];
+        while (!deflater.needsInput() || (last && !deflater.finished())) {
+            int length = deflater.deflate(buffer);
+            idat.write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Run a task on each segment of a group, in parallel
+     */
+    private void run(int nbSegments, IntConsumer task) {
+        pool.submit((Callable<Void>) () -> {
+            IntStream.range(0, nbSegments).parallel().forEach(task);
+            return null;
+        }).join();
+    }
+
+    /**
+     * Write the PLTE chunk of a palette, and its tRNS chunk if a color is not opaque
+     */
+    private void writePalette(int[] colors) throws IOException {
+        byte[] rgb = new byte[3 * colors.length];
+        byte[] alphas = new byte[colors.length];
+        int nbAlphas = 0;
+        for (int i = 0; i < colors.length; i++) {
+            rgb[3 * i] = (byte) (colors[i] >> 16);
+            rgb[3 * i + 1] = (byte) (colors[i] >> 8);
+            rgb[3 * i + 2] = (byte) colors[i];
+            alphas[i] = (byte) (colors[i] >>> 24);
+            if (alphas[i] != (byte) 0xFF) {
+                nbAlphas = i + 1;
+            }
+        }
+        writeChunk("PLTE", rgb, rgb.length);
+        if (nbAlphas > 0) {
+            writeChunk("tRNS", alphas, nbAlphas);
+        }
+    }
+
+    /**
+     * Write a chunk (length, type, data and CRC)
+     */
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Store a big endian int in a byte array
+     */
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * @return the two bytes starting a zlib stream: deflate with a 32 KB window, the level and the check bits
+     */
+    private static byte[] getZlibHeader(int level) {
+        int cmf = 0x78;
+        int flevel = (level <= 1) ? 0 : (level <= 5) ? 1 : (level == 6) ? 2 : 3;
+        int flg = flevel << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        return new byte[]{(byte) cmf, (byte) flg};
+    }
+
+    /**
+     * @return the last WINDOW_SIZE bytes of the concatenation of two arrays
+     */
+    private static byte[] getDictionary(byte[] previous, byte[] data) {
+        if (data.length >= WINDOW_SIZE) {
+            return Arrays.copyOfRange(data, data.length - WINDOW_SIZE, data.length);
+        }
+        int fromPrevious = Math.min(previous.length, WINDOW_SIZE - data.length);
+        byte[] dictionary = new byte[fromPrevious + data.length];
+        System.arraycopy(previous, previous.length - fromPrevious, dictionary, 0, fromPrevious);
+        System.arraycopy(data, 0, dictionary, fromPrevious, data.length);
+        return dictionary;
+    }
+
+    /**
+     * Read the ARGB pixels of a row of an image
+     */
+    private static void readRow(BufferedImage image, int y, int[] pixels) {
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
+            image.getRaster().getDataElements(0, y, pixels.length, 1, pixels);
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                // The alpha byte of the pixels is not defined
+                for (int x = 0; x < pixels.length; x++) {
+                    pixels[x] |= 0xFF000000;
+                }
+            }
+        } else {
+            image.getRGB(0, y, pixels.length, 1, pixels, 0, pixels.length);
+        }
+    }
+
+    /**
+     * @return true if no pixel of the image is (even partially) transparent
+     */
+    private static boolean isOpaque(BufferedImage image) {
+        int[] pixels = new int[image.getWidth()];
+        for (int y = 0; y < image.getHeight(); y++) {
+            readRow(image, y, pixels);
+            for (int argb : pixels) {
+                if ((argb >>> 24) != 0xFF) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rows of a band filtered (and deflated, if in parallel) together
+     */
+    private final class Segment {
+        private final BufferedImage band;
+        private final int fromY;
+        private final int toY;
+        private final boolean last;
+        /**
+         * The raw bytes of the row before the segment, null to compute them from the band
+         */
+        private byte[] prior;
+        /**
+         * The raw bytes of the last row of the segment
+         */
+        private byte[] lastRow;
+        /**
+         * The filtered rows, and the preset dictionary and deflated rows if in parallel
+         */
+        private byte[] filtered;
+        private byte[] dictionary;
+        private byte[] deflated;
+        private int deflatedLength;
+
+        private Segment(BufferedImage band, int fromY, int toY, boolean last) {
+            this.band = band;
+            this.fromY = fromY;
+            this.toY = toY;
+            this.last = last;
+        }
+
+        /**
+         * Encode and filter the rows of the segment
+         */
+        private void filter() {
+            int[] pixels = new int[width];
+            byte[] previous = prior;
+            if (previous == null) {
+                previous = new byte[rowLength];
+                readRow(band, fromY - 1, pixels);
+                encodeRow(pixels, previous);
+            }
+            byte[] current = new byte[rowLength];
+            byte[] paeth = (palette == null) ? new byte[rowLength] : null;
+            filtered = new byte[(toY - fromY) * rowLength];
+            for (int y = fromY; y < toY; y++) {
+                readRow(band, y, pixels);
+                encodeRow(pixels, current);
+                filterRow(current, previous, paeth, filtered, (y - fromY) * rowLength);
+                byte[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+            lastRow = previous;
+        }
+
+        /**
+         * Deflate the filtered rows, from the preset dictionary, ending on a byte boundary (or the end of the stream)
+         */
+        private void deflate() {
+            Deflater segmentDeflater = new Deflater(level, true);
+            try {
+                if (dictionary.length > 0) {
+                    segmentDeflater.setDictionary(dictionary);
+                }
+                segmentDeflater.setInput(filtered);
+                if (last) {
+                    segmentDeflater.finish();
+                }
+                deflated = new byte[filtered.length / 2 + 64];
+                deflatedLength = 0;
+                while (true) {
+                    deflatedLength += last
+                            ? segmentDeflater.deflate(deflated, deflatedLength, deflated.length - deflatedLength)
+                            : segmentDeflater.deflate(deflated, deflatedLength, deflated.length - deflatedLength, Deflater.SYNC_FLUSH);
+                    // The flush is complete once the output is not full
+                    if (last ? segmentDeflater.finished() : deflatedLength < deflated.length) {
+                        break;
+                    }
+                    if (deflatedLength == deflated.length) {
+                        deflated = Arrays.copyOf(deflated, 2 * deflated.length);
+                    }
+                }
+            } finally {
+                segmentDeflater.end();
+            }
+        }
+    }
+
+    /**
+     * Encode a row of ARGB pixels as the raw bytes of the file (after the filter byte)
+     */
+    private void encodeRow(int[] pixels, byte[] row) {
+        if (palette == null) {
+            for (int x = 0, i = 1; x < width; x++) {
+                int argb = pixels[x];
+                row[i++] = (byte) (argb >> 16);
+                row[i++] = (byte) (argb >> 8);
+                row[i++] = (byte) argb;
+                if (bytesPerPixel == 4) {
+                    row[i++] = (byte) (argb >>> 24);
+                }
+            }
+            return;
+        }
+        Arrays.fill(row, 1, row.length, (byte) 0);
+        int pixelsPerByte = 8 / bitDepth;
+        int last = 0;
+        int index = -1;
+        for (int x = 0; x < width; x++) {
+            int argb = pixels[x];
+            if (argb != last || index < 0) {
+                index = palette.indexOf(argb);
+                if (index < 0) {
+                    throw new IllegalArgumentException(String.format("color %08X is not in the palette", argb));
+                }
+                last = argb;
+            }
+            int shift = 8 - bitDepth * (x % pixelsPerByte + 1);
+            row[1 + x / pixelsPerByte] |= (byte) (index << shift);
+        }
+    }
+
+    /**
+     * Filter a row into the filtered rows: without filter with a palette, else with the filter
+     * minimizing the sum of the absolute (signed) values
+     *
+     * @param row      the raw bytes of the row
+     * @param prior    the raw bytes of the previous row
+     * @param paeth    the row with the Paeth filter (scratch)
+     * @param filtered the filtered rows
+     * @param offset   the offset of the row in the filtered rows
+     */
+    private void filterRow(byte[] row, byte[] prior, byte[] paeth, byte[] filtered, int offset) {
+        if (palette != null) {
+            System.arraycopy(row, 1, filtered, offset + 1, rowLength - 1);
+            filtered[offset] = 0;
+            return;
+        }
+
+        // Sum the absolute values of the bytes with each filter, one simple loop per filter (the first
+        // pixel has no left neighbour, i.e. a = c = 0)
+        int bpp = bytesPerPixel;
+        int[] sums = new int[5];
+        for (int i = 1; i <= bpp; i++) {
+            int raw = row[i] & 0xFF;
+            int b = prior[i] & 0xFF;
+            sums[0] += Math.abs((byte) raw);
+            sums[1] += Math.abs((byte) raw);
+            sums[2] += Math.abs((byte) (raw - b));
+            sums[3] += Math.abs((byte) (raw - (b >> 1)));
+            paeth[i] = (byte) (raw - b);
+            sums[4] += Math.abs(paeth[i]);
+        }
+        sums[0] += sumNone(row, bpp);
+        sums[1] += sumSub(row, bpp);
+        sums[2] += sumUp(row, prior, bpp);
+        sums[3] += sumAverage(row, prior, bpp);
+        sums[4] += sumPaeth(row, prior, bpp, paeth);
+        int best = 0;
+        for (int f = 1; f < sums.length; f++) {
+            if (sums[f] < sums[best]) {
+                best = f;
+            }
+        }
+
+        // Store the row with the best filter
+        filtered[offset] = (byte) best;
+        switch (best) {
+            case 0:
+                System.arraycopy(row, 1, filtered, offset + 1, rowLength - 1);
+                break;
+            case 1:
+                System.arraycopy(row, 1, filtered, offset + 1, bpp);
+                for (int i = bpp + 1; i < rowLength; i++) {
+                    filtered[offset + i] = (byte) (row[i] - row[i - bpp]);
+                }
+                break;
+            case 2:
+                for (int i = 1; i < rowLength; i++) {
+                    filtered[offset + i] = (byte) (row[i] - prior[i]);
+                }
+                break;
+            case 3:
+                for (int i = 1; i <= bpp; i++) {
+                    filtered[offset + i] = (byte) (row[i] - ((prior[i] & 0xFF) >> 1));
+                }
+                for (int i = bpp + 1; i < rowLength; i++) {
+                    filtered[offset + i] = (byte) (row[i] - (((row[i - bpp] & 0xFF) + (prior[i] & 0xFF)) >> 1));
+                }
+                break;
+            default:
+                System.arraycopy(paeth, 1, filtered, offset + 1, rowLength - 1);
+                break;
+        }
+    }
+
+    /**
+     * @return the sum of the absolute values of the bytes of a row after its first pixel, without filter
+     */
+    private static int sumNone(byte[] row, int bpp) {
+        int sum = 0;
+        for (int i = bpp + 1; i < row.length; i++) {
+            sum += Math.abs(row[i]);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the sum of the absolute values of the bytes of a row after its first pixel, with the Sub filter
+     */
+    private static int sumSub(byte[] row, int bpp) {
+        int sum = 0;
+        for (int i = bpp + 1; i < row.length; i++) {
+            sum += Math.abs((byte) (row[i] - row[i - bpp]));
+        }
+        return sum;
+    }
+
+    /**
+     * @return the sum of the absolute values of the bytes of a row after its first pixel, with the Up filter
+     */
+    private static int sumUp(byte[] row, byte[] prior, int bpp) {
+        int sum = 0;
+        for (int i = bpp + 1; i < row.length; i++) {
+            sum += Math.abs((byte) (row[i] - prior[i]));
+        }
+        return sum;
+    }
+
+    /**
+     * @return the sum of the absolute values of the bytes of a row after its first pixel, with the Average filter
+     */
+    private static int sumAverage(byte[] row, byte[] prior, int bpp) {
+        int sum = 0;
+        for (int i = bpp + 1; i < row.length; i++) {
+            sum += Math.abs((byte) (row[i] - (((row[i - bpp] & 0xFF) + (prior[i] & 0xFF)) >> 1)));
+        }
+        return sum;
+    }
+
+    /**
+     * Filter a row after its first pixel with the Paeth filter
+     *
+     * @return the sum of the absolute values of the filtered bytes
+     */
+    private static int sumPaeth(byte[] row, byte[] prior, int bpp, byte[] paeth) {
+        int sum = 0;
+        for (int i = bpp + 1; i < row.length; i++) {
+            paeth[i] = (byte) (row[i] - paethPredictor(row[i - bpp] & 0xFF, prior[i] & 0xFF, prior[i - bpp] & 0xFF));
+            sum += Math.abs(paeth[i]);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the Paeth predictor of a byte from its left (a), upper (b) and upper left (c) neighbours,
+     * i.e. a if pa <= pb and pa <= pc, else b if pb <= pc, else c, without branches (they are not
+     * predictable on photographs)
+     */
+    private static int paethPredictor(int a, int b, int c) {
+        int pa = Math.abs(b - c);
+        int pb = Math.abs(a - c);
+        int pc = Math.abs(a + b - 2 * c);
+        int notA = ((pb - pa) | (pc - pa)) >> 31;
+        int bOrC = b ^ ((b ^ c) & ((pc - pb) >> 31));
+        return a ^ ((a ^ bOrC) & notA);
+    }
+
+    /**
+     * Index of the colors of a palette (open addressing)
+     */
+    private static final class ColorIndex {
+        private final int[] keys = new int[4 * MAX_PALETTE_SIZE];
+        private final int[] values = new int[4 * MAX_PALETTE_SIZE];
+        private final int[] colors = new int[MAX_PALETTE_SIZE];
+        private int size = 0;
+
+        private ColorIndex(int[] palette) {
+            Arrays.fill(values, -1);
+            for (int argb : palette) {
+                if (indexOf(argb) < 0) {
+                    add(argb);
+                }
+            }
+        }
+
+        /**
+         * @return the index of a color, -1 if not in the palette
+         */
+        private int indexOf(int argb) {
+            for (int slot = hash(argb); values[slot] >= 0; slot = (slot + 1) & (keys.length - 1)) {
+                if (keys[slot] == argb) {
+                    return values[slot];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Add a color not in the palette
+         */
+        private void add(int argb) {
+            if (size == MAX_PALETTE_SIZE) {
+                throw new IllegalArgumentException("a palette has at most " + MAX_PALETTE_SIZE + " colors");
+            }
+            int slot = hash(argb);
+            while (values[slot] >= 0) {
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            keys[slot] = argb;
+            values[slot] = size;
+            colors[size++] = argb;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private int[] getColors() {
+            return Arrays.copyOf(colors, size);
+        }
+
+        private int hash(int argb) {
+            return (argb * 0x9E3779B1 >>> 22) & (keys.length - 1);
+        }
+    }
+
+    /**
+     * Splits the zlib stream into IDAT chunks of at most CHUNK_SIZE bytes
+     */
+    private final class IdatStream extends OutputStream {
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int size = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, buffer.length - size);
+                System.arraycopy(b, off, buffer, size, n);
+                size += n;
+                off += n;
+                len -= n;
+                if (size == buffer.length) {
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (size > 0) {
+                writeChunk("IDAT", buffer, size);
+                size = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * PolygonMask class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Rasterized version of a polygon
+ * The polygon is scan-converted once into a bitmask covering its bounding box, so that
+ * the evaluation can test pixel membership without calling Polygon.contains() for every
+ * pixel of every pair of polygons. The scan conversion replicates exactly the even-odd
+ * rule (and the edge/vertex conventions) of java.awt.Polygon.contains(int, int).
+ * Rows are aligned on 64 pixels columns in absolute image coordinates, such that the
+ * words of a mask line up with the words of any other mask of the same image.
+ * A mask can also cover only the rows of a horizontal band of the image (see BandReader): the
+ * polygon then contains no pixel outside of the band.
+ * The pixels of a mask intersecting the foreground (and another mask) are counted 64 at a time,
+ * with AND and Long.bitCount() (a single POPCNT instruction on current JITs) on the aligned words.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class PolygonMask {
+
+    /**
+     * The polygon this mask has been computed from
+     */
+    private final Polygon polygon;
+    /**
+     * Bounding box of the polygon (identical to Polygon.getBounds())
+     */
+    private final Rectangle bounds;
+    /**
+     * First row and number of rows of the mask (the rows of the bounding box, or of its intersection with a band)
+     */
+    private final int fromY;
+    private final int rows;
+    /**
+     * Absolute index of the first word of each row, i.e. floor(bounds.x / 64)
+     */
+    private final int wordOffset;
+    /**
+     * Number of words for each row
+     */
+    private final int wordsPerRow;
+    /**
+     * Row-major bits of the mask. Bit (x & 63) of word ((x >> 6) - wordOffset) of the row
+     * (y - fromY) is set iff the polygon contains the pixel (x,y)
+     */
+    private final long[] bits;
+
+    /**
+     * Rasterize a polygon
+     *
+     * @param polygon the polygon to rasterize
+     */
+    public PolygonMask(Polygon polygon) {
+        this(polygon, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Rasterize the rows of a polygon within a horizontal band
+     *
+     * @param polygon the polygon to rasterize
+     * @param fromY   first row of the band (inclusive)
+     * @param toY     last row of the band (exclusive)
+     */
+    public PolygonMask(Polygon polygon, int fromY, int toY) {
+        this.polygon = polygon;
+        this.bounds = polygon.getBounds();
+
+        if (bounds.width > 0 && bounds.height > 0) {
+            wordOffset = bounds.x >> 6;
+            wordsPerRow = ((bounds.x + bounds.width - 1) >> 6) - wordOffset + 1;
+        } else {
+            wordOffset = 0;
+            wordsPerRow = 0;
+        }
+        this.fromY = Math.max(bounds.y, fromY);
+        this.rows = Math.max(Math.min(bounds.y + Math.max(bounds.height, 0), toY) - this.fromY, 0);
+        bits = new long[wordsPerRow * rows];
+        scanSpans((y, from, to) -> setSpan((y - this.fromY) * wordsPerRow, from, to));
+    }
+
+    /**
+     * Wrap an already rasterized polygon (see GroundTruthCache)
+     *
+     * @param polygon the polygon
+     * @param bits    the row-major bits of its mask, as returned by getBits()
+     */
+    PolygonMask(Polygon polygon, long[] bits) {
+        this.polygon = polygon;
+        this.bounds = polygon.getBounds();
+
+        if (bounds.width > 0 && bounds.height > 0) {
+            wordOffset = bounds.x >> 6;
+            wordsPerRow = ((bounds.x + bounds.width - 1) >> 6) - wordOffset + 1;
+        } else {
+            wordOffset = 0;
+            wordsPerRow = 0;
+        }
+        this.fromY = bounds.y;
+        this.rows = Math.max(bounds.height, 0);
+        if (bits.length != wordsPerRow * rows) {
+            throw new IllegalArgumentException("expected " + wordsPerRow * Math.max(bounds.height, 0) + " words, got " + bits.length);
+        }
+        this.bits = bits;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Rasterize a list of polygons, preserving the order
+     *
+     * @param polygons the polygons to rasterize
+     * @return the list of masks (one per polygon)
+     */
+    public static List<PolygonMask> rasterize(List<Polygon> polygons) {
+        List<PolygonMask> masks = new ArrayList<>(polygons.size());
+        for (Polygon polygon : polygons) {
+            masks.add(new PolygonMask(polygon));
+        }
+        return masks;
+    }
+
+    /**
+     * Rasterize the rows of a list of polygons within a horizontal band, preserving the order
+     *
+     * @param polygons the polygons to rasterize
+     * @param fromY    first row of the band (inclusive)
+     * @param toY      last row of the band (exclusive)
+     * @return the list of masks (one per polygon, possibly empty)
+     */
+    public static List<PolygonMask> rasterize(List<Polygon> polygons, int fromY, int toY) {
+        List<PolygonMask> masks = new ArrayList<>(polygons.size());
+        for (Polygon polygon : polygons) {
+            masks.add(new PolygonMask(polygon, fromY, toY));
+        }
+        return masks;
+    }
+
+    /**
+     * Count the countable foreground pixels contained by two polygons
+     *
+     * @param a          the first polygon
+     * @param b          the second polygon
+     * @param foreground the countable foreground of the GT image
+     * @return the number of foreground pixels of the intersection of the polygons
+     */
+    public static int countForeground(PolygonMask a, PolygonMask b, ForegroundMask foreground) {
+        long[] fg = foreground.getBits();
+        int fgWordsPerRow = (foreground.getWidth() + 63) >> 6;
+
+        // Rows and (absolute) word columns common to the masks and the foreground
+        int y0 = Math.max(Math.max(a.fromY, b.fromY), foreground.getFromY());
+        int y1 = Math.min(Math.min(a.fromY + a.rows, b.fromY + b.rows), foreground.getFromY() + foreground.getRows());
+        int w0 = Math.max(Math.max(a.wordOffset, b.wordOffset), 0);
+        int w1 = Math.min(Math.min(a.wordOffset + a.wordsPerRow, b.wordOffset + b.wordsPerRow), fgWordsPerRow);
+        if (w0 >= w1) {
+            return 0;
+        }
+
+        int count = 0;
+        for (int y = y0; y < y1; y++) {
+            int ai = (y - a.fromY) * a.wordsPerRow - a.wordOffset;
+            int bi = (y - b.fromY) * b.wordsPerRow - b.wordOffset;
+            int fi = (y - foreground.getFromY()) * fgWordsPerRow;
+            for (int w = w0; w < w1; w++) {
+                count += Long.bitCount(a.bits[ai + w] & b.bits[bi + w] & fg[fi + w]);
+            }
+        }
+        return count;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Count the countable foreground pixels contained by the polygon
+     *
+     * @param foreground the countable foreground of the GT image
+     * @return the number of foreground pixels of the polygon
+     */
+    public int countForeground(ForegroundMask foreground) {
+        long[] fg = foreground.getBits();
+        int fgWordsPerRow = (foreground.getWidth() + 63) >> 6;
+
+        int y0 = Math.max(fromY, foreground.getFromY());
+        int y1 = Math.min(fromY + rows, foreground.getFromY() + foreground.getRows());
+        int w0 = Math.max(wordOffset, 0);
+        int w1 = Math.min(wordOffset + wordsPerRow, fgWordsPerRow);
+        if (w0 >= w1) {
+            return 0;
+        }
+
+        int count = 0;
+        for (int y = y0; y < y1; y++) {
+            int i = (y - fromY) * wordsPerRow - wordOffset;
+            int fi = (y - foreground.getFromY()) * fgWordsPerRow;
+            for (int w = w0; w < w1; w++) {
+                count += Long.bitCount(bits[i + w] & fg[fi + w]);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Check whether a pixel belongs to the polygon. Equivalent to Polygon.contains(x, y).
+     *
+     * @param x the x coordinate of the pixel
+     * @param y the y coordinate of the pixel
+     * @return true if the polygon contains the pixel
+     */
+    public boolean contains(int x, int y) {
+        if (x < bounds.x || y < fromY || x >= bounds.x + bounds.width || y >= fromY + rows) {
+            return false;
+        }
+        return ((bits[(y - fromY) * wordsPerRow + (x >> 6) - wordOffset] >>> x) & 1L) != 0;
+    }
+
+    /**
+     * Get 64 pixels of a row of the mask at once
+     *
+     * @param y the y coordinate of the row
+     * @param w the (absolute) index of the word, i.e. the pixels [64 * w, 64 * w + 64) of the row
+     * @return the bits of the pixels contained by the polygon (bit x & 63 for the pixel x), 0 outside of the mask
+     */
+    public long getWord(int y, int w) {
+        if (y < fromY || y >= fromY + rows || w < wordOffset || w >= wordOffset + wordsPerRow) {
+            return 0L;
+        }
+        return bits[(y - fromY) * wordsPerRow + w - wordOffset];
+    }
+
+    /**
+     * @return the polygon this mask has been computed from
+     */
+    public Polygon getPolygon() {
+        return polygon;
+    }
+
+    /**
+     * @return the first row of the mask
+     */
+    int getFromY() {
+        return fromY;
+    }
+
+    /**
+     * @return the number of rows of the mask
+     */
+    int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the row-major bits of the mask (not a copy), starting at its first row
+     */
+    long[] getBits() {
+        return bits;
+    }
+
+    /**
+     * @return a copy of the bounding box of the polygon
+     */
+    public Rectangle getBounds() {
+        return new Rectangle(bounds);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Scan-convert the rows of the mask into the spans of pixels contained by the polygon.
+     * For a given row y, Polygon.contains(x, y) counts the edges which are "hit" by the horizontal
+     * ray going from (x,y) towards -infinity. For each edge this is the case iff x is smaller than
+     * a threshold which only depends on y, therefore the crossing thresholds of all the active edges
+     * are computed once per row and the spans are taken with the even-odd rule between them.
+     *
+     * @param consumer receives the non-empty spans of each row, by increasing y then x
+     */
+    void scanSpans(SpanConsumer consumer) {
+        // Polygon.contains() returns always false for degenerated polygons
+        if (polygon.npoints <= 2 || wordsPerRow == 0 || rows == 0) {
+            return;
+        }
+
+        final int n = polygon.npoints;
+        final int[] xp = polygon.xpoints;
+        final int[] yp = polygon.ypoints;
+
+        // Collect the non horizontal edges (lastx,lasty) -> (curx,cury), sorted by their lowest y
+        Integer[] edges = new Integer[n];
+        int nbEdges = 0;
+        for (int i = 0; i < n; i++) {
+            int last = (i == 0) ? n - 1 : i - 1;
+            if (yp[i] != yp[last]) {
+                edges[nbEdges++] = i;
+            }
+        }
+        edges = Arrays.copyOf(edges, nbEdges);
+        Arrays.sort(edges, (a, b) -> Integer.compare(edgeMinY(a), edgeMinY(b)));
+
+        int[] active = new int[nbEdges];
+        int nbActive = 0;
+        int next = 0;
+        int[] thresholds = new int[nbEdges];
+
+        for (int y = fromY; y < fromY + rows; y++) {
+
+            // Update the active edges: an edge is active on row y iff min(y) <= y < max(y)
+            while (next < nbEdges && edgeMinY(edges[next]) <= y) {
+                active[nbActive++] = edges[next++];
+            }
+            int k = 0;
+            for (int a = 0; a < nbActive; a++) {
+                if (edgeMaxY(active[a]) > y) {
+                    active[k++] = active[a];
+                }
+            }
+            nbActive = k;
+
+            // Compute the crossing threshold of each active edge for this row
+            for (int a = 0; a < nbActive; a++) {
+                thresholds[a] = crossingThreshold(active[a], y);
+            }
+            Arrays.sort(thresholds, 0, nbActive);
+
+            // Even-odd fill: the pixel x is inside iff an odd number of thresholds are > x
+            int from = bounds.x;
+            for (int a = 0; a <= nbActive; a++) {
+                int to = (a < nbActive) ? thresholds[a] : bounds.x + bounds.width;
+                int spanFrom = Math.max(from, bounds.x);
+                int spanTo = Math.min(to, bounds.x + bounds.width);
+                if (((nbActive - a) & 1) == 1 && spanFrom < spanTo) {
+                    consumer.accept(y, spanFrom, spanTo);
+                }
+                from = Math.max(from, to);
+            }
+        }
+    }
+
+    /**
+     * Compute the crossing threshold of an edge for a given row, i.e. the value X such that the edge
+     * is counted as a hit by Polygon.contains(x, y) iff x < X. The floating point expression is the
+     * same as the one in Polygon.contains() to get exactly the same results.
+     *
+     * @param i the index of the end point of the edge
+     * @param y the row
+     * @return the crossing threshold
+     */
+    private int crossingThreshold(int i, int y) {
+        final int n = polygon.npoints;
+        int last = (i == 0) ? n - 1 : i - 1;
+        int curx = polygon.xpoints[i];
+        int cury = polygon.ypoints[i];
+        int lastx = polygon.xpoints[last];
+        int lasty = polygon.ypoints[last];
+
+        int leftx = Math.min(curx, lastx);
+        int rightx = Math.max(curx, lastx);
+
+        // The x coordinate of the reference end point of the edge (the one with lowest y)
+        int refx = (cury < lasty) ? curx : lastx;
+        int refy = (cury < lasty) ? cury : lasty;
+
+        // x - refx < t <=> x < refx + ceil(t), for integer x
+        double t = (y - refy) / (double) (lasty - cury) * (lastx - curx);
+        int crossing = (int) Math.min(rightx, refx + Math.ceil(t));
+        return Math.max(leftx, crossing);
+    }
+
+    /**
+     * @param i the index of the end point of the edge
+     * @return the smallest y of the edge
+     */
+    private int edgeMinY(int i) {
+        int last = (i == 0) ? polygon.npoints - 1 : i - 1;
+        return Math.min(polygon.ypoints[i], polygon.ypoints[last]);
+    }
+
+    /**
+     * @param i the index of the end point of the edge
+     * @return the biggest y of the edge
+     */
+    private int edgeMaxY(int i) {
+        int last = (i == 0) ? polygon.npoints - 1 : i - 1;
+        return Math.max(polygon.ypoints[i], polygon.ypoints[last]);
+    }
+
+    /**
+     * Set the bits of the pixels from (included) to (excluded) on a row
+     *
+     * @param rowStart index of the first word of the row
+     * @param from     first pixel (absolute x coordinate) to set
+     * @param to       first pixel (absolute x coordinate) not to set
+     */
+    private void setSpan(int rowStart, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        int first = rowStart + (from >> 6) - wordOffset;
+        int last = rowStart + ((to - 1) >> 6) - wordOffset;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - ((to - 1) & 63));
+        if (first == last) {
+            bits[first] |= firstMask & lastMask;
+        } else {
+            bits[first] |= firstMask;
+            Arrays.fill(bits, first + 1, last, -1L);
+            bits[last] |= lastMask;
+        }
+    }
+
+    /**
+     * Receives the spans of the rows of a polygon (see scanSpans())
+     */
+    interface SpanConsumer {
+        /**
+         * @param y    the row of the span
+         * @param from first pixel (absolute x coordinate) of the span
+         * @param to   first pixel (absolute x coordinate) after the span
+         */
+        void accept(int y, int from, int to);
+    }
+}
@@ -7,13 +7,18 @@ package ch.unifr;
 
 import org.apache.log4j.Logger;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Results class of the Experimenter project
@@ -22,6 +27,8 @@ import java.util.Map;
  * @author Michele Alberti <michele.alberti@unifr.ch>
  * @date 25.07.2017
  * @brief Store results in a map.
+ * The measures computed by the evaluator are backed by a typed Metrics record; the map holds the
+ * values set with put() (e.g. the filename, or averaged measures), which take precedence.
  */
 @SuppressWarnings({"WeakerAccess"})
 public class Results {
@@ -30,6 +37,7 @@ public class Results {
      * Keys for the different measures
      */
     public static final String FILENAME = "LineSegmentation.filename.String";
+    public static final String MATCHING_THRESHOLD = "LineSegmentation.MatchingThreshold.double";
 
     public static final String LINES_NB_TRUTH = "LineSegmentation.NbLinesTruth.int";
     public static final String LINES_NB_PROPOSED = "LineSegmentation.NbLinesProposed.int";
@@ -49,6 +57,14 @@ public class Results {
     public static final String PIXEL_FMEASURE = "LineSegmentation.PixelFMeasure.Double";
     public static final String PIXEL_PRECISION = "LineSegmentation.PixelPrecision.Double";
     public static final String PIXEL_RECALL = "LineSegmentation.PixelRecall.Double";
+    /**
+     * All the numerical measures, in the order of the CSV file
+     */
+    public static final String[] MEASURES = {
+            LINES_NB_TRUTH, LINES_NB_PROPOSED, LINES_NB_CORRECT,
+            LINES_IU, LINES_FMEASURE, LINES_RECALL, LINES_PRECISION,
+            MATCHED_PIXEL_IU, MATCHED_PIXEL_FMEASURE, MATCHED_PIXEL_PRECISION, MATCHED_PIXEL_RECALL,
+            PIXEL_IU, PIXEL_FMEASURE, PIXEL_PRECISION, PIXEL_RECALL};
     /**
      * Log4j logger
      */
@@ -57,6 +73,49 @@ public class Results {
      * The map storing all the measures and their associated values
      */
     private Map<String, String> results = new HashMap<>();
+    /**
+     * The typed measures (null if the results are only made of put() values)
+     */
+    private final Metrics metrics;
+    /**
+     * The visualization of the results (null if not available or not rendered yet)
+     */
+    private BufferedImage visualization = null;
+    /**
+     * Renders the visualization on the first call of getVisualization() (null if none)
+     */
+    private Supplier<BufferedImage> visualizationRenderer = null;
+    /**
+     * Writes the visualization without rendering it in memory (null if none)
+     */
+    private VisualizationWriter visualizationWriter = null;
+    /**
+     * The wall time of the phases and the counters of the evaluation (null if not instrumented)
+     */
+    private Stats stats = null;
+
+    /**
+     * Build empty results, to be filled with put()
+     */
+    public Results() {
+        this(null);
+    }
+
+    /**
+     * Build a view of typed measures
+     *
+     * @param metrics the measures
+     */
+    public Results(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the typed measures, null if the results are only made of put() values
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
 
     /**
      * Set/update the value associated with the key
@@ -69,74 +128,221 @@ public class Results {
         results.put(key, value.toString());
     }
 
+    /**
+     * Get the value associated with the key
+     *
+     * @param key of the measure
+     * @return the value of the measure, null if not set
+     */
+    public String get(String key) {
+        String value = results.get(key);
+        if (value != null || metrics == null || !isMeasure(key)) {
+            return value;
+        }
+        // Same representation as put() of the int counts and double scores
+        switch (key) {
+            case LINES_NB_TRUTH:
+                return Long.toString(metrics.nbLinesTruth);
+            case LINES_NB_PROPOSED:
+                return Long.toString(metrics.nbLinesProposed);
+            case LINES_NB_CORRECT:
+                return Long.toString(metrics.nbLinesCorrect);
+            default:
+                return Double.toString(metrics.get(key));
+        }
+    }
+
+    /**
+     * Get the numerical value of a measure, without going through its string representation
+     * when it is backed by the typed measures
+     *
+     * @param key of the measure
+     * @return the value of the measure, NaN if not set
+     */
+    public double getMeasure(String key) {
+        String value = results.get(key);
+        if (value != null) {
+            return Double.parseDouble(value);
+        }
+        return (metrics != null && isMeasure(key)) ? metrics.get(key) : Double.NaN;
+    }
+
+    /**
+     * Get the visualization of the results, rendering it if needed
+     *
+     * @return the visualization of the results, null if not available
+     */
+    public BufferedImage getVisualization() {
+        if (visualization == null && visualizationRenderer != null) {
+            visualization = visualizationRenderer.get();
+            visualizationRenderer = null;
+        }
+        return visualization;
+    }
+
+    /**
+     * Set the visualization of the results
+     *
+     * @param visualization the visualization image (null to release it)
+     */
+    public void setVisualization(BufferedImage visualization) {
+        this.visualization = visualization;
+        this.visualizationRenderer = null;
+    }
+
+    /**
+     * Set the renderer of the visualization of the results. The visualization is rendered only
+     * if requested with getVisualization(), hence costs nothing when only the measures are needed.
+     *
+     * @param visualizationRenderer renders the visualization image
+     */
+    public void setVisualizationRenderer(Supplier<BufferedImage> visualizationRenderer) {
+        this.visualization = null;
+        this.visualizationRenderer = visualizationRenderer;
+    }
+
+    /**
+     * @return the writer of the visualization, null if the visualization is rendered in memory (see getVisualization())
+     */
+    public VisualizationWriter getVisualizationWriter() {
+        return visualizationWriter;
+    }
+
+    /**
+     * Set the writer of the visualization of results too large to be rendered in memory
+     * (see LineSegmentationEvaluator.evaluateBanded())
+     *
+     * @param visualizationWriter writes the visualization image
+     */
+    public void setVisualizationWriter(VisualizationWriter visualizationWriter) {
+        this.visualizationWriter = visualizationWriter;
+    }
+
+    /**
+     * Write the results of a threshold sweep as CSV file, one line per results with the matching
+     * threshold in the second column. If the file already exists it appends the new lines only
+     *
+     * @param fName   file name for the CSV results file
+     * @param results the results of each threshold
+     */
+    public static void writeSweepToCSV(String fName, List<Results> results) {
+        write(fName, results, true);
+    }
+
+    /**
+     * Write several results as CSV file, one line per results. If the file already exists it
+     * appends the new lines only
+     *
+     * @param fName   file name for the CSV results file
+     * @param results the results
+     */
+    public static void writeToCSV(String fName, List<Results> results) {
+        write(fName, results, false);
+    }
+
     /**
      * Write results as CSV file. If the file already exists it appends a new line only
      * @param fName file name for the CSV results file
      */
     public void writeToCSV(String fName) {
+        write(fName, Collections.singletonList(this), false);
+    }
 
-        File file = new File(fName);
+    /**
+     * @return the wall time of the phases and the counters of the evaluation, null if not instrumented
+     */
+    public Stats getStats() {
+        return stats;
+    }
 
-        // If the file does not exist, create it and write the name of the metrics
-        if(!file.exists()){
-            StringBuilder s = new StringBuilder();
-            s.append(FILENAME.split("\\.")[1]).append(",");
-
-            s.append(LINES_NB_TRUTH.split("\\.")[1]).append(",");
-            s.append(LINES_NB_PROPOSED.split("\\.")[1]).append(",");
-            s.append(LINES_NB_CORRECT.split("\\.")[1]).append(",");
-
-            s.append(LINES_IU.split("\\.")[1]).append(",");
-            s.append(LINES_FMEASURE.split("\\.")[1]).append(",");
-            s.append(LINES_RECALL.split("\\.")[1]).append(",");
-            s.append(LINES_PRECISION.split("\\.")[1]).append(",");
-
-            s.append(MATCHED_PIXEL_IU.split("\\.")[1]).append(",");
-            s.append(MATCHED_PIXEL_FMEASURE.split("\\.")[1]).append(",");
-            s.append(MATCHED_PIXEL_PRECISION.split("\\.")[1]).append(",");
-            s.append(MATCHED_PIXEL_RECALL.split("\\.")[1]).append(",");
-
-            s.append(PIXEL_IU.split("\\.")[1]).append(",");
-            s.append(PIXEL_FMEASURE.split("\\.")[1]).append(",");
-            s.append(PIXEL_PRECISION.split("\\.")[1]).append(",");
-            s.append(PIXEL_RECALL.split("\\.")[1]).append("\n");
-
-            try {
-                Files.write(Paths.get(fName), s.toString().getBytes());
-                logger.debug("Created " + fName);
-            } catch (IOException e) {
-                logger.error(e.getMessage());
-            }
-        }
+    public void setStats(Stats stats) {
+        this.stats = stats;
+    }
 
-        StringBuilder s = new StringBuilder();
-        s.append(results.get(FILENAME)).append(",");
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE
+    ///////////////////////////////////////////////////////////////////////////////////////////////
 
-        s.append(String.format("%2.4f", Double.parseDouble(results.get(LINES_NB_TRUTH)))).append(",");
-        s.append(String.format("%2.4f", Double.parseDouble(results.get(LINES_NB_PROPOSED)))).append(",");
-        s.append(String.format("%2.4f", Double.parseDouble(results.get(LINES_NB_CORRECT)))).append(",");
+    /**
+     * Header of the CSV files (without, resp. with, the matching threshold)
+     */
+    private static final String CSV_HEADER = header(false);
+    private static final String SWEEP_CSV_HEADER = header(true);
+
+    /**
+     * @return true if the key is one of the numerical measures
+     */
+    private static boolean isMeasure(String key) {
+        return key.equals(MATCHING_THRESHOLD) || Arrays.asList(MEASURES).contains(key);
+    }
+
+    /**
+     * @return the line of the names of the metrics
+     */
+    private static String header(boolean withThreshold) {
+        StringBuilder s = new StringBuilder();
+        s.append(FILENAME.split("\\.")[1]);
+        if (withThreshold) {
+            s.append(",").append(MATCHING_THRESHOLD.split("\\.")[1]);
+        }
+        for (String measure : MEASURES) {
+            s.append(",").append(measure.split("\\.")[1]);
+        }
+        return s.append("\n").toString();
+    }
 
-        s.append(String.format("%2.4f", Double.parseDouble(results.get(LINES_IU)))).append(",");
-        s.append(String.format("%2.4f", Double.parseDouble(results.get(LINES_FMEASURE)))).append(",");
-        s.append(String.format("%2.4f", Double.parseDouble(results.get(LINES_RECALL)))).append(",");
-        s.append(String.format("%2.4f", Double.parseDouble(results.get(LINES_PRECISION)))).append(",");
+    /**
+     * Write results as CSV file, creating it with the header if it does not exist
+     *
+     * @param fName         file name for the CSV results file
+     * @param results       the results, one line each
+     * @param withThreshold whether the matching threshold is written in the second column
+     */
+    private static void write(String fName, List<Results> results, boolean withThreshold) {
+        StringBuilder s = new StringBuilder();
 
-        s.append(String.format("%2.4f", Double.parseDouble(results.get(MATCHED_PIXEL_IU)))).append(",");
-        s.append(String.format("%2.4f", Double.parseDouble(results.get(MATCHED_PIXEL_FMEASURE)))).append(",");
-        s.append(String.format("%2.4f", Double.parseDouble(results.get(MATCHED_PIXEL_PRECISION)))).append(",");
-        s.append(String.format("%2.4f", Double.parseDouble(results.get(MATCHED_PIXEL_RECALL)))).append(",");
+        // If the file does not exist, create it and write the name of the metrics
+        boolean create = !new File(fName).exists();
+        if (create) {
+            s.append(withThreshold ? SWEEP_CSV_HEADER : CSV_HEADER);
+        }
 
-        s.append(String.format("%2.4f", Double.parseDouble(results.get(PIXEL_IU)))).append(",");
-        s.append(String.format("%2.4f", Double.parseDouble(results.get(PIXEL_FMEASURE)))).append(",");
-        s.append(String.format("%2.4f", Double.parseDouble(results.get(PIXEL_PRECISION)))).append(",");
-        s.append(String.format("%2.4f", Double.parseDouble(results.get(PIXEL_RECALL)))).append("\n");
+        for (Results r : results) {
+            s.append(r.get(FILENAME));
+            if (withThreshold) {
+                Metrics.appendDecimal(s.append(","), r.getMeasure(MATCHING_THRESHOLD));
+            }
+            for (String measure : MEASURES) {
+                Metrics.appendDecimal(s.append(","), r.getMeasure(measure));
+            }
+            s.append("\n");
+        }
 
         try {
-            Files.write(Paths.get(fName), s.toString().getBytes(), StandardOpenOption.APPEND);
-            logger.debug("Appended results on" + fName);
+            if (create) {
+                Files.write(Paths.get(fName), s.toString().getBytes());
+                logger.debug("Created " + fName);
+            } else {
+                Files.write(Paths.get(fName), s.toString().getBytes(), StandardOpenOption.APPEND);
+                logger.debug("Appended results on" + fName);
+            }
         } catch (IOException e) {
             logger.error(e.getMessage());
         }
+    }
 
+    /**
+     * Writes the visualization of the results (and its overlap with the original image) to PNG files
+     * without holding them in memory
+     */
+    public interface VisualizationWriter {
+        /**
+         * @param visualization the PNG file of the visualization
+         * @param original      the path of the original image, null if none
+         * @param overlap       the PNG file of the overlap with the original image (if any)
+         * @param format        the settings of the PNG encoder
+         * @throws IOException if an image cannot be read or written
+         */
+        void write(File visualization, String original, File overlap, PngFormat format) throws IOException;
     }
 }
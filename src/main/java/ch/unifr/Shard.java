@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.apache.log4j.Logger;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shard class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief One of N disjoint parts of a list of pages, for evaluating a dataset on several machines
+ * The pages are assigned to the shards by estimated cost: the pages are sorted by decreasing cost
+ * (ties broken by name) and each is given to the least loaded shard so far (ties broken by index).
+ * The cost of a page is estimated from the size of its GT image (read from the image header only)
+ * and the number of its GT and predicted polygons. The assignment only depends on the list of pages
+ * and on their files, such that every machine computes the same assignment without coordination. A
+ * file which cannot be read would make the assignment differ between the machines: the whole shard
+ * then fails instead of evaluating an assignment of its own.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class Shard {
+
+    /**
+     * Log4j logger
+     */
+    private static final Logger logger = Logger.getLogger(Shard.class);
+    /**
+     * Estimated cost of a polygon and of a candidate pair of polygons, in pixels
+     */
+    private static final long POLYGON_COST = 4096;
+    private static final long PAIR_COST = 64;
+    /**
+     * Index of the shard (from 1 to count) and number of shards
+     */
+    private final int index;
+    private final int count;
+
+    /**
+     * Build a shard
+     *
+     * @param index the index of the shard, from 1 to count
+     * @param count the number of shards
+     * @throws IllegalArgumentException if the index is not within 1..count
+     */
+    public Shard(int index, int count) {
+        if (count < 1 || index < 1 || index > count) {
+            throw new IllegalArgumentException("invalid shard " + index + "/" + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Parse a shard selector i/N
+     *
+     * @param value the selector, e.g. 2/8
+     * @return the shard
+     * @throws IllegalArgumentException if the selector cannot be parsed
+     */
+    public static Shard parse(String value) {
+        String[] fields = value.trim().split("/");
+        if (fields.length != 2) {
+            throw new IllegalArgumentException("expected i/N: " + value);
+        }
+        return new Shard(Integer.parseInt(fields[0].trim()), Integer.parseInt(fields[1].trim()));
+    }
+
+    /**
+     * Estimate the cost of evaluating a page, from the header of its GT image and the number of
+     * TextLine elements of its XML files (which are not parsed further)
+     *
+     * @param page the page
+     * @return the estimated cost, in pixels
+     * @throws IOException if a file of the page cannot be read
+     */
+    public static long estimateCost(Page page) throws IOException {
+        Dimension size = Page.readImageSize(page.getImageGroundTruth());
+        long area = (long) size.width * size.height;
+        long nbTruth = ImageLinePageDataset.countLines(page.getXmlGroundTruth());
+        long nbPrediction = ImageLinePageDataset.countLines(page.getXmlPrediction());
+
+        return area + POLYGON_COST * (nbTruth + nbPrediction) + PAIR_COST * nbTruth * nbPrediction;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Select the pages of this shard
+     *
+     * @param pages all the pages
+     * @return the pages assigned to this shard, in the order of the list
+     * @throws IOException if a file of a page cannot be read, which would change the assignment
+     */
+    public List<Page> select(List<Page> pages) throws IOException {
+        logger.trace(Thread.currentThread().getStackTrace()[1].getMethodName());
+
+        long[] costs = new long[pages.size()];
+        Integer[] order = new Integer[pages.size()];
+        for (int i = 0; i < order.length; i++) {
+            costs[i] = estimateCost(pages.get(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int c = Long.compare(costs[b], costs[a]);
+            if (c == 0) {
+                c = pages.get(a).getName().compareTo(pages.get(b).getName());
+            }
+            return (c != 0) ? c : Integer.compare(a, b);
+        });
+
+        // Greedy assignment of the most expensive pages first to the least loaded shard
+        long[] loads = new long[count];
+        boolean[] selected = new boolean[pages.size()];
+        for (int i : order) {
+            int shard = 0;
+            for (int s = 1; s < count; s++) {
+                if (loads[s] < loads[shard]) {
+                    shard = s;
+                }
+            }
+            loads[shard] += costs[i];
+            selected[i] = (shard == index - 1);
+        }
+
+        List<Page> shardPages = new ArrayList<>();
+        for (int i = 0; i < selected.length; i++) {
+            if (selected[i]) {
+                shardPages.add(pages.get(i));
+            }
+        }
+        logger.info("Shard " + this + ": " + shardPages.size() + " of " + pages.size() + " pages, estimated cost "
+                + loads[index - 1] + " of " + Arrays.stream(loads).sum());
+        return shardPages;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SpanMask class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Run-length encoding of a set of pixels, as the sorted and disjoint spans [from, to) of each row
+ * Line polygons and the foreground of the GT are coherent along the rows: a polygon has typically one or two
+ * spans per row and the foreground a few runs per character, such that counting the pixels of an intersection
+ * by merging the spans costs in the number of spans rather than in the area (see countIntersection()).
+ * The spans of a polygon are those of the scanline fill of PolygonMask, hence contain exactly the same pixels.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class SpanMask {
+
+    /**
+     * First row and number of rows of the mask
+     */
+    private final int fromY;
+    private final int rows;
+    /**
+     * Index of the first span of each row, rowStarts[rows] being the number of spans
+     */
+    private final int[] rowStarts;
+    /**
+     * First pixel (included) and last pixel (excluded) of every span, sorted by row then by x
+     */
+    private final int[] froms;
+    private final int[] tos;
+
+    /**
+     * Encode the pixels contained by a rasterized polygon
+     *
+     * @param mask the rasterized polygon
+     */
+    public SpanMask(PolygonMask mask) {
+        this.fromY = mask.getFromY();
+        this.rows = mask.getRows();
+        Builder builder = new Builder(fromY, rows);
+        mask.scanSpans(builder::add);
+        this.rowStarts = builder.rowStarts();
+        this.froms = Arrays.copyOf(builder.froms, builder.size);
+        this.tos = Arrays.copyOf(builder.tos, builder.size);
+    }
+
+    /**
+     * Encode the runs of countable foreground of a GT image
+     *
+     * @param foreground the countable foreground of the GT image
+     */
+    public SpanMask(ForegroundMask foreground) {
+        this.fromY = foreground.getFromY();
+        this.rows = foreground.getRows();
+        Builder builder = new Builder(fromY, rows);
+        long[] bits = foreground.getBits();
+        int width = foreground.getWidth();
+        int wordsPerRow = (width + 63) >> 6;
+        for (int r = 0; r < rows; r++) {
+            int rowStart = r * wordsPerRow;
+            int x = nextBit(bits, rowStart, wordsPerRow, 0, true);
+            while (x < width) {
+                int end = Math.min(nextBit(bits, rowStart, wordsPerRow, x, false), width);
+                builder.add(fromY + r, x, end);
+                x = nextBit(bits, rowStart, wordsPerRow, end, true);
+            }
+        }
+        this.rowStarts = builder.rowStarts();
+        this.froms = Arrays.copyOf(builder.froms, builder.size);
+        this.tos = Arrays.copyOf(builder.tos, builder.size);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Encode a list of rasterized polygons, preserving the order
+     *
+     * @param masks the rasterized polygons
+     * @return the list of span masks (one per polygon)
+     */
+    public static List<SpanMask> encode(List<PolygonMask> masks) {
+        List<SpanMask> spans = new ArrayList<>(masks.size());
+        for (PolygonMask mask : masks) {
+            spans.add(new SpanMask(mask));
+        }
+        return spans;
+    }
+
+    /**
+     * Count the pixels in both masks
+     *
+     * @param a the first mask
+     * @param b the second mask
+     * @return the number of pixels of the intersection
+     */
+    public static int countIntersection(SpanMask a, SpanMask b) {
+        int count = 0;
+        int y0 = Math.max(a.fromY, b.fromY);
+        int y1 = Math.min(a.fromY + a.rows, b.fromY + b.rows);
+        for (int y = y0; y < y1; y++) {
+            int i = a.rowStarts[y - a.fromY];
+            int iEnd = a.rowStarts[y - a.fromY + 1];
+            int j = b.rowStarts[y - b.fromY];
+            int jEnd = b.rowStarts[y - b.fromY + 1];
+            if (i == iEnd || j == jEnd) {
+                continue;
+            }
+            // Skip the spans ending before the first pixel of the other mask on this row
+            i = a.firstEndingAfter(i, iEnd, b.froms[j]);
+            j = b.firstEndingAfter(j, jEnd, a.froms[a.rowStarts[y - a.fromY]]);
+
+            while (i < iEnd && j < jEnd) {
+                int lo = Math.max(a.froms[i], b.froms[j]);
+                int hi = Math.min(a.tos[i], b.tos[j]);
+                if (lo < hi) {
+                    count += hi - lo;
+                }
+                // Advance the span ending first (both if they end together)
+                if (a.tos[i] == hi) {
+                    i++;
+                }
+                if (b.tos[j] == hi) {
+                    j++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count the pixels in the three masks
+     *
+     * @param a the first mask
+     * @param b the second mask
+     * @param c the third mask (typically the foreground)
+     * @return the number of pixels of the intersection
+     */
+    public static int countIntersection(SpanMask a, SpanMask b, SpanMask c) {
+        int count = 0;
+        int y0 = Math.max(Math.max(a.fromY, b.fromY), c.fromY);
+        int y1 = Math.min(Math.min(a.fromY + a.rows, b.fromY + b.rows), c.fromY + c.rows);
+        for (int y = y0; y < y1; y++) {
+            int i = a.rowStarts[y - a.fromY];
+            int iEnd = a.rowStarts[y - a.fromY + 1];
+            int j = b.rowStarts[y - b.fromY];
+            int jEnd = b.rowStarts[y - b.fromY + 1];
+            int k = c.rowStarts[y - c.fromY];
+            int kEnd = c.rowStarts[y - c.fromY + 1];
+            if (i == iEnd || j == jEnd || k == kEnd) {
+                continue;
+            }
+            // Skip the spans of the third mask ending before the first pixel common to the first two
+            k = c.firstEndingAfter(k, kEnd, Math.max(a.froms[i], b.froms[j]));
+
+            while (i < iEnd && j < jEnd && k < kEnd) {
+                int lo = Math.max(Math.max(a.froms[i], b.froms[j]), c.froms[k]);
+                int hi = Math.min(Math.min(a.tos[i], b.tos[j]), c.tos[k]);
+                if (lo < hi) {
+                    count += hi - lo;
+                }
+                // Advance the spans ending first
+                if (a.tos[i] == hi) {
+                    i++;
+                }
+                if (b.tos[j] == hi) {
+                    j++;
+                }
+                if (c.tos[k] == hi) {
+                    k++;
+                }
+            }
+        }
+        return count;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return the number of pixels of the mask
+     */
+    public int getArea() {
+        int area = 0;
+        for (int s = 0; s < froms.length; s++) {
+            area += tos[s] - froms[s];
+        }
+        return area;
+    }
+
+    /**
+     * @return the number of spans of the mask
+     */
+    public int getSpanCount() {
+        return froms.length;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Binary search of the first span of a row ending after a pixel
+     *
+     * @param from first span of the row to search
+     * @param to   last span (excluded) of the row to search
+     * @param x    the pixel
+     * @return the index of the first span in [from, to) with tos > x, to if none
+     */
+    private int firstEndingAfter(int from, int to, int x) {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tos[mid] <= x) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Find the next set (or clear) bit of a row of bits
+     *
+     * @param bits        the row-major bits
+     * @param rowStart    the index of the first word of the row
+     * @param wordsPerRow the number of words of the row
+     * @param x           the first pixel to look at
+     * @param set         true to find a set bit, false for a clear one
+     * @return the pixel of the next set (or clear) bit, wordsPerRow * 64 if none
+     */
+    private static int nextBit(long[] bits, int rowStart, int wordsPerRow, int x, boolean set) {
+        int w = x >> 6;
+        if (w >= wordsPerRow) {
+            return wordsPerRow << 6;
+        }
+        long word = (set ? bits[rowStart + w] : ~bits[rowStart + w]) & (-1L << x);
+        while (word == 0) {
+            if (++w == wordsPerRow) {
+                return wordsPerRow << 6;
+            }
+            word = set ? bits[rowStart + w] : ~bits[rowStart + w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Accumulates the spans of a mask row by row, merging adjacent spans
+     */
+    private static final class Builder {
+        private final int fromY;
+        private final int[] rowStarts;
+        private int[] froms = new int[64];
+        private int[] tos = new int[64];
+        private int size = 0;
+        private int lastRow;
+
+        private Builder(int fromY, int rows) {
+            this.fromY = fromY;
+            this.rowStarts = new int[rows + 1];
+            this.lastRow = 0;
+        }
+
+        /**
+         * Add the span [from, to) of the row y, rows being added by increasing y and spans by increasing x
+         */
+        private void add(int y, int from, int to) {
+            int r = y - fromY;
+            while (lastRow < r) {
+                rowStarts[++lastRow] = size;
+            }
+            if (size > rowStarts[r] && tos[size - 1] == from) {
+                tos[size - 1] = to;
+                return;
+            }
+            if (size == froms.length) {
+                froms = Arrays.copyOf(froms, size * 2);
+                tos = Arrays.copyOf(tos, size * 2);
+            }
+            froms[size] = from;
+            tos[size] = to;
+            size++;
+        }
+
+        /**
+         * @return the index of the first span of each row, terminated by the number of spans
+         */
+        private int[] rowStarts() {
+            while (lastRow < rowStarts.length - 1) {
+                rowStarts[++lastRow] = size;
+            }
+            return rowStarts;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stats class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Wall time of the phases and counters of the evaluation of a page (or of a whole run)
+ * The counters are atomic, such that the threads evaluating a page in parallel can update them.
+ * Instrumentation is disabled by passing a null Stats: the static helpers start(), stop() and add()
+ * then do nothing, not even reading the clock.
+ */
+@SuppressWarnings({"WeakerAccess"})
+public class Stats {
+
+    /**
+     * Phases of the evaluation
+     */
+    public enum Phase {
+        ADMISSION, PNG_DECODE, XML_PARSE, CACHE_LOAD, FOREGROUND, RASTERIZE, PAIR_SCORING, MATCHING, COUNTING,
+        VISUALIZATION, OVERLAP, PNG_ENCODE, CSV_WRITE;
+
+        /**
+         * @return the name of the phase in the exports
+         */
+        public String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Counters of the evaluation
+     */
+    public enum Counter {
+        /**
+         * Pages evaluated
+         */
+        PAGES,
+        /**
+         * Pairs of GT and predicted polygons whose overlap is measured
+         */
+        CANDIDATE_PAIRS,
+        /**
+         * Pixels scanned for scoring the candidate pairs and counting the matched lines
+         */
+        PIXELS_VISITED,
+        /**
+         * Pairs of GT and predicted polygons with a non-zero score
+         */
+        POSSIBILITIES,
+        /**
+         * Bytes of the files written (images and CSV)
+         */
+        BYTES_WRITTEN;
+
+        /**
+         * @return the name of the counter in the exports
+         */
+        public String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Prefix of the Prometheus metrics
+     */
+    private static final String PROMETHEUS_PREFIX = "linesegmentation_";
+    /**
+     * Wall time (in ns) and number of calls of each phase
+     */
+    private final AtomicLongArray nanos = new AtomicLongArray(Phase.values().length);
+    private final AtomicLongArray calls = new AtomicLongArray(Phase.values().length);
+    /**
+     * Value of each counter
+     */
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC STATIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Start timing a phase
+     *
+     * @param stats the stats, null if disabled
+     * @return the start time to pass to stop()
+     */
+    public static long start(Stats stats) {
+        return (stats != null) ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Stop timing a phase
+     *
+     * @param stats the stats, null if disabled
+     * @param phase the phase
+     * @param start the start time returned by start()
+     */
+    public static void stop(Stats stats, Phase phase, long start) {
+        if (stats != null) {
+            stats.record(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Increment a counter
+     *
+     * @param stats   the stats, null if disabled
+     * @param counter the counter
+     * @param value   the increment
+     */
+    public static void add(Stats stats, Counter counter, long value) {
+        if (stats != null) {
+            stats.counters.addAndGet(counter.ordinal(), value);
+        }
+    }
+
+    /**
+     * Export stats as JSON: the stats of every page and their total
+     *
+     * @param pages the stats of the pages, by name
+     * @param total the total stats
+     * @return the JSON document
+     */
+    public static String toJson(Map<String, Stats> pages, Stats total) {
+        StringWriter s = new StringWriter();
+        try (JsonWriter json = new JsonWriter(s)) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("total");
+            total.writeJson(json);
+            json.name("pages").beginObject();
+            for (Map.Entry<String, Stats> page : pages.entrySet()) {
+                json.name(page.getKey());
+                page.getValue().writeJson(json);
+            }
+            json.endObject();
+            json.endObject();
+        } catch (IOException e) {
+            // Cannot happen with a StringWriter
+            throw new IllegalStateException(e);
+        }
+        return s.append("\n").toString();
+    }
+
+    /**
+     * Export stats in the Prometheus text format: the total as counters, and the stats of every page
+     * as gauges labelled with the name of the page
+     *
+     * @param pages the stats of the pages, by name
+     * @param total the total stats
+     * @return the Prometheus text
+     */
+    public static String toPrometheus(Map<String, Stats> pages, Stats total) {
+        StringBuilder s = new StringBuilder();
+
+        s.append("# HELP ").append(PROMETHEUS_PREFIX).append("phase_seconds_total Wall time spent in each phase of the evaluation\n");
+        s.append("# TYPE ").append(PROMETHEUS_PREFIX).append("phase_seconds_total counter\n");
+        for (Phase phase : Phase.values()) {
+            s.append(PROMETHEUS_PREFIX).append("phase_seconds_total{phase=\"").append(phase.key()).append("\"} ")
+                    .append(total.getSeconds(phase)).append("\n");
+        }
+        s.append("# HELP ").append(PROMETHEUS_PREFIX).append("phase_calls_total Number of executions of each phase of the evaluation\n");
+        s.append("# TYPE ").append(PROMETHEUS_PREFIX).append("phase_calls_total counter\n");
+        for (Phase phase : Phase.values()) {
+            s.append(PROMETHEUS_PREFIX).append("phase_calls_total{phase=\"").append(phase.key()).append("\"} ")
+                    .append(total.getCalls(phase)).append("\n");
+        }
+        for (Counter counter : Counter.values()) {
+            s.append("# TYPE ").append(PROMETHEUS_PREFIX).append(counter.key()).append("_total counter\n");
+            s.append(PROMETHEUS_PREFIX).append(counter.key()).append("_total ").append(total.get(counter)).append("\n");
+        }
+
+        if (!pages.isEmpty()) {
+            s.append("# HELP ").append(PROMETHEUS_PREFIX).append("page_phase_seconds Wall time spent in each phase of the evaluation of a page\n");
+            s.append("# TYPE ").append(PROMETHEUS_PREFIX).append("page_phase_seconds gauge\n");
+            for (Map.Entry<String, Stats> page : pages.entrySet()) {
+                for (Phase phase : Phase.values()) {
+                    if (page.getValue().getCalls(phase) > 0) {
+                        s.append(PROMETHEUS_PREFIX).append("page_phase_seconds{page=\"").append(escape(page.getKey()))
+                                .append("\",phase=\"").append(phase.key()).append("\"} ")
+                                .append(page.getValue().getSeconds(phase)).append("\n");
+                    }
+                }
+            }
+            s.append("# HELP ").append(PROMETHEUS_PREFIX).append("page_counter Counters of the evaluation of a page\n");
+            s.append("# TYPE ").append(PROMETHEUS_PREFIX).append("page_counter gauge\n");
+            for (Map.Entry<String, Stats> page : pages.entrySet()) {
+                for (Counter counter : Counter.values()) {
+                    s.append(PROMETHEUS_PREFIX).append("page_counter{page=\"").append(escape(page.getKey()))
+                            .append("\",counter=\"").append(counter.key()).append("\"} ")
+                            .append(page.getValue().get(counter)).append("\n");
+                }
+            }
+        }
+        return s.toString();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PUBLIC
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Record an execution of a phase
+     *
+     * @param phase the phase
+     * @param nanos its wall time in ns
+     */
+    public void record(Phase phase, long nanos) {
+        this.nanos.addAndGet(phase.ordinal(), nanos);
+        this.calls.incrementAndGet(phase.ordinal());
+    }
+
+    /**
+     * Add the stats of another page (or run) to these ones
+     *
+     * @param other the other stats
+     * @return these stats
+     */
+    public Stats merge(Stats other) {
+        for (int i = 0; i < nanos.length(); i++) {
+            nanos.addAndGet(i, other.nanos.get(i));
+            calls.addAndGet(i, other.calls.get(i));
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.addAndGet(i, other.counters.get(i));
+        }
+        return this;
+    }
+
+    /**
+     * @return the wall time spent in a phase, in seconds
+     */
+    public double getSeconds(Phase phase) {
+        return nanos.get(phase.ordinal()) / 1e9;
+    }
+
+    /**
+     * @return the number of executions of a phase
+     */
+    public long getCalls(Phase phase) {
+        return calls.get(phase.ordinal());
+    }
+
+    /**
+     * @return the value of a counter
+     */
+    public long get(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PRIVATE
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Write these stats as a JSON object {"phases": {phase: {"seconds", "calls"}}, "counters": {counter: value}}
+     */
+    private void writeJson(JsonWriter json) throws IOException {
+        json.beginObject();
+        json.name("phases").beginObject();
+        for (Phase phase : Phase.values()) {
+            if (getCalls(phase) > 0) {
+                json.name(phase.key()).beginObject();
+                json.name("seconds").value(getSeconds(phase));
+                json.name("calls").value(getCalls(phase));
+                json.endObject();
+            }
+        }
+        json.endObject();
+        json.name("counters").beginObject();
+        for (Counter counter : Counter.values()) {
+            json.name(counter.key()).value(get(counter));
+        }
+        json.endObject();
+        json.endObject();
+    }
+
+    /**
+     * @return a Prometheus label value with the backslashes, quotes and line feeds escaped
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * BandReaderTest class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Checks the bands read against the images read by ImageIO
+ * The PNG files are of every type of TestImages.PNG_TYPES, read in bands of one row, of an odd number of
+ * rows, higher than the image, and read again from the top.
+ */
+public class BandReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void bandsMatchImageIO() throws IOException {
+        BufferedImage image = TestImages.random(new Random(8), 131, 97, BufferedImage.TYPE_INT_RGB, 0);
+        for (String type : TestImages.PNG_TYPES) {
+            File file = folder.newFile(type + ".png");
+            TestImages.writeAs(image, type, file);
+            BufferedImage expected = ImageIO.read(file);
+
+            for (int bandHeight : new int[]{1, 7, 200}) {
+                try (BandReader reader = new BandReader(file.getPath())) {
+                    assertEquals(131, reader.getWidth());
+                    assertEquals(97, reader.getHeight());
+                    for (int fromY = 0; fromY < 97; fromY += bandHeight) {
+                        int toY = Math.min(97, fromY + bandHeight);
+                        BufferedImage band = reader.read(fromY, toY);
+                        assertEquals(type + " type", expected.getType(), band.getType());
+                        TestImages.assertSamePixels(type + " rows " + fromY + " to " + toY, expected.getSubimage(0, fromY, 131, toY - fromY), band);
+                    }
+
+                    // Reading a band above the last one starts over
+                    TestImages.assertSamePixels(type + " again", expected.getSubimage(0, 3, 131, 10), reader.read(3, 13));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LineSegmentationEvaluatorTest class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Checks the measures and the visualization of every engine, on one or several threads, against the
+ * ReferenceEvaluator
+ * The pages are synthetic and seeded (see SyntheticPage): overlapping lines, split and merged lines, and
+ * copies of polygons whose ties must be broken as the stable sort of the reference does. The banded evaluation
+ * is checked against evaluate(), with GT images of every type of TestImages.PNG_TYPES.
+ */
+public class LineSegmentationEvaluatorTest {
+
+    /**
+     * The matching thresholds tested, including the bounds
+     */
+    static final double[] THRESHOLDS = {0.0, 0.5, 0.75, 0.9, 1.0};
+    /**
+     * The numbers of threads tested
+     */
+    static final int[] THREADS = {1, 3};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void measuresMatchTheReference() {
+        for (int seed = 0; seed < 20; seed++) {
+            SyntheticPage page = SyntheticPage.random(new Random(seed), 200, 160);
+            for (double threshold : THRESHOLDS) {
+                Results expected = new ReferenceEvaluator().evaluate(page.image, page.groundTruth, page.prediction, threshold);
+                for (LineSegmentationEvaluator.Engine engine : LineSegmentationEvaluator.Engine.values()) {
+                    for (int threads : THREADS) {
+                        try (LineSegmentationEvaluator evaluator = new LineSegmentationEvaluator(engine, threads)) {
+                            Results results = evaluator.evaluate(page.image, page.groundTruth, page.prediction, threshold);
+                            assertSameMeasures("page " + seed + ", " + engine + " on " + threads + " threads at " + threshold, expected, results);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sweepMatchesTheReference() {
+        for (int seed = 100; seed < 110; seed++) {
+            SyntheticPage page = SyntheticPage.random(new Random(seed), 200, 160);
+            for (LineSegmentationEvaluator.Engine engine : LineSegmentationEvaluator.Engine.values()) {
+                for (int threads : THREADS) {
+                    try (LineSegmentationEvaluator evaluator = new LineSegmentationEvaluator(engine, threads)) {
+                        List<Results> sweep = evaluator.evaluate(page.image, page.groundTruth, page.prediction, THRESHOLDS);
+                        assertEquals(THRESHOLDS.length, sweep.size());
+                        for (int i = 0; i < THRESHOLDS.length; i++) {
+                            Results expected = new ReferenceEvaluator().evaluate(page.image, page.groundTruth, page.prediction, THRESHOLDS[i]);
+                            assertSameMeasures("page " + seed + ", " + engine + " on " + threads + " threads at " + THRESHOLDS[i], expected, sweep.get(i));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void visualizationMatchesTheReference() {
+        long yellow = 0;
+        for (int seed = 200; seed < 210; seed++) {
+            SyntheticPage page = SyntheticPage.random(new Random(seed), 200, 160);
+            for (LineSegmentationEvaluator.Engine engine : LineSegmentationEvaluator.Engine.values()) {
+                for (int threads : THREADS) {
+                    try (LineSegmentationEvaluator evaluator = new LineSegmentationEvaluator(engine, threads)) {
+                        List<Results> sweep = evaluator.evaluate(page.image, page.groundTruth, page.prediction, THRESHOLDS);
+                        for (int i = 0; i < THRESHOLDS.length; i++) {
+                            ReferenceEvaluator reference = new ReferenceEvaluator();
+                            reference.evaluate(page.image, page.groundTruth, page.prediction, THRESHOLDS[i]);
+                            TestImages.assertSamePixels("page " + seed + ", " + engine + " on " + threads + " threads at " + THRESHOLDS[i],
+                                    reference.getEvalImage(), sweep.get(i).getVisualization());
+                            yellow += count(reference.getEvalImage(), 0xFFFF00);
+                        }
+                    }
+                }
+            }
+        }
+        // Otherwise the pixels of several lines would not be tested
+        assertTrue(yellow > 0);
+    }
+
+    @Test
+    public void tiesAreBrokenInTheOrderOfThePrediction() {
+        // A is covered as much by P1 as by P2 (IU 30/50), B only by P2: the first of them in the prediction gets A
+        BufferedImage image = new BufferedImage(100, 40, BufferedImage.TYPE_INT_RGB);
+        Polygon a = rectangle(20, 10, 60, 30);
+        Polygon b = rectangle(65, 10, 90, 30);
+        Polygon p1 = rectangle(10, 10, 50, 30);
+        Polygon p2 = rectangle(30, 10, 70, 30);
+
+        double[] pixelPrecision = new double[2];
+        for (int order = 0; order < 2; order++) {
+            List<Polygon> groundTruth = Arrays.asList(a, b);
+            List<Polygon> prediction = (order == 0) ? Arrays.asList(p1, p2) : Arrays.asList(p2, p1);
+            Results expected = new ReferenceEvaluator().evaluate(image, groundTruth, prediction, 0.5);
+            for (LineSegmentationEvaluator.Engine engine : LineSegmentationEvaluator.Engine.values()) {
+                for (int threads : THREADS) {
+                    try (LineSegmentationEvaluator evaluator = new LineSegmentationEvaluator(engine, threads)) {
+                        Results results = evaluator.evaluate(image, groundTruth, prediction, 0.5);
+                        assertSameMeasures("order " + order + ", " + engine + " on " + threads + " threads", expected, results);
+                    }
+                }
+            }
+            pixelPrecision[order] = expected.getMeasure(Results.PIXEL_PRECISION);
+        }
+        // Otherwise the order would not matter
+        assertNotEquals(pixelPrecision[0], pixelPrecision[1], 0.0);
+    }
+
+    @Test
+    public void bandedEvaluationMatchesEvaluate() throws IOException {
+        for (int t = 0; t < TestImages.PNG_TYPES.length; t++) {
+            String type = TestImages.PNG_TYPES[t];
+            Random random = new Random(400 + t);
+            SyntheticPage page = SyntheticPage.random(random, 200, 160);
+            File groundTruth = folder.newFile(type + ".png");
+            TestImages.writeAs(page.image, type, groundTruth);
+            File original = folder.newFile(type + "-original.png");
+            BufferedImage originalImage = TestImages.random(random, 200, 160, BufferedImage.TYPE_INT_RGB, 0);
+            ImageIO.write(originalImage, "png", original);
+
+            // Bands of one row, of an odd number of rows and higher than the image
+            for (int bandHeight : new int[]{1, 7, 161}) {
+                for (int threads : THREADS) {
+                    try (LineSegmentationEvaluator evaluator = new LineSegmentationEvaluator(LineSegmentationEvaluator.Engine.COOCCURRENCE, threads)) {
+                        List<Results> expected = evaluator.evaluate(ImageIO.read(groundTruth), page.groundTruth, page.prediction, THRESHOLDS);
+                        List<Results> banded = evaluator.evaluateBanded(groundTruth.getPath(), page.groundTruth, page.prediction, THRESHOLDS, bandHeight, null);
+                        assertEquals(THRESHOLDS.length, banded.size());
+                        for (int i = 0; i < THRESHOLDS.length; i++) {
+                            String name = type + " in bands of " + bandHeight + " on " + threads + " threads at " + THRESHOLDS[i];
+                            assertSameMeasures(name, expected.get(i), banded.get(i));
+
+                            File visualization = new File(folder.getRoot(), "visualization.png");
+                            File overlap = new File(folder.getRoot(), "overlap.png");
+                            banded.get(i).getVisualizationWriter().write(visualization, original.getPath(), overlap, PngFormat.DEFAULT);
+                            BufferedImage expectedVisualization = expected.get(i).getVisualization();
+                            TestImages.assertSamePixels(name + ": visualization", expectedVisualization, ImageIO.read(visualization));
+                            TestImages.assertSamePixels(name + ": overlap", evaluator.overlapEvaluation(expectedVisualization, originalImage), ImageIO.read(overlap));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Assert that all the measures are the same (NaN equal to NaN)
+     */
+    static void assertSameMeasures(String message, Results expected, Results actual) {
+        for (String measure : Results.MEASURES) {
+            assertEquals(message + ": " + measure, expected.getMeasure(measure), actual.getMeasure(measure), 0.0);
+        }
+    }
+
+    /**
+     * @return the number of pixels of the color (RGB)
+     */
+    private static long count(BufferedImage image, int rgb) {
+        long n = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                n += ((image.getRGB(x, y) & 0xFFFFFF) == rgb) ? 1 : 0;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return the rectangle [x0, x1) x [y0, y1) as a polygon
+     */
+    private static Polygon rectangle(int x0, int y0, int x1, int y1) {
+        return new Polygon(new int[]{x0, x1, x1, x0}, new int[]{y0, y0, y1, y1}, 4);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * MetricsTest class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Checks the decimals of the CSV files against String.format()
+ */
+public class MetricsTest {
+
+    @Test
+    public void appendDecimalMatchesStringFormat() {
+        double[] values = {0, -0.0, 1, -1, 0.5, 0.00005, -0.00005, 0.00004999, 0.99995, 0.99994999, 1.00005, 2.00005,
+                0.12345, 0.12355, 1e-300, -1e-300, 1234.5678, 99999.99995, 1e15, 1e20, -1e20, Double.MAX_VALUE,
+                Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double value : values) {
+            assertFormat(value);
+        }
+
+        Random random = new Random(5);
+        for (int n = 0; n < 100000; n++) {
+            // Measures in [0, 1], counts, ratios of counts (often halfway) and any double
+            assertFormat(random.nextDouble());
+            assertFormat(random.nextInt(100000));
+            assertFormat(random.nextInt(100000) / (double) (1 + random.nextInt(100000)));
+            assertFormat((random.nextInt(200001) - 100000) / 20000.0);
+            assertFormat(Double.longBitsToDouble(random.nextLong()));
+        }
+    }
+
+    /**
+     * Assert that the value is written as String.format(Locale.ROOT, "%2.4f", value) writes it
+     */
+    private static void assertFormat(double value) {
+        String expected = String.format(Locale.ROOT, "%2.4f", value);
+        assertEquals("value " + value, expected, Metrics.appendDecimal(new StringBuilder(), value).toString());
+    }
+}
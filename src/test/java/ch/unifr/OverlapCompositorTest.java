@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * OverlapCompositorTest class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Checks the overlaps against the ones drawn with AlphaComposite by the ReferenceEvaluator
+ * The originals are random (seeded) images of the types ImageIO decodes, in memory or streamed in strips.
+ */
+public class OverlapCompositorTest {
+
+    /**
+     * The types of the original images
+     */
+    private static final int[] TYPES = {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_INT_ARGB};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void overlapMatchesAlphaComposite() {
+        Random random = new Random(3);
+        BufferedImage visualization = TestImages.random(random, 150, 90, BufferedImage.TYPE_INT_RGB, 0);
+        for (int type : TYPES) {
+            BufferedImage original = TestImages.random(random, 150, 90, type, 0);
+            BufferedImage expected = new ReferenceEvaluator().overlapEvaluation(visualization, original);
+            TestImages.assertSamePixels("type " + type, expected, OverlapCompositor.overlap(visualization, original));
+        }
+    }
+
+    @Test
+    public void streamedOverlapMatchesAlphaComposite() throws IOException {
+        Random random = new Random(7);
+        BufferedImage visualization = TestImages.random(random, 150, 300, BufferedImage.TYPE_INT_RGB, 0);
+        for (int type : TYPES) {
+            BufferedImage original = TestImages.random(random, 150, 300, type, 0);
+            BufferedImage expected = new ReferenceEvaluator().overlapEvaluation(visualization, original);
+
+            // Strips of random heights, as the banded evaluation writes them
+            File file = folder.newFile("overlap-" + type + ".png");
+            try (PngWriter writer = new PngWriter(file, 150, 300, true, new PngFormat(4, false, 2), null)) {
+                for (int y = 0; y < 300; ) {
+                    int rows = Math.min(1 + random.nextInt(40), 300 - y);
+                    OverlapCompositor.write(visualization.getSubimage(0, y, 150, rows), original.getSubimage(0, y, 150, rows), writer, null);
+                    y += rows;
+                }
+            }
+            TestImages.assertSamePixels("type " + type, expected, ImageIO.read(file));
+        }
+    }
+
+    @Test
+    public void evaluatorOverlapMatchesTheReference() {
+        for (int seed = 300; seed < 305; seed++) {
+            Random random = new Random(seed);
+            SyntheticPage page = SyntheticPage.random(random, 200, 160);
+            BufferedImage original = TestImages.random(random, 200, 160, BufferedImage.TYPE_3BYTE_BGR, 0);
+            ReferenceEvaluator reference = new ReferenceEvaluator();
+            reference.evaluate(page.image, page.groundTruth, page.prediction, 0.75);
+            BufferedImage expected = reference.overlapEvaluation(reference.getEvalImage(), original);
+            for (LineSegmentationEvaluator.Engine engine : LineSegmentationEvaluator.Engine.values()) {
+                for (int threads : LineSegmentationEvaluatorTest.THREADS) {
+                    try (LineSegmentationEvaluator evaluator = new LineSegmentationEvaluator(engine, threads)) {
+                        Results results = evaluator.evaluate(page.image, page.groundTruth, page.prediction, 0.75);
+                        TestImages.assertSamePixels("page " + seed + ", " + engine + " on " + threads + " threads",
+                                expected, evaluator.overlapEvaluation(results.getVisualization(), original));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * PngWriterTest class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Checks the PNG files against ImageIO
+ * The images are random (seeded), in runs of a few colors or of any color, written whole or in strips.
+ */
+public class PngWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void pngFilesAreReadBackByImageIO() throws IOException {
+        Random random = new Random(4);
+        for (int colors : new int[]{2, 3, 16, 200, 0}) {
+            for (int threads : new int[]{1, 3}) {
+                for (int type : new int[]{BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB}) {
+                    // Tall enough to be deflated in several segments
+                    BufferedImage image = TestImages.random(random, 301, 2500, type, colors);
+                    File file = folder.newFile("image-" + colors + "-" + threads + "-" + type + ".png");
+                    PngWriter.write(image, file, new PngFormat(1 + random.nextInt(9), true, threads));
+                    TestImages.assertSamePixels(colors + " colors, " + threads + " threads, type " + type, image, ImageIO.read(file));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void stripsAreReadBackByImageIO() throws IOException {
+        Random random = new Random(6);
+        for (int colors : new int[]{2, 16, 0}) {
+            for (int threads : new int[]{1, 3}) {
+                BufferedImage image = TestImages.random(random, 157, 1200, BufferedImage.TYPE_INT_ARGB, colors);
+                int[] palette = PngWriter.getPalette(image, PngWriter.MAX_PALETTE_SIZE);
+                File file = folder.newFile("strips-" + colors + "-" + threads + ".png");
+                try (PngWriter writer = new PngWriter(file, 157, 1200, true, new PngFormat(4, true, threads), palette)) {
+                    for (int y = 0; y < 1200; ) {
+                        int rows = Math.min(1 + random.nextInt(100), 1200 - y);
+                        writer.write(image.getSubimage(0, y, 157, rows));
+                        y += rows;
+                    }
+                }
+                TestImages.assertSamePixels(colors + " colors, " + threads + " threads", image, ImageIO.read(file));
+            }
+        }
+    }
+
+    @Test
+    public void incompletePngIsNotWritten() throws IOException {
+        File file = new File(folder.getRoot(), "incomplete.png");
+        PngWriter writer = new PngWriter(file, 10, 10, false);
+        writer.write(new BufferedImage(10, 4, BufferedImage.TYPE_INT_RGB));
+        try {
+            writer.close();
+            fail("an incomplete image must not be closed");
+        } catch (IOException e) {
+            // Neither the PNG file nor the temporary file is left
+            assertArrayEquals(new String[0], folder.getRoot().list());
+        }
+    }
+}
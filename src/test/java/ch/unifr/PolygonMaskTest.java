@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * PolygonMaskTest class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Checks the masks of the polygons, whole or in bands, against Polygon.contains()
+ * The polygons are random (seeded): few vertices, often self-intersecting, sometimes with repeated
+ * vertices, horizontal edges or negative coordinates.
+ */
+public class PolygonMaskTest {
+
+    @Test
+    public void maskContainsTheSamePixelsAsPolygon() {
+        Random random = new Random(1);
+        for (int n = 0; n < 500; n++) {
+            Polygon polygon = randomPolygon(random);
+            PolygonMask mask = new PolygonMask(polygon);
+            Rectangle bounds = polygon.getBounds();
+            for (int y = bounds.y - 2; y < bounds.y + bounds.height + 2; y++) {
+                for (int x = bounds.x - 2; x < bounds.x + bounds.width + 2; x++) {
+                    assertEquals(describe(polygon) + " at " + x + "," + y, polygon.contains(x, y), mask.contains(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void wordsHoldTheSamePixelsAsPolygon() {
+        Random random = new Random(2);
+        for (int n = 0; n < 500; n++) {
+            Polygon polygon = randomPolygon(random);
+            PolygonMask mask = new PolygonMask(polygon);
+            Rectangle bounds = polygon.getBounds();
+            for (int y = bounds.y - 1; y <= bounds.y + bounds.height; y++) {
+                for (int w = (bounds.x >> 6) - 1; w <= (bounds.x + bounds.width) >> 6; w++) {
+                    long expected = 0;
+                    for (int bit = 0; bit < 64; bit++) {
+                        expected |= polygon.contains((w << 6) + bit, y) ? 1L << bit : 0L;
+                    }
+                    assertEquals(describe(polygon) + " at row " + y + ", word " + w, expected, mask.getWord(y, w));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bandMaskContainsTheRowsOfTheBand() {
+        Random random = new Random(3);
+        for (int n = 0; n < 500; n++) {
+            Polygon polygon = randomPolygon(random);
+            Rectangle bounds = polygon.getBounds();
+            // Bands of one row, or crossing the bounds, or outside of them
+            int fromY = bounds.y - 3 + random.nextInt(bounds.height + 6);
+            int toY = fromY + ((random.nextInt(3) == 0) ? 1 : 1 + random.nextInt(bounds.height + 6));
+            PolygonMask mask = new PolygonMask(polygon, fromY, toY);
+            for (int y = bounds.y - 2; y < bounds.y + bounds.height + 2; y++) {
+                for (int x = bounds.x - 2; x < bounds.x + bounds.width + 2; x++) {
+                    boolean expected = y >= fromY && y < toY && polygon.contains(x, y);
+                    assertEquals(describe(polygon) + " in rows " + fromY + " to " + toY + " at " + x + "," + y, expected, mask.contains(x, y));
+                }
+            }
+        }
+    }
+
+    /**
+     * A polygon with few vertices, often self-intersecting, sometimes with repeated vertices, horizontal
+     * edges or negative coordinates
+     */
+    static Polygon randomPolygon(Random random) {
+        int originX = random.nextInt(200) - 100;
+        int originY = random.nextInt(200) - 100;
+        int size = 1 + random.nextInt(80);
+        Polygon polygon = new Polygon();
+        int n = 1 + random.nextInt(10);
+        for (int k = 0; k < n; k++) {
+            if (k > 0 && random.nextInt(8) == 0) {
+                polygon.addPoint(polygon.xpoints[k - 1], polygon.ypoints[k - 1]);
+            } else if (k > 0 && random.nextInt(4) == 0) {
+                polygon.addPoint(originX + random.nextInt(size), polygon.ypoints[k - 1]);
+            } else {
+                polygon.addPoint(originX + random.nextInt(size), originY + random.nextInt(size));
+            }
+        }
+        return polygon;
+    }
+
+    /**
+     * @return the vertices of a polygon, for the messages
+     */
+    static String describe(Polygon polygon) {
+        return Arrays.toString(Arrays.copyOf(polygon.xpoints, polygon.npoints))
+                + " " + Arrays.toString(Arrays.copyOf(polygon.ypoints, polygon.npoints));
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * ReferenceEvaluator class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief The evaluation as it was before the optimizations, to check the evaluator against
+ * The matching (Possibility objects, stable sort, HashSet of polygons), the per-pixel evaluation with
+ * Polygon.contains() and getRGB()/setRGB(), the outlines drawn with Graphics.drawPolygon() and the overlap
+ * drawn with AlphaComposite are kept as they were, only the logging is left out. So is the CSV file, but for
+ * the locale of String.format(), fixed to Locale.ROOT as Results does now.
+ */
+class ReferenceEvaluator {
+
+    /**
+     * The visualization of the last evaluation
+     */
+    private BufferedImage evalImage;
+
+    /**
+     * Evaluate the prediction against the GT, as the evaluator used to do
+     *
+     * @param groundTruthImage the GT image (foreground, background and boundary pixels)
+     * @param groundTruth      polygons in the ground truth
+     * @param prediction       polygons given by the method
+     * @param threshold        the matching threshold on the precision and recall of the lines
+     * @return the results, made of put() values
+     */
+    public Results evaluate(BufferedImage groundTruthImage, List<Polygon> groundTruth, List<Polygon> prediction, double threshold) {
+
+        // Match overlapping polygons
+        List<Pair<Polygon, Polygon>> matching = getMatchingPolygons(groundTruthImage, groundTruth, prediction);
+
+        // Init evaluation image
+        evalImage = new BufferedImage(groundTruthImage.getWidth(), groundTruthImage.getHeight(), BufferedImage.TYPE_INT_RGB);
+
+        // Lines count
+        int nbLinesCorrect = 0;
+        int nbLinesMissed = 0;
+        int nbLinesExtra = 0;
+
+        // Pixels counts for the matched lines
+        int matchedTP = 0;
+        int matchedFN = 0;
+        int matchedFP = 0;
+
+        // Pixels counts for the whole image
+        int TP = 0;
+        int FN = 0;
+        int FP = 0;
+
+        // For every match
+        for (Pair<Polygon, Polygon> match : matching) {
+
+            // Extract the predicted and ground truth polygons from the match pair
+            Polygon pp = match.getKey();
+            Polygon pgt = match.getValue();
+
+            // Pixels counts for the line (current match of polygons)
+            int lineTP = 0;
+            int lineFN = 0;
+            int lineFP = 0;
+
+            // Find the bounding box of both polygons, i.e the bounding box of the union
+            Rectangle rp = (pp != null) ? pp.getBounds() : pgt.getBounds();
+            Rectangle rgt = (pgt != null) ? pgt.getBounds() : pp.getBounds();
+            Rectangle union = rgt.union(rp);
+
+            // For every pixel in the bounding box
+            for (int x = (int) union.getMinX(); x < union.getMaxX(); x++) {
+                for (int y = (int) union.getMinY(); y < union.getMaxY(); y++) {
+
+                    // Ignore boundary pixels
+                    if (((groundTruthImage.getRGB(x, y) >> 23) & 0x1) == 1) {
+                        continue;
+                    }
+
+                    // Ignore background pixels
+                    if ((groundTruthImage.getRGB(x, y) & 0x1) == 1) {
+                        continue;
+                    }
+
+                    // Check the type of pixel: TP, FN, FP
+                    boolean isInPp = (pp != null) && pp.contains(x, y);
+                    boolean isInPgt = (pgt != null) && pgt.contains(x, y);
+
+                    if (isInPp && isInPgt) {
+                        lineTP++;
+                    } else if (!isInPp && isInPgt) {
+                        lineFN++;
+                    } else if (isInPp && !isInPgt) {
+                        lineFP++;
+                    }
+
+                    // Update visualization image (yellow if another line already painted the pixel otherwise)
+                    if (isInPgt || isInPp) {
+                        int color = 0x0;
+                        if (isInPp && isInPgt) {
+                            color = 0x007F00;
+                        } else if (isInPp && !isInPgt) {
+                            color = 0xFF0000;
+                        } else if (!isInPp && isInPgt) {
+                            color = 0x0088FF;
+                        }
+
+                        int current = evalImage.getRGB(x, y) & 0x00FFFFFF;
+                        if (current != 0 && current != color) {
+                            evalImage.setRGB(x, y, 0xFFFF00);
+                        } else {
+                            evalImage.setRGB(x, y, color);
+                        }
+                    }
+                }
+            }
+
+            // Drawing polygon color
+            Color color = Color.WHITE;
+
+            // Integrate values for this line into the global sum
+            TP += lineTP;
+            FN += lineFN;
+            FP += lineFP;
+
+            // Evaluate the line detection (a line can be both missed and extra)
+            double P = lineTP / (double) (lineTP + lineFP);
+            double R = lineTP / (double) (lineTP + lineFN);
+
+            if (P < threshold) {
+                nbLinesExtra++;
+                color = Color.RED;
+            }
+
+            if (R < threshold) {
+                nbLinesMissed++;
+                color = Color.BLUE;
+            }
+
+            if (P >= threshold && R >= threshold) {
+                matchedTP += lineTP;
+                matchedFN += lineFN;
+                matchedFP += lineFP;
+                nbLinesCorrect++;
+                color = Color.GREEN;
+            }
+
+            if (P < threshold && R < threshold) {
+                color = Color.PINK;
+            }
+
+            // Draw the polygon on the visualization
+            if (pp != null) {
+                Graphics g = evalImage.getGraphics();
+                g.setColor(color);
+                g.drawPolygon(pp);
+            }
+        }
+
+        // Storing the results
+        Results results = new Results();
+
+        results.put(Results.LINES_NB_TRUTH, groundTruth.size());
+        results.put(Results.LINES_NB_PROPOSED, prediction.size());
+        results.put(Results.LINES_NB_CORRECT, nbLinesCorrect);
+
+        results.put(Results.LINES_IU, nbLinesCorrect / (double) (nbLinesCorrect + nbLinesMissed + nbLinesExtra));
+        results.put(Results.LINES_FMEASURE, 2 * nbLinesCorrect / (double) (2 * nbLinesCorrect + nbLinesMissed + nbLinesExtra));
+        results.put(Results.LINES_RECALL, nbLinesCorrect / (double) (nbLinesCorrect + nbLinesMissed));
+        results.put(Results.LINES_PRECISION, nbLinesCorrect / (double) (nbLinesCorrect + nbLinesExtra));
+
+        results.put(Results.MATCHED_PIXEL_IU, matchedTP / (double) (matchedTP + matchedFP + matchedFN));
+        results.put(Results.MATCHED_PIXEL_FMEASURE, 2 * matchedTP / (double) (2 * matchedTP + matchedFP + matchedFN));
+        results.put(Results.MATCHED_PIXEL_PRECISION, matchedTP / (double) (matchedTP + matchedFP));
+        results.put(Results.MATCHED_PIXEL_RECALL, matchedTP / (double) (matchedTP + matchedFN));
+
+        results.put(Results.PIXEL_IU, TP / (double) (TP + FP + FN));
+        results.put(Results.PIXEL_FMEASURE, 2 * TP / (double) (2 * TP + FP + FN));
+        results.put(Results.PIXEL_PRECISION, TP / (double) (TP + FP));
+        results.put(Results.PIXEL_RECALL, TP / (double) (TP + FN));
+
+        return results;
+    }
+
+    /**
+     * @return the visualization of the last evaluation
+     */
+    public BufferedImage getEvalImage() {
+        return evalImage;
+    }
+
+    /**
+     * Overlap the visualization with the original image, as the evaluator used to do
+     *
+     * @param visualization the visualization image generated by this.getEvalImage()
+     * @param original      the original image as it is in the dataset
+     * @return a BufferedImage representing the overlapped images
+     */
+    public BufferedImage overlapEvaluation(BufferedImage visualization, BufferedImage original) {
+
+        // Create new image of type ARGB (with alpha channel)
+        BufferedImage overlap = new BufferedImage(visualization.getWidth(), visualization.getHeight(), BufferedImage.TYPE_INT_ARGB);
+
+        Graphics g = overlap.getGraphics();
+
+        // Paint original
+        g.drawImage(original, 0, 0, null);
+
+        // Set alpha
+        ((Graphics2D) g).setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.57f));
+
+        // Paint visualization
+        g.drawImage(visualization, 0, 0, null);
+
+        return overlap;
+    }
+
+    /**
+     * Write results as CSV file, as Results used to do. If the file already exists it appends a new line only
+     *
+     * @param results the results, with their file name
+     * @param fName   file name for the CSV results file
+     */
+    public static void writeToCSV(Results results, String fName) throws IOException {
+
+        // If the file does not exist, create it and write the name of the metrics
+        if (!new File(fName).exists()) {
+            StringBuilder s = new StringBuilder();
+            s.append(Results.FILENAME.split("\\.")[1]).append(",");
+
+            s.append(Results.LINES_NB_TRUTH.split("\\.")[1]).append(",");
+            s.append(Results.LINES_NB_PROPOSED.split("\\.")[1]).append(",");
+            s.append(Results.LINES_NB_CORRECT.split("\\.")[1]).append(",");
+
+            s.append(Results.LINES_IU.split("\\.")[1]).append(",");
+            s.append(Results.LINES_FMEASURE.split("\\.")[1]).append(",");
+            s.append(Results.LINES_RECALL.split("\\.")[1]).append(",");
+            s.append(Results.LINES_PRECISION.split("\\.")[1]).append(",");
+
+            s.append(Results.MATCHED_PIXEL_IU.split("\\.")[1]).append(",");
+            s.append(Results.MATCHED_PIXEL_FMEASURE.split("\\.")[1]).append(",");
+            s.append(Results.MATCHED_PIXEL_PRECISION.split("\\.")[1]).append(",");
+            s.append(Results.MATCHED_PIXEL_RECALL.split("\\.")[1]).append(",");
+
+            s.append(Results.PIXEL_IU.split("\\.")[1]).append(",");
+            s.append(Results.PIXEL_FMEASURE.split("\\.")[1]).append(",");
+            s.append(Results.PIXEL_PRECISION.split("\\.")[1]).append(",");
+            s.append(Results.PIXEL_RECALL.split("\\.")[1]).append("\n");
+
+            Files.write(Paths.get(fName), s.toString().getBytes());
+        }
+
+        StringBuilder s = new StringBuilder();
+        s.append(results.get(Results.FILENAME)).append(",");
+
+        s.append(format(results.get(Results.LINES_NB_TRUTH))).append(",");
+        s.append(format(results.get(Results.LINES_NB_PROPOSED))).append(",");
+        s.append(format(results.get(Results.LINES_NB_CORRECT))).append(",");
+
+        s.append(format(results.get(Results.LINES_IU))).append(",");
+        s.append(format(results.get(Results.LINES_FMEASURE))).append(",");
+        s.append(format(results.get(Results.LINES_RECALL))).append(",");
+        s.append(format(results.get(Results.LINES_PRECISION))).append(",");
+
+        s.append(format(results.get(Results.MATCHED_PIXEL_IU))).append(",");
+        s.append(format(results.get(Results.MATCHED_PIXEL_FMEASURE))).append(",");
+        s.append(format(results.get(Results.MATCHED_PIXEL_PRECISION))).append(",");
+        s.append(format(results.get(Results.MATCHED_PIXEL_RECALL))).append(",");
+
+        s.append(format(results.get(Results.PIXEL_IU))).append(",");
+        s.append(format(results.get(Results.PIXEL_FMEASURE))).append(",");
+        s.append(format(results.get(Results.PIXEL_PRECISION))).append(",");
+        s.append(format(results.get(Results.PIXEL_RECALL))).append("\n");
+
+        Files.write(Paths.get(fName), s.toString().getBytes(), StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @return the value of a put() measure as written in the CSV file
+     */
+    private static String format(String value) {
+        return String.format(Locale.ROOT, "%2.4f", Double.parseDouble(value));
+    }
+
+    /**
+     * Find the best matching polygons between the prediction and the groundTruth
+     *
+     * @return the matching polygons (prediction, GT), then the missed GT and the extra predictions matched with null
+     */
+    private List<Pair<Polygon, Polygon>> getMatchingPolygons(BufferedImage groundTruthImage, List<Polygon> groundTruth, List<Polygon> prediction) {
+
+        List<Pair<Polygon, Polygon>> matching = new ArrayList<>();
+        Set<Polygon> matchedPolygons = new HashSet<>();
+
+        // The IU of each pair of polygons with intersecting bounds and at least one common foreground pixel
+        ArrayList<Possibility> possibilities = new ArrayList<>();
+        for (Polygon pgt : groundTruth) {
+            Rectangle rgt = pgt.getBounds();
+            for (Polygon pp : prediction) {
+                Rectangle rp = pp.getBounds();
+                if (!rgt.intersects(rp)) {
+                    continue;
+                }
+
+                Rectangle union = rgt.union(rp);
+                int intersectingPixels = 0;
+                int unionPixels = 0;
+                for (int x = (int) union.getMinX(); x < union.getMaxX(); x++) {
+                    for (int y = (int) union.getMinY(); y < union.getMaxY(); y++) {
+                        if (((groundTruthImage.getRGB(x, y) >> 23) & 0x1) == 1) {
+                            continue;
+                        }
+                        if ((groundTruthImage.getRGB(x, y) & 0x1) == 1) {
+                            continue;
+                        }
+                        boolean isInPp = pp.contains(x, y);
+                        boolean isInPgt = pgt.contains(x, y);
+                        if (isInPp && isInPgt) {
+                            intersectingPixels++;
+                        }
+                        if (isInPp || isInPgt) {
+                            unionPixels++;
+                        }
+                    }
+                }
+
+                if (intersectingPixels > 0) {
+                    possibilities.add(new Possibility(pgt, pp, intersectingPixels / (double) unionPixels));
+                }
+            }
+        }
+
+        // Greedy matching on the score-descending list (stable: the ties are taken in the order of the loops)
+        Collections.sort(possibilities);
+        for (Possibility p : possibilities) {
+            if (!matchedPolygons.contains(p.p) && !matchedPolygons.contains(p.gt)) {
+                matching.add(Pair.of(p.p, p.gt));
+                matchedPolygons.add(p.p);
+                matchedPolygons.add(p.gt);
+            }
+        }
+
+        // Add all missing GT polygons (un-matched) by matching them will 'null'
+        for (Polygon pgt : groundTruth) {
+            if (!matchedPolygons.contains(pgt)) {
+                matching.add(Pair.of(null, pgt));
+                matchedPolygons.add(pgt);
+            }
+        }
+        // Add all extra Prediction polygons (un-matched) by matching them will 'null'
+        for (Polygon pp : prediction) {
+            if (!matchedPolygons.contains(pp)) {
+                matching.add(Pair.of(pp, null));
+                matchedPolygons.add(pp);
+            }
+        }
+
+        return matching;
+    }
+
+    /**
+     * A possible match between a GT polygon and a Prediction one, and their IU
+     */
+    private static final class Possibility implements Comparable<Possibility> {
+        final Polygon gt;
+        final Polygon p;
+        final double score;
+
+        Possibility(Polygon gt, Polygon p, double score) {
+            this.gt = gt;
+            this.p = p;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Possibility p) {
+            return Double.compare(p.score, score);
+        }
+    }
+}
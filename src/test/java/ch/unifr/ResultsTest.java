@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * ResultsTest class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Checks the CSV files against the ones of the ReferenceEvaluator
+ */
+public class ResultsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void csvMatchesTheReference() throws IOException {
+        File expected = new File(folder.getRoot(), "expected.csv");
+        File actual = new File(folder.getRoot(), "actual.csv");
+        try (LineSegmentationEvaluator evaluator = new LineSegmentationEvaluator()) {
+            for (int seed = 0; seed < 5; seed++) {
+                SyntheticPage page = SyntheticPage.random(new Random(seed), 200, 160);
+                for (double threshold : LineSegmentationEvaluatorTest.THRESHOLDS) {
+                    Results reference = new ReferenceEvaluator().evaluate(page.image, page.groundTruth, page.prediction, threshold);
+                    reference.put(Results.FILENAME, "page" + seed + ".xml");
+                    ReferenceEvaluator.writeToCSV(reference, expected.getPath());
+
+                    Results results = evaluator.evaluate(page.image, page.groundTruth, page.prediction, threshold);
+                    results.put(Results.FILENAME, "page" + seed + ".xml");
+                    results.writeToCSV(actual.getPath());
+                }
+            }
+        }
+        assertEquals(new String(Files.readAllBytes(expected.toPath())), new String(Files.readAllBytes(actual.toPath())));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * SyntheticPage class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief A seeded GT image with the polygons of its lines and a prediction of them
+ * The lines of the GT overlap their neighbours, some of them twice (a copy of the polygon). The prediction
+ * has exact, shifted, split, merged, missed and extra lines, and copies of some of its polygons, in a
+ * shuffled order: the pixels of several lines and the ties of the matching happen on every page.
+ */
+class SyntheticPage {
+
+    final BufferedImage image;
+    final List<Polygon> groundTruth = new ArrayList<>();
+    final List<Polygon> prediction = new ArrayList<>();
+
+    private SyntheticPage(BufferedImage image) {
+        this.image = image;
+    }
+
+    /**
+     * @param random the source of the page
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return a page of random pixels and lines
+     */
+    static SyntheticPage random(Random random, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // Mostly foreground (bits 0 and 23 clear), some background (bit 0) and boundary (bit 23) pixels
+                int r = random.nextInt(10);
+                int rgb = random.nextInt(0x1000000) & 0x7FFFFE;
+                image.setRGB(x, y, (r < 7) ? rgb : (r < 9) ? rgb | 0x000001 : rgb | 0x800000);
+            }
+        }
+        SyntheticPage page = new SyntheticPage(image);
+
+        // Lines higher than their spacing, hence overlapping the next one by a few rows
+        List<Polygon> lines = new ArrayList<>();
+        int spacing = 14 + random.nextInt(6);
+        for (int top = 1 + random.nextInt(4); top + spacing < height - 2; top += spacing) {
+            int x0 = 1 + random.nextInt(width / 4);
+            int x1 = width - 2 - random.nextInt(width / 4);
+            lines.add(line(random, x0, x1, top, Math.min(top + spacing + 2 + random.nextInt(5), height - 2)));
+        }
+
+        for (int i = 0; i < lines.size(); i++) {
+            Polygon line = lines.get(i);
+            page.groundTruth.add(line);
+            if (random.nextInt(8) == 0) {
+                page.groundTruth.add(copy(line));
+            }
+
+            Rectangle bounds = line.getBounds();
+            switch (random.nextInt(7)) {
+                case 0:
+                    // Missed
+                    break;
+                case 1:
+                    // Split in two
+                    int middle = bounds.x + bounds.width / 3 + random.nextInt(bounds.width / 3);
+                    page.prediction.add(line(random, bounds.x, middle, bounds.y, bounds.y + bounds.height));
+                    page.prediction.add(line(random, middle + random.nextInt(3) - 1, bounds.x + bounds.width, bounds.y, bounds.y + bounds.height));
+                    break;
+                case 2:
+                    // Merged with the next line
+                    if (i + 1 < lines.size()) {
+                        Rectangle next = lines.get(++i).getBounds();
+                        page.groundTruth.add(lines.get(i));
+                        Rectangle union = bounds.union(next);
+                        page.prediction.add(line(random, union.x, union.x + union.width, union.y, union.y + union.height));
+                        break;
+                    }
+                    // The last line is predicted exactly instead
+                case 3:
+                    // Exact
+                    page.prediction.add(copy(line));
+                    break;
+                default:
+                    // Shifted by a few pixels
+                    page.prediction.add(shift(line, random.nextInt(9) - 4, random.nextInt(9) - 4, width, height));
+                    break;
+            }
+        }
+
+        // Extra lines, one of them possibly empty or degenerate
+        for (int n = random.nextInt(3); n > 0; n--) {
+            int x0 = random.nextInt(width - 10);
+            int y0 = random.nextInt(height - 10);
+            page.prediction.add(line(random, x0, x0 + 1 + random.nextInt(Math.min(60, width - x0 - 1)), y0, y0 + 1 + random.nextInt(9)));
+        }
+        if (random.nextInt(4) == 0) {
+            Polygon degenerate = new Polygon();
+            degenerate.addPoint(random.nextInt(width), random.nextInt(height));
+            degenerate.addPoint(random.nextInt(width), random.nextInt(height));
+            page.prediction.add(degenerate);
+        }
+
+        // Copies of some predictions: same pixels, hence same scores, but distinct polygons
+        for (int n = random.nextInt(3); n > 0 && !page.prediction.isEmpty(); n--) {
+            page.prediction.add(copy(page.prediction.get(random.nextInt(page.prediction.size()))));
+        }
+        Collections.shuffle(page.prediction, random);
+        return page;
+    }
+
+    /**
+     * A text line: a polygon whose top and bottom edges are broken lines within [x0, x1] x [top, bottom]
+     */
+    private static Polygon line(Random random, int x0, int x1, int top, int bottom) {
+        Polygon polygon = new Polygon();
+        List<Integer> xs = new ArrayList<>();
+        for (int x = x0; x < x1; x += 8 + random.nextInt(30)) {
+            xs.add(x);
+        }
+        xs.add(x1);
+        int jitter = Math.max(1, (bottom - top) / 4);
+        for (int x : xs) {
+            polygon.addPoint(x, top + random.nextInt(jitter));
+        }
+        for (int k = xs.size() - 1; k >= 0; k--) {
+            polygon.addPoint(xs.get(k), bottom - random.nextInt(jitter));
+        }
+        return polygon;
+    }
+
+    /**
+     * @return another polygon with the same vertices
+     */
+    private static Polygon copy(Polygon polygon) {
+        return new Polygon(polygon.xpoints, polygon.ypoints, polygon.npoints);
+    }
+
+    /**
+     * @return the polygon translated by (dx, dy), kept within the image
+     */
+    private static Polygon shift(Polygon polygon, int dx, int dy, int width, int height) {
+        Polygon shifted = new Polygon();
+        for (int k = 0; k < polygon.npoints; k++) {
+            shifted.addPoint(Math.max(0, Math.min(width - 1, polygon.xpoints[k] + dx)),
+                    Math.max(0, Math.min(height - 1, polygon.ypoints[k] + dy)));
+        }
+        return shifted;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2016 UniFR
+ * University of Fribourg, Switzerland.
+ */
+
+package ch.unifr;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * TestImages class of the ICDAR 2017 competition
+ *
+ * @date 16.10.2026
+ * @brief Random images and the comparison of images, for the tests
+ */
+final class TestImages {
+
+    /**
+     * The types of PNG files written by writeAs(): 8 bits gray, RGB and RGBA (decoded sequentially by
+     * BandReader), palette and 16 bits gray (decoded by an ImageReader)
+     */
+    static final String[] PNG_TYPES = {"gray8", "rgb", "rgba", "palette", "gray16"};
+
+    private TestImages() {
+    }
+
+    /**
+     * Write the pixels of an image as a PNG file of another type. The samples of the gray and palette
+     * types are taken from the low bits of the pixels, so the image read back from the file differs from
+     * the given one, except for rgb and rgba.
+     *
+     * @param image a TYPE_INT_RGB image
+     * @param type  one of PNG_TYPES
+     * @param file  the PNG file
+     */
+    static void writeAs(BufferedImage image, String type, File file) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage png;
+        switch (type) {
+            case "gray8":
+            case "gray16":
+                png = new BufferedImage(width, height, type.equals("gray8") ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_USHORT_GRAY);
+                WritableRaster raster = png.getRaster();
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        raster.setSample(x, y, 0, image.getRGB(x, y) & (type.equals("gray8") ? 0xFF : 0xFFFF));
+                    }
+                }
+                break;
+            case "palette":
+                // 16 colors indexed by the bits 0, 2 and 3 of the pixel and by its bit 23 (as bit 1): the
+                // bits 0 and 23 of the colors are those of the pixels, hence the foreground too
+                byte[] r = new byte[16], g = new byte[16], b = new byte[16];
+                for (int c = 0; c < 16; c++) {
+                    r[c] = (byte) (((c & 2) != 0) ? 0x80 | c : c);
+                    g[c] = (byte) (c * 16);
+                    b[c] = (byte) c;
+                }
+                png = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, new IndexColorModel(8, 16, r, g, b));
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        int rgb = image.getRGB(x, y);
+                        int c = (rgb & 0xD) | (((rgb >> 23) & 1) << 1);
+                        png.getRaster().setSample(x, y, 0, c);
+                    }
+                }
+                break;
+            case "rgba":
+                png = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        // Any opaque enough alpha, to check the order of the channels
+                        png.setRGB(x, y, ((0x80 + ((x * 7 + y) & 0x7F)) << 24) | (image.getRGB(x, y) & 0xFFFFFF));
+                    }
+                }
+                break;
+            default:
+                png = image;
+        }
+        if (!ImageIO.write(png, "png", file)) {
+            throw new IOException("no PNG writer for " + type);
+        }
+    }
+
+    /**
+     * An image of random pixels, in runs of the same color as in the visualizations
+     *
+     * @param colors the number of colors, 0 for any color
+     */
+    static BufferedImage random(Random random, int width, int height, int type, int colors) {
+        boolean alpha = type == BufferedImage.TYPE_INT_ARGB;
+        int[] palette = new int[colors];
+        for (int c = 0; c < colors; c++) {
+            palette[c] = random.nextInt() | (alpha ? 0 : 0xFF000000);
+        }
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int argb = (colors > 0) ? palette[random.nextInt(colors)] : random.nextInt();
+                int run = random.nextInt(8);
+                for (int k = 0; k <= run && x < width; k++, x++) {
+                    image.setRGB(x, y, alpha ? argb : argb | 0xFF000000);
+                }
+                x--;
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Assert that two images have the same size and the same ARGB pixels, fully transparent pixels being
+     * equal whatever their color
+     */
+    static void assertSamePixels(String message, BufferedImage expected, BufferedImage actual) {
+        assertEquals(message + ": width", expected.getWidth(), actual.getWidth());
+        assertEquals(message + ": height", expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int e = expected.getRGB(x, y);
+                int a = actual.getRGB(x, y);
+                if (e != a && ((e | a) >>> 24) != 0) {
+                    fail(message + ": pixel " + x + "," + y + " is " + Integer.toHexString(a) + ", expected " + Integer.toHexString(e));
+                }
+            }
+        }
+    }
+}